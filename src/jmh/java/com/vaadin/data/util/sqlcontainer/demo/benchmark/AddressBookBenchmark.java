@@ -0,0 +1,93 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.AddressBookDatabase;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.SearchFilter;
+
+/**
+ * City name lookups and person searches of the address book
+ * {@link DatabaseHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AddressBookBenchmark {
+
+    private static final int CITIES = 14;
+
+    @Param( { "1000", "100000" })
+    public int persons;
+
+    @Param( { "false", "true" })
+    public boolean searchIndex;
+
+    private DatabaseHelper dbHelp;
+    private String[] terms;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(AddressBookDatabase.PERSONS_PROPERTY, ""
+                + persons);
+        System.setProperty(AddressBookDatabase.SEARCH_INDEX_PROPERTY, ""
+                + searchIndex);
+        dbHelp = new DatabaseHelper();
+        /*
+         * Cycling through more terms than the search result cache holds
+         * makes every search miss the cache.
+         */
+        terms = new String[26 * 26];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = "" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        AddressBookDatabase.shutdown();
+    }
+
+    @Benchmark
+    public String cityName() {
+        return dbHelp.getCityName(next++ % CITIES);
+    }
+
+    /**
+     * A first name or last name substring search, the OR of two LIKE
+     * filters unless the search index answers them.
+     */
+    @Benchmark
+    public int search() {
+        String term = terms[next++ % terms.length];
+        return dbHelp.search(new SearchFilter("FIRSTNAME", term, "bench"),
+                new SearchFilter("LASTNAME", term, "bench"));
+    }
+
+    /**
+     * The same saved search repeated, answered by the search result cache.
+     */
+    @Benchmark
+    public int cachedSearch() {
+        return dbHelp.searchSaved(
+                new SearchFilter("FIRSTNAME", "an", "bench"),
+                new SearchFilter("LASTNAME", "an", "bench"));
+    }
+}
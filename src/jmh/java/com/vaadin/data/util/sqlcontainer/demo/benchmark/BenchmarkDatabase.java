@@ -0,0 +1,87 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.connection.ConcurrentJDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+
+/**
+ * Embedded HSQLDB databases of the benchmarks. JMH runs every benchmark and
+ * parameter combination in a forked JVM, so each starts from an empty
+ * database.
+ */
+class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Creates a pool for an in-memory database.
+     */
+    static JDBCConnectionPool createPool(String name) throws SQLException {
+        return new ConcurrentJDBCConnectionPool("org.hsqldb.jdbc.JDBCDriver",
+                "jdbc:hsqldb:mem:" + name, "SA", "", 2, 20);
+    }
+
+    /**
+     * Executes a statement without a result.
+     */
+    static void execute(JDBCConnectionPool pool, String sql)
+            throws SQLException {
+        Connection conn = pool.reserveConnection();
+        try {
+            Statement statement = conn.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+            conn.commit();
+        } finally {
+            pool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Runs a query generated by a delegate and reads all of its rows, the
+     * way SQLContainer reads a page.
+     *
+     * @return the number of rows read, or the value of a single column
+     *         count query
+     */
+    static int query(JDBCConnectionPool pool, StatementHelper sh)
+            throws SQLException {
+        Connection conn = pool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(sh
+                    .getQueryString());
+            try {
+                sh.setParameterValuesToStatement(pstmt);
+                ResultSet rs = pstmt.executeQuery();
+                int columns = rs.getMetaData().getColumnCount();
+                int rows = 0;
+                int value = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        rs.getObject(i);
+                    }
+                    if (rows++ == 0 && columns == 1) {
+                        value = rs.getInt(1);
+                    }
+                }
+                rs.close();
+                return columns == 1 && rows == 1 ? value : rows;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            pool.releaseConnection(conn);
+        }
+    }
+}
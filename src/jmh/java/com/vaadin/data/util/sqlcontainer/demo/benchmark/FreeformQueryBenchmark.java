@@ -0,0 +1,149 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.Or;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.DemoFreeformQueryDelegate;
+import com.vaadin.data.util.sqlcontainer.demo.SQLContainerDemo;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.BulkLoader;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.RowSource;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+
+/**
+ * Page and count queries of {@link DemoFreeformQueryDelegate} on the PEOPLE
+ * table of {@link SQLContainerDemo}, for several table sizes and filters.
+ * Each operation generates the statement and reads all of its rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FreeformQueryBenchmark {
+
+    static final String[] FIRSTNAMES = { "Peter", "Alice", "Joshua", "Mike",
+            "Olivia", "Nina", "Alex", "Rita", "Dan", "Umberto", "Henrik",
+            "Rene", "Lisa", "Marge" };
+    static final String[] LASTNAMES = { "Smith", "Gordon", "Simpson",
+            "Brown", "Clavel", "Simons", "Verne", "Scott", "Allison", "Gates",
+            "Rowling", "Barks", "Ross", "Schneider", "Tate" };
+
+    private static final int PAGE_LENGTH = 100;
+
+    @Param( { "1000", "100000" })
+    public int rows;
+
+    /**
+     * <ul>
+     * <li>none: no filters</li>
+     * <li>prefix: LASTNAME starts with a string</li>
+     * <li>substring: LASTNAME contains a string</li>
+     * <li>and: FIRSTNAME prefix and an ID range</li>
+     * <li>or: FIRSTNAME or LASTNAME contains a string</li>
+     * </ul>
+     */
+    @Param( { "none", "prefix", "substring", "and", "or" })
+    public String filters;
+
+    private JDBCConnectionPool pool;
+    private DemoFreeformQueryDelegate delegate;
+    private int middle;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        pool = BenchmarkDatabase.createPool("freeform");
+        BenchmarkDatabase.execute(pool, SQLContainerDemo.CREATE_PEOPLE_TABLE);
+        fillPeople(pool, rows);
+        delegate = new DemoFreeformQueryDelegate();
+        delegate.setFilters(createFilters(filters, rows));
+        delegate.setOrderBy(Collections.singletonList(new OrderBy("ID", true)));
+        middle = BenchmarkDatabase.query(pool, delegate.getCountStatement()) / 2;
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.destroy();
+    }
+
+    static void fillPeople(JDBCConnectionPool pool, final int rows)
+            throws SQLException, IOException {
+        final Random random = new Random(0);
+        BulkLoader loader = new BulkLoader(pool, "PEOPLE", "FIRSTNAME",
+                "LASTNAME", "COMPANY");
+        loader.load(new RowSource() {
+            private int i = 0;
+
+            public boolean nextRow(Object[] values) {
+                if (i++ == rows) {
+                    return false;
+                }
+                values[0] = FIRSTNAMES[random.nextInt(FIRSTNAMES.length)];
+                values[1] = LASTNAMES[random.nextInt(LASTNAMES.length)];
+                values[2] = "Company " + random.nextInt(100);
+                return true;
+            }
+        });
+    }
+
+    static List<Filter> createFilters(String mix, int rows) {
+        List<Filter> list = new ArrayList<Filter>();
+        if ("prefix".equals(mix)) {
+            list.add(new SimpleStringFilter("LASTNAME", "Sc", true, true));
+        } else if ("substring".equals(mix)) {
+            list.add(new SimpleStringFilter("LASTNAME", "mi", true, false));
+        } else if ("and".equals(mix)) {
+            list.add(new And(new SimpleStringFilter("FIRSTNAME", "A", true,
+                    true), new Compare.Greater("ID", rows / 2)));
+        } else if ("or".equals(mix)) {
+            list.add(new Or(new SimpleStringFilter("FIRSTNAME", "ri", true,
+                    false), new SimpleStringFilter("LASTNAME", "ri", true,
+                    false)));
+        } else if (!"none".equals(mix)) {
+            throw new IllegalArgumentException("Unknown filter mix " + mix);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public int firstPage() throws SQLException {
+        return BenchmarkDatabase.query(pool, delegate
+                .getQueryStatement(0, PAGE_LENGTH));
+    }
+
+    @Benchmark
+    public int middlePage() throws SQLException {
+        return BenchmarkDatabase.query(pool, delegate
+                .getQueryStatement(middle, PAGE_LENGTH));
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        return BenchmarkDatabase.query(pool, delegate
+                .getCountStatement());
+    }
+}
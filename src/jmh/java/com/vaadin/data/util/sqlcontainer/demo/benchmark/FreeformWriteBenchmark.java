@@ -0,0 +1,98 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.data.Item;
+import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.SQLContainer;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.DemoFreeformQuery;
+import com.vaadin.data.util.sqlcontainer.demo.DemoFreeformQueryDelegate;
+import com.vaadin.data.util.sqlcontainer.demo.SQLContainerDemo;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
+
+/**
+ * Commits of rows written with {@link DemoFreeformQueryDelegate#storeRow} and
+ * {@link DemoFreeformQueryDelegate#removeRow} through an SQLContainer, with
+ * and without batch mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FreeformWriteBenchmark {
+
+    @Param( { "false", "true" })
+    public boolean batchMode;
+
+    private JDBCConnectionPool pool;
+    private SQLContainer container;
+    private RowId addedId;
+    private int updates = 0;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        pool = BenchmarkDatabase.createPool("freeformwrite");
+        BenchmarkDatabase.execute(pool, SQLContainerDemo.CREATE_PEOPLE_TABLE);
+        FreeformQueryBenchmark.fillPeople(pool, 10000);
+        DemoFreeformQuery query = new DemoFreeformQuery(
+                "SELECT * FROM PEOPLE", pool, "ID");
+        DemoFreeformQueryDelegate delegate = new DemoFreeformQueryDelegate();
+        delegate.setBatchMode(batchMode);
+        query.setDelegate(delegate);
+        query.addListener(new QueryDelegate.RowIdChangeListener() {
+            public void rowIdChange(QueryDelegate.RowIdChangeEvent event) {
+                addedId = event.getNewRowId();
+            }
+        });
+        container = new SQLContainer(query);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.destroy();
+    }
+
+    /**
+     * Inserts a row and commits, then removes it and commits, which keeps
+     * the table size constant.
+     */
+    @Benchmark
+    public RowId storeAndRemoveRow() throws SQLException {
+        Item item = container.getItem(container.addItem());
+        item.getItemProperty("FIRSTNAME").setValue("Bench");
+        item.getItemProperty("LASTNAME").setValue("Mark");
+        container.commit();
+        RowId id = addedId;
+        container.removeItem(id);
+        container.commit();
+        return id;
+    }
+
+    /**
+     * Updates a row and commits.
+     */
+    @Benchmark
+    public void updateRow() throws SQLException {
+        Item item = container.getItem(container.firstItemId());
+        item.getItemProperty("LASTNAME").setValue("Mark " + updates++);
+        container.commit();
+    }
+}
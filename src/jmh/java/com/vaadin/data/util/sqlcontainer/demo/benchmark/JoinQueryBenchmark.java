@@ -0,0 +1,95 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.ComplexQueryDemo;
+import com.vaadin.data.util.sqlcontainer.demo.JoinDataGenerator;
+import com.vaadin.data.util.sqlcontainer.demo.JoinFreeformStatementDelegate;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+
+/**
+ * Page and count queries of the four table join of {@link ComplexQueryDemo},
+ * generated by {@link JoinFreeformStatementDelegate}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JoinQueryBenchmark {
+
+    private static final int PAGE_LENGTH = 100;
+
+    /** Number of employees, with a person and an address each */
+    @Param( { "1000", "50000" })
+    public int employees;
+
+    @Param( { "false", "true" })
+    public boolean filtered;
+
+    @Param( { "false", "true" })
+    public boolean cardinalityPreserving;
+
+    private JDBCConnectionPool pool;
+    private JoinFreeformStatementDelegate delegate;
+
+    @Setup
+    public void setUp() throws SQLException {
+        pool = BenchmarkDatabase.createPool("join");
+        ComplexQueryDemo.initDatabase(pool);
+        JoinDataGenerator generator = new JoinDataGenerator(pool);
+        generator.setSeed(0);
+        generator.setCompanies(100);
+        generator.setAddresses(employees);
+        generator.setPeople(employees);
+        generator.setEmployees(employees);
+        generator.generate();
+
+        delegate = new JoinFreeformStatementDelegate();
+        delegate.setCardinalityPreserving(cardinalityPreserving);
+        List<Filter> filters = new ArrayList<Filter>();
+        if (filtered) {
+            filters.add(new SimpleStringFilter("LASTNAME", "S", true, true));
+        }
+        delegate.setFilters(filters);
+        delegate.setOrderBy(Collections.singletonList(new OrderBy("LASTNAME",
+                true)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.destroy();
+    }
+
+    @Benchmark
+    public int firstPage() throws SQLException {
+        return BenchmarkDatabase.query(pool, delegate.getQueryStatement(0,
+                PAGE_LENGTH));
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        return BenchmarkDatabase.query(pool, delegate.getCountStatement());
+    }
+}
@@ -0,0 +1,504 @@
+package com.vaadin.data.util.sqlcontainer.demo.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.AddressBookApplication;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.AddressBookDatabase;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.SearchFilter;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.PersonForm;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.PersonList;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.LatencyHistogram;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.StatementStatistics;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Component;
+import com.vaadin.ui.ComponentContainer;
+import com.vaadin.ui.Form;
+
+/**
+ * Runs many {@link AddressBookApplication} sessions in-process without a
+ * servlet container or browser, to measure contention on the shared
+ * database layer.
+ * <p>
+ * Every session is an application started with
+ * {@link AddressBookApplication#start(URL, Properties, com.vaadin.service.ApplicationContext)}
+ * and driven through its components the way the terminal would: buttons are
+ * clicked with the variable change a browser sends, the person table is
+ * scrolled and rendered, and every flow runs while holding the application
+ * lock, as a request does. Like the start of a request, a flow first
+ * refreshes the containers changed by the other sessions. The flows are picked at random with these weights:
+ * <ul>
+ * <li>scroll (40): show all persons now and then, scroll the table to a random
+ * position and render the page</li>
+ * <li>search (25): search a random term</li>
+ * <li>saved search (10): run a saved search, or save a new shared one</li>
+ * <li>edit (20): select a person, click Edit, change the last name, Save</li>
+ * <li>add (5): click Add contact, fill the form, Save</li>
+ * </ul>
+ * The sessions run on a fixed thread pool, or with one virtual thread each on
+ * JDK 21 and later. At the end the throughput, the latency percentiles of
+ * every flow, the connection pool waits and the garbage collections are
+ * printed.
+ * <p>
+ * Options are given as <code>name=value</code> arguments:
+ * <ul>
+ * <li>sessions: number of sessions, 50</li>
+ * <li>flows: flows per session, 200</li>
+ * <li>warmup: flows per session run before measuring, 20</li>
+ * <li>threads: size of the thread pool, 0 for virtual threads, 16</li>
+ * <li>shared: true to share one DatabaseHelper, and so the same containers,
+ * between all sessions, false</li>
+ * <li>seed: random seed, 0</li>
+ * </ul>
+ * The data layer is configured with the system properties of
+ * AddressBookDatabase, e.g. <code>-Daddressbook.persons=100000</code>,
+ * <code>-Daddressbook.maxConnections=5</code>,
+ * <code>-Daddressbook.searchIndex=true</code> or
+ * <code>-Daddressbook.asyncCommit=true</code>. With the benchmarks profile:
+ *
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@load -Dload.args="sessions=200 threads=0"
+ * </pre>
+ */
+public class LoadSimulator {
+
+    private static final String[] FLOWS = { "scroll", "search",
+            "savedSearch", "edit", "add" };
+    private static final int[] FLOW_WEIGHTS = { 40, 25, 10, 20, 5 };
+
+    /* The statements taking the most time listed in the report */
+    private static final int REPORTED_STATEMENTS = 5;
+
+    private static final String[] SEARCH_PROPERTIES = { "FIRSTNAME",
+            "LASTNAME", "EMAIL", "CITYID" };
+    private static final String[] SEARCH_TERMS = { "an", "er", "ri", "son",
+            "ma", "el", "to", "in", "ja", "ne" };
+
+    private final int sessionCount;
+    private final int flowsPerSession;
+    private final int warmupFlows;
+    private final int threads;
+    private final boolean shared;
+    private final long seed;
+
+    private final Map<String, LatencyHistogram> latencies = new HashMap<String, LatencyHistogram>();
+    private final Map<String, AtomicLong> errors = new HashMap<String, AtomicLong>();
+    private final Map<String, Throwable> firstErrors = new HashMap<String, Throwable>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private volatile boolean measuring = false;
+
+    public LoadSimulator(Map<String, String> options) {
+        sessionCount = Integer.parseInt(getOption(options, "sessions", "50"));
+        flowsPerSession = Integer.parseInt(getOption(options, "flows", "200"));
+        warmupFlows = Integer.parseInt(getOption(options, "warmup", "20"));
+        threads = Integer.parseInt(getOption(options, "threads", "16"));
+        shared = Boolean.parseBoolean(getOption(options, "shared", "false"));
+        seed = Long.parseLong(getOption(options, "seed", "0"));
+        for (String flow : FLOWS) {
+            latencies.put(flow, new LatencyHistogram());
+            errors.put(flow, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value: "
+                        + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadSimulator(options).run();
+        System.exit(0);
+    }
+
+    private static String getOption(Map<String, String> options, String name,
+            String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Starts the sessions, runs the warmup and the measured flows and prints
+     * the report.
+     */
+    public void run() throws Exception {
+        System.out.println("Starting " + sessionCount + " sessions"
+                + (shared ? " sharing one DatabaseHelper" : ""));
+        DatabaseHelper sharedHelper = shared ? new DatabaseHelper() : null;
+        List<Session> sessions = new ArrayList<Session>();
+        for (int i = 0; i < sessionCount; i++) {
+            sessions.add(new Session(sharedHelper, seed + i));
+        }
+
+        ExecutorService executor = createExecutor();
+        try {
+            runFlows(executor, sessions, warmupFlows);
+
+            PoolStats poolBefore = PoolStats.read();
+            long[] gcBefore = readGc();
+            AddressBookDatabase.getInstance().getSqlStatistics().reset();
+            measuring = true;
+            long start = System.nanoTime();
+            runFlows(executor, sessions, flowsPerSession);
+            long elapsed = System.nanoTime() - start;
+            measuring = false;
+            report(elapsed, poolBefore, PoolStats.read(), gcBefore, readGc());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ExecutorService createExecutor() {
+        if (threads <= 0) {
+            try {
+                return (ExecutorService) Executors.class.getMethod(
+                        "newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                System.out.println("Virtual threads need JDK 21, using "
+                        + sessionCount + " platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(threads <= 0 ? sessionCount
+                : threads, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LoadSimulator-" + ++count);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private void runFlows(ExecutorService executor, List<Session> sessions,
+            final int flows) throws Exception {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Session session : sessions) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    long allocated = getAllocatedBytes();
+                    for (int i = 0; i < flows; i++) {
+                        session.runFlow();
+                    }
+                    if (allocated >= 0 && measuring) {
+                        allocatedBytes.addAndGet(getAllocatedBytes()
+                                - allocated);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private void report(long elapsed, PoolStats poolBefore,
+            PoolStats poolAfter, long[] gcBefore, long[] gcAfter) {
+        long flows = 0;
+        for (String flow : FLOWS) {
+            flows += latencies.get(flow).getCount();
+        }
+        double seconds = elapsed / 1e9;
+        System.out.println();
+        System.out.println(String.format(
+                "%d flows in %.1f s, %.1f flows/s, threads=%s", flows,
+                seconds, flows / seconds, threads <= 0 ? "virtual" : ""
+                        + threads));
+        for (String flow : FLOWS) {
+            System.out.println(String.format("  %-12s %s errors=%d", flow,
+                    latencies.get(flow).toSummary(), errors.get(flow).get()));
+        }
+        for (Map.Entry<String, Throwable> e : firstErrors.entrySet()) {
+            Throwable cause = e.getValue();
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            System.out.println("  first " + e.getKey() + " error: " + cause
+                    + (cause.getStackTrace().length > 0 ? " at "
+                            + cause.getStackTrace()[0] : ""));
+        }
+        if (poolBefore != null && poolAfter != null) {
+            long reserves = poolAfter.reserves - poolBefore.reserves;
+            double waitMillis = poolAfter.totalWaitMillis()
+                    - poolBefore.totalWaitMillis();
+            System.out.println(String.format(
+                    "  pool: %d reserves, mean wait %.3f ms, max wait %.1f ms,"
+                            + " %d timeouts, max connections %d", reserves,
+                    reserves == 0 ? 0 : waitMillis / reserves,
+                    poolAfter.maxWaitMillis, poolAfter.timeouts
+                            - poolBefore.timeouts, poolAfter.maxConnections));
+        }
+        System.out.println(String.format(
+                "  gc: %d collections, %d ms, %s allocated by the sessions",
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1],
+                allocatedBytes.get() > 0 ? String.format("%.1f MB/s",
+                        allocatedBytes.get() / 1e6 / seconds) : "n/a"));
+        List<StatementStatistics> statements = AddressBookDatabase
+                .getInstance().getSqlStatistics().getStatements();
+        for (int i = 0; i < statements.size() && i < REPORTED_STATEMENTS; i++) {
+            StatementStatistics stats = statements.get(i);
+            System.out.println(String.format(
+                    "  sql: %6.0f ms %6dx p99 %6.2f ms %8d rows  %s", stats
+                            .getTotalMillis(), stats.getExecutions(), stats
+                            .getP99Millis(), stats.getRows(), stats.getSql()));
+        }
+    }
+
+    private static long[] readGc() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] { count, time };
+    }
+
+    /*
+     * Bytes allocated by the current thread, or -1 if not supported, e.g. for
+     * virtual threads.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            try {
+                return ((com.sun.management.ThreadMXBean) bean)
+                        .getThreadAllocatedBytes(Thread.currentThread()
+                                .getId());
+            } catch (UnsupportedOperationException e) {
+                // Not supported by this JVM
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Statistics of the address book connection pool, read from its MBean.
+     */
+    private static class PoolStats {
+        private long reserves;
+        private double averageWaitMillis;
+        private double maxWaitMillis;
+        private long timeouts;
+        private int maxConnections;
+
+        static PoolStats read() {
+            try {
+                MBeanServer server = ManagementFactory
+                        .getPlatformMBeanServer();
+                ObjectName name = new ObjectName(
+                        "com.vaadin.data.util.sqlcontainer.demo:type=ConnectionPool,name="
+                                + ObjectName.quote("addressbook"));
+                PoolStats stats = new PoolStats();
+                stats.reserves = (Long) server.getAttribute(name,
+                        "ReserveCount");
+                stats.averageWaitMillis = (Double) server.getAttribute(name,
+                        "AverageWaitMillis");
+                stats.maxWaitMillis = (Double) server.getAttribute(name,
+                        "MaxWaitMillis");
+                stats.timeouts = (Long) server.getAttribute(name, "Timeouts");
+                stats.maxConnections = (Integer) server.getAttribute(name,
+                        "MaxConnections");
+                return stats;
+            } catch (Exception e) {
+                System.out.println("Connection pool statistics unavailable: "
+                        + e);
+                return null;
+            }
+        }
+
+        double totalWaitMillis() {
+            return averageWaitMillis * reserves;
+        }
+    }
+
+    /**
+     * A simulated user with an application of its own.
+     */
+    private class Session {
+        private final AddressBookApplication app;
+        private final Object lock;
+        private final Random random;
+        private final PersonList personList;
+        private final PersonForm personForm;
+        private final Button addContact;
+        private final Button edit;
+        private final Button save;
+
+        Session(DatabaseHelper sharedHelper, long seed) throws Exception {
+            app = sharedHelper == null ? new AddressBookApplication()
+                    : new AddressBookApplication(sharedHelper);
+            /* Shared containers must not be used by two sessions at once */
+            lock = sharedHelper == null ? app : sharedHelper;
+            random = new Random(seed);
+            app.start(new URL("http://localhost:8080/addressbook/"),
+                    new Properties(), null);
+            personList = find(app.getMainWindow(), PersonList.class, null);
+            personForm = find(app.getMainWindow(), PersonForm.class, null);
+            addContact = find(app.getMainWindow(), Button.class,
+                    "Add contact");
+            edit = find(personForm.getFooter(), Button.class, "Edit");
+            save = find(personForm.getFooter(), Button.class, "Save");
+        }
+
+        void runFlow() {
+            int pick = random.nextInt(100);
+            int flow = 0;
+            while (pick >= FLOW_WEIGHTS[flow]) {
+                pick -= FLOW_WEIGHTS[flow++];
+            }
+            long start = System.nanoTime();
+            try {
+                synchronized (lock) {
+                    synchronized (app) {
+                        app.getDbHelp().refreshChangedContainers();
+                        switch (flow) {
+                        case 0:
+                            scroll();
+                            break;
+                        case 1:
+                            app.search(createSearch());
+                            break;
+                        case 2:
+                            savedSearch();
+                            break;
+                        case 3:
+                            edit();
+                            break;
+                        default:
+                            add();
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (measuring) {
+                    errors.get(FLOWS[flow]).incrementAndGet();
+                    synchronized (firstErrors) {
+                        if (!firstErrors.containsKey(FLOWS[flow])) {
+                            firstErrors.put(FLOWS[flow], e);
+                        }
+                    }
+                }
+            }
+            if (measuring) {
+                latencies.get(FLOWS[flow]).record(System.nanoTime() - start);
+            }
+        }
+
+        private void scroll() {
+            if (random.nextInt(4) == 0) {
+                /* Show all */
+                app.getDbHelp().getPersonContainer()
+                        .removeAllContainerFilters();
+            }
+            int size = personList.size();
+            personList.setCurrentPageFirstItemIndex(size == 0 ? 0 : random
+                    .nextInt(size));
+            personList.getVisibleItemIds();
+        }
+
+        private SearchFilter[] createSearch() {
+            String property = SEARCH_PROPERTIES[random
+                    .nextInt(SEARCH_PROPERTIES.length)];
+            String term = SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)];
+            return new SearchFilter[] { new SearchFilter(property, term,
+                    property + " " + term, property, term) };
+        }
+
+        private void savedSearch() {
+            List<SearchFilter[]> saved = app.getSavedSearches();
+            if (saved.isEmpty() || random.nextInt(10) == 0) {
+                app.saveSearch(true, createSearch());
+            } else {
+                app.searchSaved(saved.get(random.nextInt(saved.size())));
+            }
+        }
+
+        private void edit() {
+            int size = personList.size();
+            if (size == 0) {
+                return;
+            }
+            personList.select(app.getDbHelp().getPersonContainer()
+                    .getIdByIndex(random.nextInt(size)));
+            click(edit);
+            personForm.getField("LASTNAME").setValue(
+                    "Load" + random.nextInt(1000));
+            click(save);
+        }
+
+        private void add() {
+            click(addContact);
+            setField("FIRSTNAME", "Load");
+            setField("LASTNAME", "Test" + random.nextInt(1000));
+            setField("EMAIL", "load.test@example.com");
+            setField("PHONENUMBER", "+358 555 " + random.nextInt(10000));
+            setField("STREETADDRESS", random.nextInt(100) + " Load Street");
+            setField("POSTALCODE", 10000 + random.nextInt(90000));
+            click(save);
+        }
+
+        private void setField(String propertyId, Object value) {
+            personForm.getField(propertyId).setValue(value);
+        }
+    }
+
+    /* Sends the variable change of a button click */
+    private static void click(Button button) {
+        button.changeVariables(button, Collections.<String, Object> singletonMap(
+                "state", Boolean.TRUE));
+    }
+
+    /*
+     * Finds the first component of a type, and with a caption if given, in a
+     * component tree.
+     */
+    private static <T extends Component> T find(Component root, Class<T> type,
+            String caption) {
+        if (type.isInstance(root)
+                && (caption == null || caption.equals(root.getCaption()))) {
+            return type.cast(root);
+        }
+        List<Component> children = new ArrayList<Component>();
+        if (root instanceof ComponentContainer) {
+            for (Iterator<Component> i = ((ComponentContainer) root)
+                    .getComponentIterator(); i.hasNext();) {
+                children.add(i.next());
+            }
+        }
+        if (root instanceof Form) {
+            children.add(((Form) root).getLayout());
+            children.add(((Form) root).getFooter());
+        }
+        for (Component child : children) {
+            T found = child == null ? null : find(child, type, caption);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+
+/**
+ * Base class of the {@link BatchedStatementDelegate}s of the demo. Subclasses
+ * write rows with {@link #prepareWrite(Connection, String)} and
+ * {@link #executeWrite(PreparedStatement, String, RowItem)}, which run the
+ * write right away or, in batch mode, add it to the JDBC batch of its
+ * statement.
+ * <p>
+ * A batched removal must remove exactly one row and a batched update or
+ * insert at least one; otherwise {@link #executeBatch()} fails with the same
+ * messages SQLContainer uses for writes that are not batched. A write the
+ * driver reports as failed, or a batch with a result missing, fails too.
+ */
+@SuppressWarnings("serial")
+public abstract class AbstractBatchedStatementDelegate implements
+        BatchedStatementDelegate {
+
+    private final String deleteQuery;
+
+    private boolean batchMode = false;
+    private transient Map<String, WriteBatch> batches;
+
+    private static class WriteBatch {
+        private final PreparedStatement statement;
+        private final List<RowItem> rows = new ArrayList<RowItem>();
+
+        private WriteBatch(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * @param deleteQuery
+     *            the statement removing a row, whose batched results must be
+     *            exactly one
+     */
+    protected AbstractBatchedStatementDelegate(String deleteQuery) {
+        this.deleteQuery = deleteQuery;
+    }
+
+    /**
+     * Enables or disables batch mode. In batch mode <code>storeRow</code> and
+     * <code>removeRow</code> only add the writes to JDBC batches and report
+     * success; the batches are executed by {@link #executeBatch()} when the
+     * transaction is committed.
+     *
+     * @param batchMode
+     *            true to enable batch mode
+     */
+    public void setBatchMode(boolean batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public boolean isBatchMode() {
+        return batchMode;
+    }
+
+    public Map<RowId, RowId> executeBatch() throws SQLException {
+        try {
+            for (Map.Entry<String, WriteBatch> e : getBatches().entrySet()) {
+                WriteBatch batch = e.getValue();
+                int[] results = batch.statement.executeBatch();
+                if (results.length != batch.rows.size()) {
+                    throw new SQLException("Batch of " + batch.rows.size()
+                            + " writes returned " + results.length
+                            + " results");
+                }
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == Statement.SUCCESS_NO_INFO) {
+                        continue;
+                    }
+                    if (deleteQuery.equals(e.getKey()) && results[i] != 1) {
+                        throw new SQLException(
+                                "Removal failed for row with ID: "
+                                        + batch.rows.get(i).getId());
+                    } else if (results[i] == Statement.EXECUTE_FAILED) {
+                        throw new SQLException("Write failed for row with ID: "
+                                + batch.rows.get(i).getId());
+                    } else if (results[i] == 0) {
+                        throw new SQLException("Item with the ID '"
+                                + batch.rows.get(i).getId()
+                                + "' has been externally modified.");
+                    }
+                }
+                written(batch.statement, e.getKey(), batch.rows);
+            }
+            return Collections.emptyMap();
+        } finally {
+            closeBatches();
+        }
+    }
+
+    public void clearBatch() {
+        closeBatches();
+    }
+
+    /**
+     * Returns the statement to set the values of a write to. In batch mode
+     * the statement of the batch of the query is returned.
+     */
+    protected PreparedStatement prepareWrite(Connection conn, String query)
+            throws SQLException {
+        if (batchMode) {
+            WriteBatch batch = getBatches().get(query);
+            if (batch == null) {
+                batch = new WriteBatch(prepareStatement(conn, query));
+                getBatches().put(query, batch);
+            }
+            return batch.statement;
+        }
+        return prepareStatement(conn, query);
+    }
+
+    /**
+     * Prepares the statement of a write. Override to e.g. request generated
+     * keys.
+     */
+    protected PreparedStatement prepareStatement(Connection conn, String query)
+            throws SQLException {
+        return conn.prepareStatement(query);
+    }
+
+    /**
+     * Executes a write whose values have been set to the statement returned
+     * by {@link #prepareWrite(Connection, String)}. In batch mode the write
+     * is added to the batch and reported successful.
+     *
+     * @return the number of rows written
+     */
+    protected int executeWrite(PreparedStatement statement, String query,
+            RowItem row) throws SQLException {
+        if (batchMode) {
+            statement.addBatch();
+            getBatches().get(query).rows.add(row);
+            return 1;
+        }
+        int rowsChanged = statement.executeUpdate();
+        if (rowsChanged > 0) {
+            written(statement, query, Collections.singletonList(row));
+        }
+        statement.close();
+        return rowsChanged;
+    }
+
+    /**
+     * Called when writes have been executed successfully, before the
+     * statement is closed. Does nothing by default.
+     *
+     * @param statement
+     *            the statement that was executed
+     * @param query
+     *            the query of the statement
+     * @param rows
+     *            the rows written, in the order of the writes
+     */
+    protected void written(PreparedStatement statement, String query,
+            List<RowItem> rows) throws SQLException {
+    }
+
+    private void closeBatches() {
+        if (batches == null) {
+            return;
+        }
+        for (WriteBatch batch : batches.values()) {
+            try {
+                batch.statement.close();
+            } catch (SQLException e) {
+                // Nothing needs to be done
+            }
+        }
+        batches = null;
+    }
+
+    private Map<String, WriteBatch> getBatches() {
+        if (batches == null) {
+            batches = new LinkedHashMap<String, WriteBatch>();
+        }
+        return batches;
+    }
+}
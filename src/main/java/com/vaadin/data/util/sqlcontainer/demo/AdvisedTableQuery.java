@@ -0,0 +1,117 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.QueryContext;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+import com.vaadin.data.util.sqlcontainer.query.TableQuery;
+
+/**
+ * TableQuery that reports the filters and sort orders it is queried with to
+ * an {@link IndexAdvisor}. The reads run in a {@link QueryContext} holding
+ * the filters and the sort order, so that a slow statement can be traced back
+ * to them.
+ * <p>
+ * A count already known for a filter, e.g. from a cached search result, can
+ * be handed to the query with {@link #setKnownCount(Filter, int)} to save the
+ * COUNT statement.
+ */
+@SuppressWarnings("serial")
+public class AdvisedTableQuery extends TableQuery {
+
+    private final IndexAdvisor indexAdvisor;
+    private List<Filter> filters;
+    private List<OrderBy> orderBys;
+
+    /* Count to return for the next count of this filter alone */
+    private Filter knownCountFilter;
+    private int knownCount;
+
+    public AdvisedTableQuery(String tableName,
+            JDBCConnectionPool connectionPool, IndexAdvisor indexAdvisor)
+            throws SQLException {
+        super(tableName, connectionPool);
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    @Override
+    public void setFilters(List<Filter> filters)
+            throws UnsupportedOperationException {
+        super.setFilters(filters);
+        this.filters = filters;
+        if (indexAdvisor != null) {
+            indexAdvisor.observeFilters(getTableName(), filters);
+        }
+    }
+
+    @Override
+    public void setOrderBy(List<OrderBy> orderBys)
+            throws UnsupportedOperationException {
+        super.setOrderBy(orderBys);
+        this.orderBys = orderBys;
+        if (indexAdvisor != null) {
+            indexAdvisor.observeOrderBy(getTableName(), filters, orderBys);
+        }
+    }
+
+    /**
+     * Sets the number of rows passing a filter. The next count of the query
+     * while the filter is its only filter returns the count instead of
+     * running a COUNT statement. The count is used once.
+     * 
+     * @param filter
+     *            the filter
+     * @param count
+     *            the number of rows passing the filter
+     */
+    public void setKnownCount(Filter filter, int count) {
+        knownCountFilter = filter;
+        knownCount = count;
+    }
+
+    @Override
+    public int getCount() throws SQLException {
+        if (knownCountFilter != null && filters != null
+                && filters.size() == 1
+                && knownCountFilter.equals(filters.get(0))) {
+            knownCountFilter = null;
+            return knownCount;
+        }
+        QueryContext.enter(getTableName() + " count", filters, orderBys);
+        try {
+            return super.getCount();
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    @Override
+    public ResultSet getResults(int offset, int pagelength)
+            throws SQLException {
+        QueryContext.enter(getTableName() + " results", filters, orderBys);
+        try {
+            return super.getResults(offset, pagelength);
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    @Override
+    public boolean containsRowWithKey(Object... keys) throws SQLException {
+        QueryContext.enter(getTableName() + " containsRowWithKey", filters,
+                null);
+        try {
+            return super.containsRowWithKey(keys);
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    public IndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+}
@@ -0,0 +1,235 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.SQLException;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.Application;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+import com.vaadin.data.util.sqlcontainer.SQLContainer;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
+
+/**
+ * Commits the changes to a row of an SQLContainer on a background thread, so
+ * that a slow database does not keep the application lock, and with it the
+ * whole session, blocked for the length of the transaction.
+ * <p>
+ * The row is written with a separate <i>writer</i> query for the same table,
+ * as the container's own query must stay usable for the requests served
+ * while the write is running. Once the writer has committed, the buffered
+ * changes of the container are dropped and the container is refreshed under
+ * the application lock, and the {@link Callback} is called. As every buffered
+ * change is dropped, not only those of the row, the container must not be
+ * changed at all while a commit is in flight: the form showing the row should
+ * be read-only and the controls adding, editing or removing rows disabled
+ * until the callback has been called. As the callback runs outside of a
+ * request, the client has to poll for its changes, e.g. with a
+ * ProgressIndicator.
+ * <p>
+ * Writes run on a bounded pool: at most <code>maxThreads</code> at a time,
+ * which also bounds the connections they take, and at most
+ * <code>maxQueued</code> waiting. When the queue is full the write runs on the
+ * calling thread, as a synchronous commit would. On JDK 21 and later the
+ * threads are virtual threads.
+ */
+public class AsyncCommitter {
+
+    /**
+     * Receives the outcome of a commit. The methods are called while holding
+     * the application lock.
+     */
+    public interface Callback {
+        /**
+         * Called when the row has been committed and the container
+         * refreshed.
+         *
+         * @param rowIdChange
+         *            the change of the row id if the row was added, otherwise
+         *            null
+         */
+        public void commitSucceeded(QueryDelegate.RowIdChangeEvent rowIdChange);
+
+        /**
+         * Called when the row could not be committed. The container still
+         * holds the buffered changes.
+         *
+         * @param e
+         *            the cause
+         */
+        public void commitFailed(Exception e);
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a committer.
+     *
+     * @param maxThreads
+     *            the largest number of concurrent writes
+     * @param maxQueued
+     *            the largest number of writes waiting for a thread
+     */
+    public AsyncCommitter(int maxThreads, int maxQueued) {
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueued),
+                createThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Commits an added or modified row.
+     *
+     * @param application
+     *            the application whose lock is held when the container is
+     *            refreshed
+     * @param container
+     *            the container holding the changes of the row
+     * @param writer
+     *            the query to write the row with; not the container's own
+     *            query
+     * @param row
+     *            the row to insert or update
+     * @param callback
+     *            the callback
+     */
+    public void store(Application application, SQLContainer container,
+            QueryDelegate writer, RowItem row, Callback callback) {
+        submit(application, container, writer, row, false, callback);
+    }
+
+    /**
+     * Commits the removal of a row.
+     *
+     * @see #store(Application, SQLContainer, QueryDelegate, RowItem, Callback)
+     */
+    public void remove(Application application, SQLContainer container,
+            QueryDelegate writer, RowItem row, Callback callback) {
+        submit(application, container, writer, row, true, callback);
+    }
+
+    private void submit(final Application application,
+            final SQLContainer container, final QueryDelegate writer,
+            final RowItem row, final boolean remove, final Callback callback) {
+        executor.execute(new Runnable() {
+            public void run() {
+                QueryDelegate.RowIdChangeEvent rowIdChange = null;
+                Exception failure = null;
+                try {
+                    rowIdChange = write(writer, row, remove);
+                } catch (SQLException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                synchronized (application) {
+                    if (failure != null) {
+                        callback.commitFailed(failure);
+                        return;
+                    }
+                    try {
+                        /*
+                         * Drop the changes that have now been written. The
+                         * empty commit refreshes the container and notifies
+                         * the containers of other sessions.
+                         */
+                        container.rollback();
+                        container.commit();
+                    } catch (SQLException e) {
+                        getLogger().log(Level.WARNING,
+                                "Refreshing the container failed", e);
+                    }
+                    callback.commitSucceeded(rowIdChange);
+                }
+            }
+        });
+    }
+
+    /*
+     * Writes the row in a transaction of its own, as SQLContainer.commit()
+     * would. A writer is used by one commit at a time.
+     */
+    private QueryDelegate.RowIdChangeEvent write(QueryDelegate writer,
+            RowItem row, boolean remove) throws SQLException {
+        final QueryDelegate.RowIdChangeEvent[] rowIdChange = new QueryDelegate.RowIdChangeEvent[1];
+        QueryDelegate.RowIdChangeListener listener = new QueryDelegate.RowIdChangeListener() {
+            public void rowIdChange(QueryDelegate.RowIdChangeEvent event) {
+                rowIdChange[0] = event;
+            }
+        };
+        synchronized (writer) {
+            if (writer instanceof QueryDelegate.RowIdChangeNotifier) {
+                ((QueryDelegate.RowIdChangeNotifier) writer)
+                        .addListener(listener);
+            }
+            try {
+                writer.beginTransaction();
+                if (remove) {
+                    if (!writer.removeRow(row)) {
+                        throw new SQLException(
+                                "Removal failed for row with ID: "
+                                        + row.getId());
+                    }
+                } else if (writer.storeRow(row) == 0) {
+                    throw new ConcurrentModificationException("Item with the ID '"
+                            + row.getId() + "' has been externally modified.");
+                }
+                writer.commit();
+            } catch (SQLException e) {
+                writer.rollback();
+                throw e;
+            } catch (RuntimeException e) {
+                writer.rollback();
+                throw e;
+            } finally {
+                if (writer instanceof QueryDelegate.RowIdChangeNotifier) {
+                    ((QueryDelegate.RowIdChangeNotifier) writer)
+                            .removeListener(listener);
+                }
+            }
+        }
+        return rowIdChange[0];
+    }
+
+    /**
+     * Stops the threads once the writes already submitted have completed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /*
+     * Virtual threads are looked up reflectively as the demo is compiled for
+     * older JDKs.
+     */
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "AsyncCommitter-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(
+                    builder);
+        } catch (Exception e) {
+            // Not available before JDK 21
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AsyncCommitter-"
+                        + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(AsyncCommitter.class.getName());
+    }
+}
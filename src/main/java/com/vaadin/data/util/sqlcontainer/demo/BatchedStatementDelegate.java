@@ -0,0 +1,34 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.query.FreeformStatementDelegate;
+
+/**
+ * FreeformStatementDelegate that may defer the writes of
+ * <code>storeRow</code> and <code>removeRow</code> and send them to the
+ * database as JDBC batches, one batch per statement shape. The deferred writes
+ * are executed by {@link DemoFreeformQuery} right before the transaction is
+ * committed.
+ */
+public interface BatchedStatementDelegate extends FreeformStatementDelegate {
+
+    /**
+     * Executes all writes deferred in the current transaction. Writes are
+     * executed in the order their statement shapes were first used.
+     *
+     * @return the final row ids of the rows inserted in the current
+     *         transaction, keyed by their temporary row ids
+     * @throws SQLException
+     *             if a write fails, or if an update or removal did not affect
+     *             exactly one row
+     */
+    public Map<RowId, RowId> executeBatch() throws SQLException;
+
+    /**
+     * Discards all writes deferred in the current transaction.
+     */
+    public void clearBatch();
+}
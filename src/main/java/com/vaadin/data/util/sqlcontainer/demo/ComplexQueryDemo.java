@@ -3,21 +3,38 @@ package com.vaadin.data.util.sqlcontainer.demo;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
 
 import com.vaadin.Application;
 import com.vaadin.data.util.sqlcontainer.SQLContainer;
 import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
-import com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool;
-import com.vaadin.data.util.sqlcontainer.query.FreeformQuery;
+import com.vaadin.data.util.sqlcontainer.demo.connection.ConcurrentJDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.InstrumentedConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SlowQueryLog;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SqlStatistics;
+import com.vaadin.data.util.sqlcontainer.query.TableQuery;
 import com.vaadin.data.Container;
 import com.vaadin.ui.Table;
 import com.vaadin.ui.Window;
 
 public class ComplexQueryDemo extends Application {
 
+    /**
+     * Application property that backs the container with a materialized copy
+     * of the join instead of running the join for every page.
+     */
+    public static final String MATERIALIZED_JOIN_PROPERTY = "materializedJoin";
+
+    /**
+     * Execution statistics of the SQL of all sessions.
+     */
+    private static final SqlStatistics SQL_STATISTICS = new SqlStatistics();
+
+    /**
+     * Connection pool shared by all sessions, created by the first one.
+     */
+    private static JDBCConnectionPool sharedConnectionPool = null;
+    private static IndexAdvisor sharedIndexAdvisor = null;
+
     @Override
     public void init() {
         Window mainWindow = new Window("Complex query demo");
@@ -39,83 +56,96 @@ public class ComplexQueryDemo extends Application {
     }
 
     private Container buildContainer() throws SQLException {
-        SimpleJDBCConnectionPool connectionPool = new SimpleJDBCConnectionPool(
-                "org.hsqldb.jdbc.JDBCDriver", "jdbc:hsqldb:mem:sqlcontainer",
-                "SA", "", 2, 5);
-        // SimpleJDBCConnectionPool connectionPool = new
-        // SimpleJDBCConnectionPool(
-        // "com.mysql.jdbc.Driver", "jdbc:mysql://localhost/sqlcontainer",
-        // "sqlcontainer", "sqlcontainer", 2, 2);
+        JDBCConnectionPool connectionPool = getSharedConnectionPool();
 
         initDatabase(connectionPool);
         fillDatabase(connectionPool);
-        SQLContainer container = new SQLContainer(new FreeformQuery(
-                "SELECT * FROM PEOPLE P INNER JOIN ADDRESS A ON P.ADDRESS_ID = A.ID "
-                        + "INNER JOIN EMPLOYEES E ON E.PERSON_ID = P.ID "
-                        + "INNER JOIN COMPANIES C ON E.COMPANY_ID = C.ID",
-                connectionPool));
+        if (Boolean.parseBoolean(getProperty(MATERIALIZED_JOIN_PROPERTY))) {
+            /* Scroll and sort the flat table kept up to date by triggers */
+            new MaterializedJoin(connectionPool).create();
+            TableQuery query = new AdvisedTableQuery(
+                    MaterializedJoin.TABLE_NAME, connectionPool, null);
+            return new SQLContainer(query);
+        }
+        DemoFreeformQuery query = new DemoFreeformQuery(
+                JoinFreeformStatementDelegate.getQueryString(), connectionPool,
+                "EMPLOYEE_ID");
+        JoinFreeformStatementDelegate delegate = new JoinFreeformStatementDelegate();
+        /* The generated data only refers to existing rows */
+        delegate.setCardinalityPreserving(true);
+        delegate.setBatchMode(true);
+        delegate.setIndexAdvisor(getSharedIndexAdvisor(connectionPool, Boolean
+                .parseBoolean(getProperty(
+                        SQLContainerDemo.AUTO_CREATE_INDEXES_PROPERTY))));
+        query.setDelegate(delegate);
+        SQLContainer container = new SQLContainer(query);
         return container;
     }
 
+    /**
+     * Returns the connection pool of all sessions, creating it and
+     * registering its statistics on first use.
+     */
+    private static synchronized JDBCConnectionPool getSharedConnectionPool()
+            throws SQLException {
+        if (sharedConnectionPool == null) {
+            InstrumentedConnectionPool instrumentedPool = new InstrumentedConnectionPool(
+                    new ConcurrentJDBCConnectionPool(
+                            "org.hsqldb.jdbc.JDBCDriver",
+                            "jdbc:hsqldb:mem:sqlcontainer", "SA", "", 2, 20),
+                    SQL_STATISTICS);
+            instrumentedPool.setSlowQueryLog(SlowQueryLog.getDefault());
+            SQL_STATISTICS.registerMBean("employees");
+            // SimpleJDBCConnectionPool connectionPool = new
+            // SimpleJDBCConnectionPool(
+            // "com.mysql.jdbc.Driver", "jdbc:mysql://localhost/sqlcontainer",
+            // "sqlcontainer", "sqlcontainer", 2, 2);
+            sharedConnectionPool = instrumentedPool;
+        }
+        return sharedConnectionPool;
+    }
+
+    /**
+     * Returns the index advisor of all sessions, so that the uses of a filter
+     * are counted and advised on once whichever session runs it. The first
+     * session decides whether indexes are created automatically.
+     */
+    private static synchronized IndexAdvisor getSharedIndexAdvisor(
+            JDBCConnectionPool connectionPool, boolean autoCreate) {
+        if (sharedIndexAdvisor == null) {
+            sharedIndexAdvisor = new IndexAdvisor(connectionPool);
+            sharedIndexAdvisor.setAutoCreate(autoCreate);
+        }
+        return sharedIndexAdvisor;
+    }
+
     private void fillDatabase(JDBCConnectionPool connectionPool) {
-        Random rnd = new Random(System.currentTimeMillis());
-        Connection conn = null;
+        JoinDataGenerator generator = new JoinDataGenerator(connectionPool);
+        generator.setCompanies(10);
+        generator.setAddresses(10);
+        generator.setPeople(10);
+        generator.setEmployees(10);
         try {
-            conn = connectionPool.reserveConnection();
-            Statement statement = conn.createStatement();
-            for (int i = 0; i < 10; i++) {
-                String name = "company " + i;
-                statement
-                        .executeUpdate("INSERT INTO COMPANIES VALUES(DEFAULT, '"
-                                + name + "')");
-            }
-            for (int i = 0; i < 10; i++) {
-                String street = "Hameenkatu " + i;
-                statement.executeUpdate("INSERT INTO ADDRESS VALUES(DEFAULT, '"
-                        + street + "', '20500', 'Turku', 'na', 'Finland')");
-            }
-            List<String> firstnames = Arrays.asList("Bengt", "Börje", "Ritva",
-                    "Anu", "Allan", "Bill", "Leffe", "Ville", "Walter");
-            List<String> lastnames = Arrays.asList("Gates", "Meikäläinen",
-                    "Svensson", "Hermans", "Poirot");
-            for (int i = 0; i < 10; i++) {
-                String firstname = firstnames
-                        .get(rnd.nextInt(firstnames.size()));
-                String lastname = lastnames.get(rnd.nextInt(lastnames.size()));
-                String email = firstname + "." + lastname + "@gmail.com";
-                int addressId = rnd.nextInt(10);
-                statement.executeUpdate("INSERT INTO PEOPLE VALUES(DEFAULT, '"
-                        + firstname + "', '" + lastname + "', '040-86766" + i
-                        + "', '02-53433" + i + "', '" + email + "', "
-                        + addressId + ")");
-            }
-
-            for (int i = 0; i < 10; i++) {
-                String email = "employee" + i + "@foocompany.com";
-                int personId = rnd.nextInt(10);
-                int companyId = rnd.nextInt(10);
-                String phone = "02-1234" + i;
-                statement
-                        .executeUpdate("INSERT INTO EMPLOYEES VALUES(DEFAULT, "
-                                + personId + ", " + companyId + ", '" + phone
-                                + "', '" + email + "')");
-            }
-            statement.close();
-            conn.commit();
+            generator.generate();
         } catch (SQLException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
-        } finally {
-            connectionPool.releaseConnection(conn);
         }
     }
 
-    private void initDatabase(JDBCConnectionPool connectionPool) {
+    /**
+     * (Re)creates the tables of the join, dropping the existing ones.
+     *
+     * @param connectionPool
+     *            the pool of the database
+     */
+    public static void initDatabase(JDBCConnectionPool connectionPool) {
         Connection conn = null;
         try {
             conn = connectionPool.reserveConnection();
             Statement statement = conn.createStatement();
             try {
+                new MaterializedJoin(connectionPool).drop();
                 statement.executeUpdate("DROP TABLE PEOPLE");
                 statement.executeUpdate("DROP TABLE ADDRESS");
                 statement.executeUpdate("DROP TABLE EMPLOYEES");
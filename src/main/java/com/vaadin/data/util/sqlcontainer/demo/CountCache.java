@@ -0,0 +1,169 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.data.Container.Filter;
+
+/**
+ * Cache of row counts keyed by the set of filters that produced them. One
+ * instance can be shared by all the queries that read the same table, so that
+ * a filter state counted by one session is reused by the others.
+ * <p>
+ * The filters of a container are ANDed together, so their order does not
+ * matter and the cache key is the set of filters. Writes committed through
+ * {@link DemoFreeformQuery} invalidate the cache. Every entry is tagged with
+ * the version of the cache read before the count was started, and an entry of
+ * an older version is never returned. A count that was running while another
+ * session committed is thus not served, even if it is stored after the
+ * invalidation. Entries also expire after a configurable time, which covers
+ * writes made outside of the queries using this cache.
+ */
+@SuppressWarnings("serial")
+public class CountCache implements Serializable {
+
+    private final Map<Set<Filter>, Entry> counts = new ConcurrentHashMap<Set<Filter>, Entry>();
+    private final long timeToLive;
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private int approximateThreshold = 0;
+    private int sampleSize = 10000;
+
+    /**
+     * Creates a new count cache.
+     *
+     * @param timeToLive
+     *            time in milliseconds after which a cached count is fetched
+     *            again from the database
+     */
+    public CountCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    private static class Entry implements Serializable {
+        private final int count;
+        private final long version;
+        private final long created = System.currentTimeMillis();
+
+        private Entry(int count, long version) {
+            this.count = count;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Returns the current version of the cache. The version must be read
+     * before counting and passed to
+     * {@link #put(Collection, int, long)} with the count.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the cached count for the given filters.
+     *
+     * @param filters
+     *            the filters of the count query, may be null
+     * @return the count, or null if it is not cached
+     */
+    public Integer get(Collection<Filter> filters) {
+        Set<Filter> key = getKey(filters);
+        Entry entry = counts.get(key);
+        if (entry != null
+                && (entry.version != version.get() || entry.created
+                        + timeToLive < System.currentTimeMillis())) {
+            counts.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.count;
+    }
+
+    /**
+     * Stores a count for the given filters. A count started before the cache
+     * was last invalidated is not stored.
+     *
+     * @param filters
+     *            the filters of the count query, may be null
+     * @param count
+     *            the number of rows matching the filters
+     * @param version
+     *            the version of the cache read before the count was started
+     */
+    public void put(Collection<Filter> filters, int count, long version) {
+        if (version == this.version.get()) {
+            counts.put(getKey(filters), new Entry(count, version));
+        }
+    }
+
+    /**
+     * Drops the cached counts after the table has been written to. Counts
+     * running at the time are not stored.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        counts.clear();
+    }
+
+    private Set<Filter> getKey(Collection<Filter> filters) {
+        if (filters == null) {
+            return new HashSet<Filter>();
+        }
+        return new HashSet<Filter>(filters);
+    }
+
+    /**
+     * Sets the table size above which
+     * {@link DemoFreeformQuery#getEstimatedCount()} estimates the counts of
+     * filtered queries from random key ranges of the table instead of
+     * counting them exactly. The size of a container is always counted
+     * exactly.
+     *
+     * @param approximateThreshold
+     *            the row count threshold, 0 to always count exactly
+     */
+    public void setApproximateThreshold(int approximateThreshold) {
+        this.approximateThreshold = approximateThreshold;
+    }
+
+    public int getApproximateThreshold() {
+        return approximateThreshold;
+    }
+
+    /**
+     * Sets the approximate number of rows sampled when a count is estimated.
+     *
+     * @param sampleSize
+     *            the sample size
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
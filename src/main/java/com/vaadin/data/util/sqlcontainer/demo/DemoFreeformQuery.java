@@ -0,0 +1,388 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.QueryContext;
+import com.vaadin.data.util.sqlcontainer.query.FreeformQuery;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+
+/**
+ * FreeformQuery that reports the rows of every fetched page back to its
+ * {@link DemoFreeformQueryDelegate}, which allows the delegate to page with
+ * seek conditions instead of large offsets.
+ * <p>
+ * If a {@link CountCache} is set, row counts are served from the cache and
+ * a committed transaction that wrote rows through this query invalidates it.
+ * Counts of large tables can also be estimated for display with
+ * {@link #getEstimatedCount()}.
+ * <p>
+ * The reads run in a {@link QueryContext} naming the delegate and holding the
+ * filters and the sort order, so that a slow statement can be traced back to
+ * them.
+ * <p>
+ * Writes deferred by a {@link BatchedStatementDelegate} are executed right
+ * before the transaction is committed. RowIdChangeEvents are fired after the
+ * commit for every inserted row whose final id is reported by the delegate.
+ */
+@SuppressWarnings("serial")
+public class DemoFreeformQuery extends FreeformQuery implements
+        QueryDelegate.RowIdChangeNotifier {
+
+    private final JDBCConnectionPool connectionPool;
+    private CountCache countCache;
+    private List<Filter> filters;
+    private List<OrderBy> orderBys;
+
+    /* Number of key ranges an estimated count is sampled from */
+    private static final int SAMPLED_RANGES = 32;
+
+    /* True if rows have been written in the current transaction */
+    private boolean rowsWritten = false;
+
+    private List<RowIdChangeListener> rowIdChangeListeners;
+
+    public DemoFreeformQuery(String queryString,
+            JDBCConnectionPool connectionPool, String... primaryKeyColumns) {
+        super(queryString, connectionPool, primaryKeyColumns);
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public ResultSet getResults(int offset, int pagelength)
+            throws SQLException {
+        ResultSet rs;
+        enterContext("results");
+        try {
+            rs = super.getResults(offset, pagelength);
+        } finally {
+            QueryContext.exit();
+        }
+        if (getDelegate() instanceof DemoFreeformQueryDelegate) {
+            return ((DemoFreeformQueryDelegate) getDelegate())
+                    .trackPageBoundaries(offset, rs);
+        }
+        return rs;
+    }
+
+    @Override
+    public int getCount() throws SQLException {
+        enterContext("count");
+        try {
+            return countCached();
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    private int countCached() throws SQLException {
+        if (countCache == null) {
+            return super.getCount();
+        }
+        Integer cached = countCache.get(filters);
+        if (cached != null) {
+            return cached;
+        }
+        return countExactly();
+    }
+
+    private int countExactly() throws SQLException {
+        long version = countCache.getVersion();
+        int count = super.getCount();
+        countCache.put(filters, count, version);
+        return count;
+    }
+
+    /**
+     * Returns the number of rows matching the current filters for display,
+     * e.g. as "about 120000 matches". If the count is not cached and the
+     * table has more rows than the approximate threshold of the
+     * {@link CountCache}, the count is estimated from a sample of the table.
+     * Estimates are not cached and never returned by {@link #getCount()}, as
+     * a container whose size is too large pages past the end of the rows.
+     *
+     * @return the exact or estimated number of rows
+     * @throws SQLException
+     */
+    public int getEstimatedCount() throws SQLException {
+        enterContext("estimatedCount");
+        try {
+            if (countCache == null) {
+                return super.getCount();
+            }
+            Integer cached = countCache.get(filters);
+            if (cached != null) {
+                return cached;
+            }
+            if (filters != null && !filters.isEmpty()
+                    && countCache.getApproximateThreshold() > 0) {
+                int total = getUnfilteredCount();
+                if (total > countCache.getApproximateThreshold()) {
+                    Integer estimate = estimateCount(total);
+                    if (estimate != null) {
+                        return estimate;
+                    }
+                }
+            }
+            return countExactly();
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    private int getUnfilteredCount() throws SQLException {
+        Integer total = countCache.get(null);
+        if (total == null) {
+            long version = countCache.getVersion();
+            total = (int) executeCount("SELECT COUNT(*) FROM ("
+                    + getQueryString() + ") T", new StatementHelper())[0];
+            countCache.put(null, total, version);
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the number of rows matching the current filters from a
+     * sample of random ranges of the primary key. The matches in the ranges
+     * are scaled by the share of the table the ranges hold, so neither the
+     * order of the rows nor gaps in the keys bias the estimate. Returns null
+     * if the query does not have a single numeric primary key column, or the
+     * sampled ranges hold no rows.
+     */
+    private Integer estimateCount(int total) throws SQLException {
+        if (getPrimaryKeyColumns().size() != 1) {
+            return null;
+        }
+        String key = QueryBuilder.quote(getPrimaryKeyColumns().get(0));
+        String from = " FROM (" + getQueryString() + ") T";
+        long[] range = executeCount("SELECT MIN(" + key + "), MAX(" + key
+                + ")" + from, new StatementHelper());
+        if (range == null) {
+            return null;
+        }
+        /* Keys per range so that the ranges hold about the sample size */
+        long keys = range[1] - range[0] + 1;
+        long span = Math.max(1, keys
+                * Math.min(countCache.getSampleSize(), total) / total
+                / SAMPLED_RANGES);
+        long sampled = 0;
+        long matches = 0;
+        for (int i = 0; i < SAMPLED_RANGES; i++) {
+            long start = range[0]
+                    + (long) (Math.random() * Math.max(1, keys - span + 1));
+            StatementHelper sh = new StatementHelper();
+            String query = "SELECT COUNT(*), COUNT(CASE WHEN "
+                    + getPredicate(sh) + " THEN 1 END)" + from + " WHERE "
+                    + key + " >= ? AND " + key + " < ?";
+            sh.addParameterValue(start);
+            sh.addParameterValue(start + span);
+            long[] counts = executeCount(query, sh);
+            sampled += counts[0];
+            matches += counts[1];
+        }
+        if (sampled == 0) {
+            return null;
+        }
+        return (int) (matches * total / sampled);
+    }
+
+    /* The current filters ANDed together, without the WHERE keyword */
+    private String getPredicate(StatementHelper sh) {
+        StringBuilder predicate = new StringBuilder();
+        for (Filter filter : filters) {
+            if (predicate.length() > 0) {
+                predicate.append(" AND ");
+            }
+            predicate.append(QueryBuilder.group(QueryBuilder
+                    .getWhereStringForFilter(filter, sh)));
+        }
+        return predicate.toString();
+    }
+
+    /**
+     * Runs a query returning numbers in a single row.
+     *
+     * @return the numbers, or null if a column is null or not a number
+     */
+    private long[] executeCount(String query, StatementHelper sh)
+            throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(query);
+            try {
+                sh.setParameterValuesToStatement(pstmt);
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                long[] values = new long[rs.getMetaData().getColumnCount()];
+                for (int i = 0; i < values.length; i++) {
+                    Object value = rs.getObject(i + 1);
+                    if (!(value instanceof Number)) {
+                        values = null;
+                        break;
+                    }
+                    values[i] = ((Number) value).longValue();
+                }
+                rs.close();
+                return values;
+            } finally {
+                pstmt.close();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public boolean containsRowWithKey(Object... keys) throws SQLException {
+        enterContext("containsRowWithKey");
+        try {
+            return super.containsRowWithKey(keys);
+        } finally {
+            QueryContext.exit();
+        }
+    }
+
+    private void enterContext(String call) {
+        QueryContext.enter((getDelegate() == null ? "FreeformQuery"
+                : getDelegate().getClass().getSimpleName())
+                + " " + call, filters, orderBys);
+    }
+
+    @Override
+    public void setFilters(List<Filter> filters)
+            throws UnsupportedOperationException {
+        super.setFilters(filters);
+        this.filters = filters == null ? null : new ArrayList<Filter>(filters);
+    }
+
+    @Override
+    public void setOrderBy(List<OrderBy> orderBys)
+            throws UnsupportedOperationException {
+        super.setOrderBy(orderBys);
+        this.orderBys = orderBys;
+    }
+
+    @Override
+    public int storeRow(RowItem row) throws SQLException {
+        int result = super.storeRow(row);
+        rowsWritten = true;
+        return result;
+    }
+
+    @Override
+    public boolean removeRow(RowItem row) throws SQLException {
+        boolean result = super.removeRow(row);
+        rowsWritten = true;
+        return result;
+    }
+
+    @Override
+    public synchronized void commit() throws UnsupportedOperationException,
+            SQLException {
+        Map<RowId, RowId> newIds = Collections.emptyMap();
+        if (getDelegate() instanceof BatchedStatementDelegate) {
+            newIds = ((BatchedStatementDelegate) getDelegate()).executeBatch();
+        }
+        super.commit();
+        if (countCache != null && rowsWritten) {
+            countCache.invalidate();
+        }
+        rowsWritten = false;
+        fireRowIdChanges(newIds);
+    }
+
+    @Override
+    public synchronized void rollback() throws UnsupportedOperationException,
+            SQLException {
+        if (getDelegate() instanceof BatchedStatementDelegate) {
+            ((BatchedStatementDelegate) getDelegate()).clearBatch();
+        }
+        rowsWritten = false;
+        super.rollback();
+    }
+
+    private void fireRowIdChanges(Map<RowId, RowId> newIds) {
+        if (rowIdChangeListeners == null || rowIdChangeListeners.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<RowId, RowId> e : newIds.entrySet()) {
+            RowIdChangeEvent event = new RowIdChangeEvent(e.getKey(),
+                    e.getValue());
+            for (RowIdChangeListener r : rowIdChangeListeners) {
+                r.rowIdChange(event);
+            }
+        }
+    }
+
+    /**
+     * Simple RowIdChangeEvent implementation.
+     */
+    public static class RowIdChangeEvent extends EventObject implements
+            QueryDelegate.RowIdChangeEvent {
+        private final RowId oldId;
+        private final RowId newId;
+
+        private RowIdChangeEvent(RowId oldId, RowId newId) {
+            super(oldId);
+            this.oldId = oldId;
+            this.newId = newId;
+        }
+
+        public RowId getNewRowId() {
+            return newId;
+        }
+
+        public RowId getOldRowId() {
+            return oldId;
+        }
+    }
+
+    /**
+     * Adds RowIdChangeListener to this query
+     */
+    public void addListener(RowIdChangeListener listener) {
+        if (rowIdChangeListeners == null) {
+            rowIdChangeListeners = new LinkedList<QueryDelegate.RowIdChangeListener>();
+        }
+        rowIdChangeListeners.add(listener);
+    }
+
+    /**
+     * Removes the given RowIdChangeListener from this query
+     */
+    public void removeListener(RowIdChangeListener listener) {
+        if (rowIdChangeListeners != null) {
+            rowIdChangeListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Sets the cache used for row counts. The same cache may be shared by all
+     * queries reading the same table.
+     *
+     * @param countCache
+     *            the count cache, or null to always count from the database
+     */
+    public void setCountCache(CountCache countCache) {
+        this.countCache = countCache;
+    }
+
+    public CountCache getCountCache() {
+        return countCache;
+    }
+}
@@ -2,23 +2,56 @@ package com.vaadin.data.util.sqlcontainer.demo;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import com.vaadin.data.util.sqlcontainer.RowId;
 import com.vaadin.data.util.sqlcontainer.RowItem;
 import com.vaadin.data.util.sqlcontainer.TemporaryRowId;
 import com.vaadin.data.util.sqlcontainer.SQLUtil;
-import com.vaadin.data.util.sqlcontainer.query.FreeformStatementDelegate;
+import com.vaadin.data.util.sqlcontainer.demo.connection.DelegatingResultSet;
 import com.vaadin.data.util.sqlcontainer.query.OrderBy;
 import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
 import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
 import com.vaadin.data.Container.Filter;
 
 @SuppressWarnings("serial")
-public class DemoFreeformQueryDelegate implements FreeformStatementDelegate {
+public class DemoFreeformQueryDelegate extends AbstractBatchedStatementDelegate {
+
+    /**
+     * Maximum number of page boundaries remembered in keyset paging mode.
+     */
+    private static final int MAX_PAGE_BOUNDARIES = 1000;
+
+    private static final String INSERT_QUERY = "INSERT INTO PEOPLE VALUES(DEFAULT, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE PEOPLE SET FIRSTNAME = ?, LASTNAME = ?, COMPANY = ?, MOBILE = ?, WORKPHONE = ?, HOMEPHONE = ?, WORKEMAIL = ?, HOMEEMAIL = ?, STREET = ?, ZIP = ?, CITY = ?, STATE = ?, COUNTRY = ? WHERE ID = ?";
+    private static final String DELETE_QUERY = "DELETE FROM people WHERE ID = ?";
 
     private List<Filter> filters;
     private List<OrderBy> orderBys;
+    private IndexAdvisor indexAdvisor;
+
+    /**
+     * Keyset paging state. Maps the index of the first row of a page to the
+     * ORDER BY key tuple of the row just before it, so that the page can be
+     * fetched with a seek condition instead of walking the OFFSET rows.
+     */
+    private boolean keysetPaging = false;
+    private final TreeMap<Integer, Object[]> pageBoundaries = new TreeMap<Integer, Object[]>();
+    private List<Filter> boundaryFilters;
+    private String boundaryOrder;
+
+    /* Final ids of the rows inserted in the current transaction */
+    private transient Map<RowId, RowId> generatedIds;
+
+    public DemoFreeformQueryDelegate() {
+        super(DELETE_QUERY);
+    }
 
     @Deprecated
     public String getQueryString(int offset, int limit)
@@ -30,14 +63,27 @@ public class DemoFreeformQueryDelegate implements FreeformStatementDelegate {
             throws UnsupportedOperationException {
         StatementHelper sh = new StatementHelper();
         StringBuffer query = new StringBuffer("SELECT * FROM PEOPLE ");
+        String where = "";
         if (filters != null) {
-            query.append(QueryBuilder.getWhereStringForFilters(
-                    filters, sh));
+            where = QueryBuilder.getWhereStringForFilters(filters, sh);
+            query.append(where);
+        }
+        Map.Entry<Integer, Object[]> boundary = getPageBoundary(offset);
+        if (boundary != null) {
+            query.append(where.length() == 0 ? " WHERE " : " AND ");
+            appendSeekCondition(query, boundary.getValue(), sh);
+            offset -= boundary.getKey();
         }
         query.append(getOrderByString());
         if (offset != 0 || limit != 0) {
-            query.append(" LIMIT ").append(limit);
-            query.append(" OFFSET ").append(offset);
+            /*
+             * Bind the paging values as parameters so that the statement text
+             * stays the same from page to page and can be reused from a
+             * statement cache.
+             */
+            query.append(" LIMIT ? OFFSET ?");
+            sh.addParameterValue(limit);
+            sh.addParameterValue(offset);
         }
         sh.setQueryString(query.toString());
         return sh;
@@ -50,19 +96,220 @@ public class DemoFreeformQueryDelegate implements FreeformStatementDelegate {
             OrderBy lastOrderBy = orderBys.get(orderBys.size() - 1);
             for (OrderBy orderBy : orderBys) {
                 orderBuffer.append(SQLUtil.escapeSQL(orderBy.getColumn()));
+                /*
+                 * NULLs sort as the lowest value, whatever the default of the
+                 * database, which the seek condition relies on.
+                 */
                 if (orderBy.isAscending()) {
-                    orderBuffer.append(" ASC");
+                    orderBuffer.append(" ASC NULLS FIRST");
                 } else {
-                    orderBuffer.append(" DESC");
+                    orderBuffer.append(" DESC NULLS LAST");
                 }
                 if (orderBy != lastOrderBy) {
                     orderBuffer.append(", ");
                 }
             }
         }
+        if (keysetPaging && !isOrderedById()) {
+            /* The ID makes the key tuple unique, so seeking is exact. */
+            orderBuffer.append(orderBuffer.length() == 0 ? " ORDER BY "
+                    : ", ");
+            orderBuffer.append("ID ASC");
+        }
         return orderBuffer.toString();
     }
 
+    /**
+     * Enables or disables keyset (seek) paging. When enabled, the key tuple
+     * of the last row of every fetched page is remembered, and a page that
+     * starts at or after a remembered position is fetched with a seek
+     * condition <code>(k1, k2, ID) &gt; (?, ?, ?)</code> instead of a large
+     * OFFSET. OFFSET is then only used for the distance from the nearest
+     * remembered position, i.e. for random jumps.
+     * <p>
+     * Keyset paging only works if the query is run through a
+     * {@link DemoFreeformQuery}, which reports the fetched rows back to this
+     * delegate.
+     * 
+     * @param keysetPaging
+     *            true to enable keyset paging
+     */
+    public void setKeysetPaging(boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+        pageBoundaries.clear();
+    }
+
+    public boolean isKeysetPaging() {
+        return keysetPaging;
+    }
+
+    /**
+     * Wraps the result set of a page query so that the key tuple of the last
+     * row read is remembered as the boundary of the next page.
+     * 
+     * @param offset
+     *            the offset the page was requested with
+     * @param rs
+     *            the result set of the page query
+     * @return a result set to hand to the container
+     */
+    public ResultSet trackPageBoundaries(final int offset, final ResultSet rs) {
+        if (!keysetPaging) {
+            return rs;
+        }
+        final List<String> keyColumns = getKeyColumns();
+        return new DelegatingResultSet(rs) {
+            private int rowsRead = 0;
+            private Object[] lastKey;
+
+            @Override
+            public boolean next() throws SQLException {
+                boolean hasNext = resultSet.next();
+                if (hasNext) {
+                    rowsRead++;
+                    lastKey = new Object[keyColumns.size()];
+                    for (int i = 0; i < lastKey.length; i++) {
+                        lastKey[i] = resultSet.getObject(keyColumns.get(i));
+                    }
+                } else if (lastKey != null) {
+                    addPageBoundary(offset + rowsRead, lastKey);
+                    lastKey = null;
+                }
+                return hasNext;
+            }
+        };
+    }
+
+    private Map.Entry<Integer, Object[]> getPageBoundary(int offset) {
+        if (!keysetPaging || offset == 0) {
+            return null;
+        }
+        validatePageBoundaries();
+        return pageBoundaries.floorEntry(offset);
+    }
+
+    private void addPageBoundary(int offset, Object[] key) {
+        validatePageBoundaries();
+        for (Object value : key) {
+            if (value == null) {
+                /* NULLs cannot be compared in a seek condition. */
+                return;
+            }
+        }
+        if (pageBoundaries.size() >= MAX_PAGE_BOUNDARIES) {
+            pageBoundaries.clear();
+        }
+        pageBoundaries.put(offset, key);
+    }
+
+    /**
+     * Forgets the remembered page boundaries if the filters or the sort order
+     * have changed since they were recorded.
+     */
+    private void validatePageBoundaries() {
+        String order = getOrderByString();
+        List<Filter> currentFilters = filters == null ? new ArrayList<Filter>()
+                : new ArrayList<Filter>(filters);
+        if (!order.equals(boundaryOrder)
+                || !currentFilters.equals(boundaryFilters)) {
+            pageBoundaries.clear();
+            boundaryOrder = order;
+            boundaryFilters = currentFilters;
+        }
+    }
+
+    private boolean isOrderedById() {
+        if (orderBys != null) {
+            for (OrderBy orderBy : orderBys) {
+                if ("ID".equalsIgnoreCase(orderBy.getColumn())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<String> getKeyColumns() {
+        List<String> keyColumns = new ArrayList<String>();
+        if (orderBys != null) {
+            for (OrderBy orderBy : orderBys) {
+                keyColumns.add(orderBy.getColumn());
+            }
+        }
+        if (!isOrderedById()) {
+            keyColumns.add("ID");
+        }
+        return keyColumns;
+    }
+
+    private List<Boolean> getKeyDirections() {
+        List<Boolean> ascending = new ArrayList<Boolean>();
+        if (orderBys != null) {
+            for (OrderBy orderBy : orderBys) {
+                ascending.add(orderBy.isAscending());
+            }
+        }
+        if (!isOrderedById()) {
+            ascending.add(true);
+        }
+        return ascending;
+    }
+
+    /**
+     * Appends a condition selecting the rows that sort after the given key
+     * tuple, i.e. <code>(k1, k2, ID) &gt; (?, ?, ?)</code> expanded column by
+     * column. The expansion also handles mixed sort directions, and some
+     * databases (HSQLDB among them) cannot type parameters inside a row value
+     * comparison. The leading range condition on the first key lets the
+     * database start from an index seek.
+     * <p>
+     * The key values are never NULL, boundaries with NULLs are not
+     * remembered. The ORDER BY sorts NULLs as the lowest value, so they come
+     * first in an ascending key and never follow the boundary, but come last
+     * in a descending key and always follow it; the conditions on descending
+     * keys therefore also accept NULL.
+     */
+    private void appendSeekCondition(StringBuffer query, Object[] key,
+            StatementHelper sh) {
+        List<String> columns = getKeyColumns();
+        List<Boolean> ascending = getKeyDirections();
+        appendKeyCondition(query, columns.get(0), ascending.get(0) ? " >= ?"
+                : " <= ?", !ascending.get(0));
+        sh.addParameterValue(key[0]);
+        query.append(" AND (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                query.append(" OR ");
+            }
+            query.append("(");
+            for (int j = 0; j < i; j++) {
+                query.append(SQLUtil.escapeSQL(columns.get(j))).append(
+                        " = ? AND ");
+                sh.addParameterValue(key[j]);
+            }
+            appendKeyCondition(query, columns.get(i), ascending.get(i) ? " > ?"
+                    : " < ?", !ascending.get(i));
+            query.append(")");
+            sh.addParameterValue(key[i]);
+        }
+        query.append(")");
+    }
+
+    /*
+     * Appends a comparison of a key column, which also accepts NULL if the
+     * column is nullable and NULLs follow the boundary.
+     */
+    private void appendKeyCondition(StringBuffer query, String column,
+            String comparison, boolean orNull) {
+        String escaped = SQLUtil.escapeSQL(column);
+        if (orNull && !"ID".equalsIgnoreCase(column)) {
+            query.append("(").append(escaped).append(comparison).append(
+                    " OR ").append(escaped).append(" IS NULL)");
+        } else {
+            query.append(escaped).append(comparison);
+        }
+    }
+
     @Deprecated
     public String getCountQuery() throws UnsupportedOperationException {
         throw new UnsupportedOperationException("Use getCountStatement method.");
@@ -83,30 +330,46 @@ public class DemoFreeformQueryDelegate implements FreeformStatementDelegate {
     public void setFilters(List<Filter> filters)
             throws UnsupportedOperationException {
         this.filters = filters;
+        if (indexAdvisor != null) {
+            indexAdvisor.observeFilters("PEOPLE", filters);
+        }
     }
 
     public void setOrderBy(List<OrderBy> orderBys)
             throws UnsupportedOperationException {
         this.orderBys = orderBys;
+        if (indexAdvisor != null) {
+            indexAdvisor.observeOrderBy("PEOPLE", filters, orderBys);
+        }
+    }
+
+    /**
+     * Sets the advisor that the filters and sort orders are reported to.
+     * 
+     * @param indexAdvisor
+     *            the advisor, or null
+     */
+    public void setIndexAdvisor(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    public IndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
     }
 
     public int storeRow(Connection conn, RowItem row) throws SQLException {
-        PreparedStatement statement = null;
+        pageBoundaries.clear();
         if (row.getId() instanceof TemporaryRowId) {
-            statement = conn
-                    .prepareStatement("INSERT INTO PEOPLE VALUES(DEFAULT, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            PreparedStatement statement = prepareWrite(conn, INSERT_QUERY);
             setRowValues(statement, row);
+            return executeWrite(statement, INSERT_QUERY, row);
         } else {
-            statement = conn
-                    .prepareStatement("UPDATE PEOPLE SET FIRSTNAME = ?, LASTNAME = ?, COMPANY = ?, MOBILE = ?, WORKPHONE = ?, HOMEPHONE = ?, WORKEMAIL = ?, HOMEEMAIL = ?, STREET = ?, ZIP = ?, CITY = ?, STATE = ?, COUNTRY = ? WHERE ID = ?");
+            PreparedStatement statement = prepareWrite(conn, UPDATE_QUERY);
             setRowValues(statement, row);
             statement
                     .setInt(14, (Integer) row.getItemProperty("ID").getValue());
+            return executeWrite(statement, UPDATE_QUERY, row);
         }
-
-        int retval = statement.executeUpdate();
-        statement.close();
-        return retval;
     }
 
     private void setRowValues(PreparedStatement statement, RowItem row)
@@ -140,12 +403,59 @@ public class DemoFreeformQueryDelegate implements FreeformStatementDelegate {
 
     public boolean removeRow(Connection conn, RowItem row)
             throws UnsupportedOperationException, SQLException {
-        PreparedStatement statement = conn
-                .prepareStatement("DELETE FROM people WHERE ID = ?");
+        pageBoundaries.clear();
+        PreparedStatement statement = prepareWrite(conn, DELETE_QUERY);
         statement.setInt(1, (Integer) row.getItemProperty("ID").getValue());
-        int rowsChanged = statement.executeUpdate();
-        statement.close();
-        return rowsChanged == 1;
+        return executeWrite(statement, DELETE_QUERY, row) == 1;
+    }
+
+    @Override
+    public Map<RowId, RowId> executeBatch() throws SQLException {
+        try {
+            super.executeBatch();
+            return getGeneratedIds();
+        } finally {
+            generatedIds = null;
+        }
+    }
+
+    @Override
+    public void clearBatch() {
+        super.clearBatch();
+        generatedIds = null;
+    }
+
+    @Override
+    protected PreparedStatement prepareStatement(Connection conn, String query)
+            throws SQLException {
+        if (INSERT_QUERY.equals(query)) {
+            return conn.prepareStatement(query, new String[] { "ID" });
+        }
+        return conn.prepareStatement(query);
+    }
+
+    @Override
+    protected void written(PreparedStatement statement, String query,
+            List<RowItem> rows) throws SQLException {
+        if (!INSERT_QUERY.equals(query)) {
+            return;
+        }
+        ResultSet generatedKeys = statement.getGeneratedKeys();
+        for (RowItem row : rows) {
+            if (!generatedKeys.next()) {
+                break;
+            }
+            getGeneratedIds().put(row.getId(),
+                    new RowId(new Object[] { generatedKeys.getObject(1) }));
+        }
+        generatedKeys.close();
+    }
+
+    private Map<RowId, RowId> getGeneratedIds() {
+        if (generatedIds == null) {
+            generatedIds = new LinkedHashMap<RowId, RowId>();
+        }
+        return generatedIds;
     }
 
     @Deprecated
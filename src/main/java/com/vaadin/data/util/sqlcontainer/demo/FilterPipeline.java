@@ -0,0 +1,287 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.Application;
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.SQLContainer;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+
+/**
+ * Applies text filters to an SQLContainer in the background so that fast
+ * typing does not run a query for every keystroke.
+ * <p>
+ * Filter texts submitted within {@link #getDelay()} milliseconds of each other
+ * are coalesced. The latest filter state is then counted on a background
+ * thread with its own COUNT statement; if a newer state is submitted while
+ * the count is running, the statement is cancelled with
+ * {@link Statement#cancel()}. The count is stored in the {@link CountCache}
+ * of the container's query, and only then are the filters applied to the
+ * container, under the application lock. The container therefore finds the
+ * count in the cache and only runs the page query for the latest state.
+ * <p>
+ * As the filters are applied outside of a request, the client has to poll for
+ * the changes, e.g. with a ProgressIndicator shown while
+ * {@link Listener#filteringStarted()} and
+ * {@link Listener#filteringFinished(int)} bracket the work.
+ * <p>
+ * The pipelines of all sessions share a small pool of daemon threads; each
+ * pipeline only keeps its filter state and its pending task.
+ */
+@SuppressWarnings("serial")
+public class FilterPipeline implements Serializable {
+
+    /**
+     * Listener notified of the progress of the pipeline. The methods are
+     * called while holding the application lock.
+     */
+    public interface Listener extends Serializable {
+        /**
+         * Called when a new filter state has been submitted.
+         */
+        public void filteringStarted();
+
+        /**
+         * Called when the latest filter state has been applied.
+         *
+         * @param count
+         *            the number of matching rows
+         */
+        public void filteringFinished(int count);
+    }
+
+    /* Threads of all pipelines, a count blocks one while it runs */
+    private static final ScheduledThreadPoolExecutor EXECUTOR =
+            createExecutor();
+
+    private final Application application;
+    private final SQLContainer container;
+    private final JDBCConnectionPool connectionPool;
+    private final String tableName;
+    private final CountCache countCache;
+    private Listener listener;
+    private long delay = 300;
+
+    /* Filter texts by property id, and the generation of the latest state */
+    private final Map<String, String> texts = new LinkedHashMap<String, String>();
+    private long generation = 0;
+
+    private transient ScheduledFuture<?> pending;
+    private transient Statement running;
+
+    /**
+     * Creates a filter pipeline.
+     *
+     * @param application
+     *            the application whose lock is held when the container is
+     *            changed
+     * @param container
+     *            the container to filter
+     * @param connectionPool
+     *            the pool to count with
+     * @param tableName
+     *            the table the container reads
+     * @param countCache
+     *            the count cache of the container's query
+     */
+    public FilterPipeline(Application application, SQLContainer container,
+            JDBCConnectionPool connectionPool, String tableName,
+            CountCache countCache) {
+        this.application = application;
+        this.container = container;
+        this.connectionPool = connectionPool;
+        this.tableName = tableName;
+        this.countCache = countCache;
+    }
+
+    /**
+     * Submits a new filter text for a property. An empty text removes the
+     * filter of the property.
+     *
+     * @param propertyId
+     *            the property to filter
+     * @param text
+     *            the filter text
+     */
+    public synchronized void submit(String propertyId, String text) {
+        texts.put(propertyId, text == null ? "" : text);
+        final long submitted = ++generation;
+        final List<Filter> filters = getFilters();
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        cancelRunning();
+        if (listener != null) {
+            listener.filteringStarted();
+        }
+        pending = EXECUTOR.schedule(new Runnable() {
+            public void run() {
+                process(submitted, filters);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Filter> getFilters() {
+        List<Filter> filters = new ArrayList<Filter>();
+        for (Map.Entry<String, String> e : texts.entrySet()) {
+            if (e.getValue().length() > 0) {
+                /* Same filter as SQLContainer.addContainerFilter creates */
+                filters.add(new SimpleStringFilter(e.getKey(), e.getValue(),
+                        true, false));
+            }
+        }
+        return filters;
+    }
+
+    private void process(long submitted, List<Filter> filters) {
+        if (!isCurrent(submitted)) {
+            return;
+        }
+        try {
+            if (countCache.get(filters) == null) {
+                long version = countCache.getVersion();
+                countCache.put(filters, count(submitted, filters), version);
+            }
+        } catch (SQLException e) {
+            if (isCurrent(submitted)) {
+                getLogger().log(Level.WARNING, "Counting failed", e);
+            }
+            /* Otherwise cancelled by a newer filter state */
+            return;
+        }
+        synchronized (application) {
+            if (!isCurrent(submitted)) {
+                return;
+            }
+            container.removeAllContainerFilters();
+            for (Filter filter : filters) {
+                container.addContainerFilter(filter);
+            }
+            if (listener != null) {
+                listener.filteringFinished(container.size());
+            }
+        }
+    }
+
+    private int count(long submitted, List<Filter> filters)
+            throws SQLException {
+        StatementHelper sh = new StatementHelper();
+        String query = "SELECT COUNT(*) FROM " + tableName
+                + QueryBuilder.getWhereStringForFilters(filters, sh);
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(query);
+            try {
+                sh.setParameterValuesToStatement(pstmt);
+                synchronized (this) {
+                    if (generation != submitted) {
+                        throw new SQLException("Filter state is out of date");
+                    }
+                    running = pstmt;
+                }
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                int count = rs.getInt(1);
+                rs.close();
+                return count;
+            } finally {
+                synchronized (this) {
+                    if (running == pstmt) {
+                        running = null;
+                    }
+                }
+                pstmt.close();
+            }
+        } finally {
+            conn.commit();
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    private synchronized boolean isCurrent(long submitted) {
+        return generation == submitted;
+    }
+
+    private void cancelRunning() {
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement may already have completed
+            }
+            running = null;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "FilterPipeline-"
+                                + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        /* Superseded filter states are cancelled on every keystroke */
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Cancels the pending work of this pipeline.
+     */
+    public synchronized void shutdown() {
+        generation++;
+        cancelRunning();
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for further changes before the
+     * filters are counted.
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(FilterPipeline.class.getName());
+    }
+}
@@ -0,0 +1,458 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.AbstractJunctionFilter;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.filter.IdSetFilter;
+import com.vaadin.data.util.sqlcontainer.demo.filter.InSubqueryFilter;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+
+/**
+ * Watches the filters and sort orders that reach the queries and reports the
+ * indexes that would let the database seek instead of scanning. A filtered
+ * column is a candidate for a single column index, and the sort columns of an
+ * ORDER BY for a composite index. Join columns can be registered with
+ * {@link #addJoinColumn(String, String)}.
+ * <p>
+ * Filters an index cannot help with are ignored: LIKE patterns starting with
+ * a wildcard, case insensitive matches and negations.
+ * <p>
+ * A candidate counts as covered if an existing index starts with its columns.
+ * {@link #getMissingIndexes()} lists the uncovered candidates as CREATE INDEX
+ * statements. A candidate is logged once it has been used with
+ * {@link #getThreshold()} different sets of filters, and if auto creation is
+ * enabled the index is created at that point. Queries repeated with the same
+ * filters, e.g. the count and the page fetches of one search, count once. The
+ * check against the existing indexes and the creation run on a background
+ * thread shared by all advisors, not on the thread observing the query.
+ * <p>
+ * Table and column names are looked up in upper case, which is how HSQLDB
+ * stores unquoted identifiers.
+ */
+@SuppressWarnings("serial")
+public class IndexAdvisor implements Serializable {
+
+    private final JDBCConnectionPool connectionPool;
+    /* Distinct filter sets a candidate is tracked for, beyond the threshold */
+    private static final int MAX_FILTER_SETS = 100;
+
+    private static final ThreadPoolExecutor ADVISOR = createAdvisor();
+
+    private final ConcurrentMap<Candidate, Uses> uses = new ConcurrentHashMap<Candidate, Uses>();
+    private final Set<Candidate> handled = Collections
+            .newSetFromMap(new ConcurrentHashMap<Candidate, Boolean>());
+
+    private boolean autoCreate = false;
+    private int threshold = 3;
+
+    public IndexAdvisor(JDBCConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Records the columns of the given filters that an index can be used for.
+     *
+     * @param table
+     *            the table the filters are applied to
+     * @param filters
+     *            the filters, may be null
+     */
+    public void observeFilters(String table, Collection<Filter> filters) {
+        for (String column : getIndexableColumns(filters)) {
+            observeColumns(table, filters, column);
+        }
+    }
+
+    /**
+     * Records the columns of a sort order.
+     *
+     * @param table
+     *            the table that is sorted
+     * @param filters
+     *            the filters the sorted rows are selected with, may be null
+     * @param orderBys
+     *            the sort order, may be null
+     */
+    public void observeOrderBy(String table, Collection<Filter> filters,
+            List<OrderBy> orderBys) {
+        if (orderBys == null || orderBys.isEmpty()) {
+            return;
+        }
+        String[] columns = new String[orderBys.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = orderBys.get(i).getColumn();
+        }
+        observeColumns(table, filters, columns);
+    }
+
+    /**
+     * Records a use of the given columns, in index order, by a query with the
+     * given filters.
+     *
+     * @param table
+     *            the table of the columns
+     * @param filters
+     *            the filters of the query, may be null
+     * @param columns
+     *            the columns
+     */
+    public void observeColumns(String table, Collection<Filter> filters,
+            String... columns) {
+        if (columns.length == 0) {
+            return;
+        }
+        Candidate candidate = new Candidate(table, columns);
+        Uses count = uses.get(candidate);
+        if (count == null) {
+            uses.putIfAbsent(candidate, new Uses());
+            count = uses.get(candidate);
+        }
+        int filterSet = filters == null ? 0 : new HashSet<Filter>(filters)
+                .hashCode();
+        if (count.add(filterSet) >= threshold && handled.add(candidate)) {
+            adviseLater(candidate);
+        }
+    }
+
+    /**
+     * Registers a column used to join the table, e.g. a foreign key. Join
+     * columns are candidates regardless of the threshold.
+     */
+    public void addJoinColumn(String table, String column) {
+        Candidate candidate = new Candidate(table, new String[] { column });
+        uses.putIfAbsent(candidate, new Uses());
+        if (handled.add(candidate)) {
+            adviseLater(candidate);
+        }
+    }
+
+    private void adviseLater(final Candidate candidate) {
+        ADVISOR.execute(new Runnable() {
+            public void run() {
+                advise(candidate);
+            }
+        });
+    }
+
+    private void advise(Candidate candidate) {
+        try {
+            if (isCovered(candidate)) {
+                return;
+            }
+            if (autoCreate) {
+                createIndex(candidate);
+                getLogger().info(
+                        "Created index: " + candidate.getCreateStatement());
+            } else {
+                getLogger().info(
+                        "Missing index: " + candidate.getCreateStatement());
+            }
+        } catch (SQLException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not check or create index on " + candidate, e);
+        }
+    }
+
+    /**
+     * Returns the CREATE INDEX statements of the observed candidates that are
+     * not covered by an existing index, the most used first.
+     *
+     * @return the missing indexes
+     * @throws SQLException
+     */
+    public List<String> getMissingIndexes() throws SQLException {
+        List<Candidate> candidates = new ArrayList<Candidate>(uses.keySet());
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            public int compare(Candidate c1, Candidate c2) {
+                return uses.get(c2).get() - uses.get(c1).get();
+            }
+        });
+        List<String> missing = new ArrayList<String>();
+        for (Candidate candidate : candidates) {
+            if (!isCovered(candidate)) {
+                missing.add(candidate.getCreateStatement());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Creates the missing indexes. Indexes covered by another created index
+     * are skipped.
+     *
+     * @return the number of indexes created
+     * @throws SQLException
+     */
+    public int createMissingIndexes() throws SQLException {
+        List<Candidate> candidates = new ArrayList<Candidate>(uses.keySet());
+        /* Wider indexes first, they may cover the narrower ones */
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            public int compare(Candidate c1, Candidate c2) {
+                return c2.columns.length - c1.columns.length;
+            }
+        });
+        int created = 0;
+        for (Candidate candidate : candidates) {
+            if (!isCovered(candidate)) {
+                createIndex(candidate);
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Returns the number of different filter sets the given columns have
+     * been used with, counting up to a hundred.
+     */
+    public int getUses(String table, String... columns) {
+        Uses count = uses.get(new Candidate(table, columns));
+        return count == null ? 0 : count.get();
+    }
+
+    private boolean isCovered(Candidate candidate) throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            DatabaseMetaData metaData = conn.getMetaData();
+            ResultSet rs = metaData.getIndexInfo(null, null, candidate.table,
+                    false, true);
+            Map<String, List<String>> indexes = new HashMap<String, List<String>>();
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                int position = rs.getInt("ORDINAL_POSITION");
+                String column = rs.getString("COLUMN_NAME");
+                if (index == null || column == null) {
+                    continue;
+                }
+                List<String> columns = indexes.get(index);
+                if (columns == null) {
+                    columns = new ArrayList<String>();
+                    indexes.put(index, columns);
+                }
+                while (columns.size() < position) {
+                    columns.add(null);
+                }
+                columns.set(position - 1, column);
+            }
+            rs.close();
+            conn.commit();
+            List<String> wanted = Arrays.asList(candidate.columns);
+            for (List<String> columns : indexes.values()) {
+                if (columns.size() >= wanted.size()
+                        && columns.subList(0, wanted.size()).equals(wanted)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    private void createIndex(Candidate candidate) throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            Statement statement = conn.createStatement();
+            try {
+                statement.execute(candidate.getCreateStatement());
+            } finally {
+                statement.close();
+            }
+            conn.commit();
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Returns the property ids of the filters that a database index can be
+     * used for. Conditions inside OR and AND filters are included; negated
+     * ones, LIKE patterns starting with a wildcard and case insensitive
+     * matches are not.
+     *
+     * @param filters
+     *            the filters, may be null
+     * @return the indexable columns
+     */
+    public static List<String> getIndexableColumns(Collection<Filter> filters) {
+        List<String> columns = new ArrayList<String>();
+        if (filters != null) {
+            for (Filter filter : filters) {
+                addIndexableColumns(filter, columns);
+            }
+        }
+        return columns;
+    }
+
+    private static void addIndexableColumns(Filter filter,
+            List<String> columns) {
+        Object propertyId = null;
+        if (filter instanceof AbstractJunctionFilter) {
+            for (Filter f : ((AbstractJunctionFilter) filter).getFilters()) {
+                addIndexableColumns(f, columns);
+            }
+        } else if (filter instanceof Compare) {
+            propertyId = ((Compare) filter).getPropertyId();
+        } else if (filter instanceof Between) {
+            propertyId = ((Between) filter).getPropertyId();
+        } else if (filter instanceof IsNull) {
+            propertyId = ((IsNull) filter).getPropertyId();
+        } else if (filter instanceof Like) {
+            Like like = (Like) filter;
+            if (like.isCaseSensitive() && like.getValue() != null
+                    && !like.getValue().startsWith("%")
+                    && !like.getValue().startsWith("_")) {
+                propertyId = like.getPropertyId();
+            }
+        } else if (filter instanceof SimpleStringFilter) {
+            SimpleStringFilter ssf = (SimpleStringFilter) filter;
+            if (ssf.isOnlyMatchPrefix() && !ssf.isIgnoreCase()) {
+                propertyId = ssf.getPropertyId();
+            }
+        } else if (filter instanceof InSubqueryFilter) {
+            /* The keys of the subquery are looked up in the column */
+            propertyId = ((InSubqueryFilter) filter).getPropertyId();
+        } else if (filter instanceof IdSetFilter) {
+            propertyId = ((IdSetFilter) filter).getPropertyId();
+        }
+        if (propertyId != null && !columns.contains(propertyId.toString())) {
+            columns.add(propertyId.toString());
+        }
+    }
+
+    /**
+     * Enables or disables creating the missing indexes automatically once
+     * they have been used with {@link #getThreshold()} filter sets.
+     */
+    public void setAutoCreate(boolean autoCreate) {
+        this.autoCreate = autoCreate;
+    }
+
+    public boolean isAutoCreate() {
+        return autoCreate;
+    }
+
+    /**
+     * Sets the number of different filter sets after which a missing index
+     * is logged or created.
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(IndexAdvisor.class.getName());
+    }
+
+    private static ThreadPoolExecutor createAdvisor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "IndexAdvisor");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The distinct filter sets a candidate has been used with, by hash code.
+     */
+    private static class Uses implements Serializable {
+        private final Set<Integer> filterSets = new HashSet<Integer>();
+
+        private synchronized int add(int filterSet) {
+            if (filterSets.size() < MAX_FILTER_SETS) {
+                filterSets.add(filterSet);
+            }
+            return filterSets.size();
+        }
+
+        private synchronized int get() {
+            return filterSets.size();
+        }
+    }
+
+    /**
+     * Table and columns of a possible index.
+     */
+    private static class Candidate implements Serializable {
+        private final String table;
+        private final String[] columns;
+
+        private Candidate(String table, String[] columns) {
+            this.table = table.toUpperCase();
+            this.columns = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                this.columns[i] = columns[i].toUpperCase();
+            }
+        }
+
+        private String getCreateStatement() {
+            StringBuffer name = new StringBuffer("IDX_").append(table);
+            StringBuffer list = new StringBuffer();
+            for (int i = 0; i < columns.length; i++) {
+                name.append('_').append(columns[i]);
+                list.append(i == 0 ? "" : ", ").append(columns[i]);
+            }
+            return "CREATE INDEX " + name + " ON " + table + " (" + list + ")";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Candidate)) {
+                return false;
+            }
+            Candidate other = (Candidate) obj;
+            return table.equals(other.table)
+                    && Arrays.equals(columns, other.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return table.hashCode() * 31 + Arrays.hashCode(columns);
+        }
+
+        @Override
+        public String toString() {
+            return table + Arrays.toString(columns);
+        }
+    }
+}
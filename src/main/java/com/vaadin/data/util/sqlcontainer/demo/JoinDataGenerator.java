@@ -0,0 +1,258 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.BulkLoader;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.RowSource;
+
+/**
+ * Generates random data for the COMPANIES, ADDRESS, PEOPLE and EMPLOYEES
+ * tables of {@link ComplexQueryDemo}. The rows are written with prepared,
+ * batched inserts by a {@link BulkLoader} per table. The tables are expected
+ * to be empty, so that their identity columns start from zero; the references
+ * between the tables are generated in that range.
+ * <p>
+ * The tables have no foreign keys, so they can optionally be filled in
+ * parallel, each on its own connection. Every table uses its own random
+ * sequence, so the generated data does not depend on the order.
+ */
+public class JoinDataGenerator {
+
+    private static final List<String> FIRSTNAMES = Arrays.asList(
+            "Bengt", "Börje", "Ritva", "Anu", "Allan", "Bill", "Leffe",
+            "Ville", "Walter");
+    private static final List<String> LASTNAMES = Arrays.asList(
+            "Gates", "Meikäläinen", "Svensson", "Hermans", "Poirot");
+
+    private final JDBCConnectionPool connectionPool;
+
+    private int companies = 10;
+    private int addresses = 10;
+    private int people = 10;
+    private int employees = 10;
+    private boolean parallel = false;
+    private long seed = System.currentTimeMillis();
+    private int batchSize = 1000;
+
+    public JoinDataGenerator(JDBCConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Fills the four tables.
+     *
+     * @return the total number of rows written
+     * @throws SQLException
+     *             if writing failed
+     */
+    public long generate() throws SQLException {
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        tasks.add(task("COMPANIES", companySource(), "NAME"));
+        tasks.add(task("ADDRESS", addressSource(), "STREET", "ZIP", "CITY",
+                "STATE", "COUNTRY"));
+        tasks.add(task("PEOPLE", personSource(), "FIRSTNAME", "LASTNAME",
+                "MOBILE", "HOMEPHONE", "HOMEEMAIL", "ADDRESS_ID"));
+        tasks.add(task("EMPLOYEES", employeeSource(), "PERSON_ID",
+                "COMPANY_ID", "WORKPHONE", "WORKEMAIL"));
+
+        long rows = 0;
+        if (!parallel) {
+            for (Callable<Long> task : tasks) {
+                rows += call(task);
+            }
+            return rows;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<Long>> results = executor.invokeAll(tasks);
+            for (Future<Long> result : results) {
+                rows += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while generating data");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return rows;
+    }
+
+    private static long call(Callable<Long> task) throws SQLException {
+        try {
+            return task.call();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    private Callable<Long> task(final String table, final RowSource source,
+            final String... columns) {
+        return new Callable<Long>() {
+            public Long call() throws SQLException, IOException {
+                BulkLoader loader = new BulkLoader(connectionPool, table,
+                        columns);
+                loader.setBatchSize(batchSize);
+                return loader.load(source);
+            }
+        };
+    }
+
+    private RowSource companySource() {
+        return new RowSource() {
+            private int i = 0;
+
+            public boolean nextRow(Object[] values) {
+                if (i == companies) {
+                    return false;
+                }
+                values[0] = "company " + i++;
+                return true;
+            }
+        };
+    }
+
+    private RowSource addressSource() {
+        return new RowSource() {
+            private int i = 0;
+
+            public boolean nextRow(Object[] values) {
+                if (i == addresses) {
+                    return false;
+                }
+                values[0] = "Hameenkatu " + i++;
+                values[1] = "20500";
+                values[2] = "Turku";
+                values[3] = "na";
+                values[4] = "Finland";
+                return true;
+            }
+        };
+    }
+
+    private RowSource personSource() {
+        final Random rnd = new Random(seed + 2);
+        return new RowSource() {
+            private int i = 0;
+
+            public boolean nextRow(Object[] values) {
+                if (i == people) {
+                    return false;
+                }
+                String firstname = FIRSTNAMES.get(rnd.nextInt(FIRSTNAMES
+                        .size()));
+                String lastname = LASTNAMES.get(rnd.nextInt(LASTNAMES.size()));
+                values[0] = firstname;
+                values[1] = lastname;
+                values[2] = "040-86766" + i;
+                values[3] = "02-53433" + i;
+                values[4] = firstname + "." + lastname + "@gmail.com";
+                values[5] = rnd.nextInt(Math.max(addresses, 1));
+                i++;
+                return true;
+            }
+        };
+    }
+
+    private RowSource employeeSource() {
+        final Random rnd = new Random(seed + 3);
+        return new RowSource() {
+            private int i = 0;
+
+            public boolean nextRow(Object[] values) {
+                if (i == employees) {
+                    return false;
+                }
+                values[0] = rnd.nextInt(Math.max(people, 1));
+                values[1] = rnd.nextInt(Math.max(companies, 1));
+                values[2] = "02-1234" + i;
+                values[3] = "employee" + i + "@foocompany.com";
+                i++;
+                return true;
+            }
+        };
+    }
+
+    public void setCompanies(int companies) {
+        this.companies = companies;
+    }
+
+    public int getCompanies() {
+        return companies;
+    }
+
+    public void setAddresses(int addresses) {
+        this.addresses = addresses;
+    }
+
+    public int getAddresses() {
+        return addresses;
+    }
+
+    public void setPeople(int people) {
+        this.people = people;
+    }
+
+    public int getPeople() {
+        return people;
+    }
+
+    public void setEmployees(int employees) {
+        this.employees = employees;
+    }
+
+    public int getEmployees() {
+        return employees;
+    }
+
+    /**
+     * Sets whether the tables are filled in parallel, each on its own
+     * connection.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets the seed of the random values, to generate the same data again.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the number of rows sent to the database in one batch.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
@@ -0,0 +1,360 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.ColumnProperty;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+import com.vaadin.data.util.sqlcontainer.TemporaryRowId;
+import com.vaadin.data.util.sqlcontainer.demo.filter.QualifyingStringDecorator;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+
+/**
+ * FreeformStatementDelegate for the PEOPLE - ADDRESS - EMPLOYEES - COMPANIES
+ * join of {@link ComplexQueryDemo}. Every row of the join is an employee, so
+ * the rows are identified by the EMPLOYEE_ID column. The columns have the
+ * unique names of {@link MaterializedJoin#COLUMNS}.
+ * <p>
+ * Filters and sort orders are written against the base table columns, e.g. a
+ * filter on LASTNAME becomes a condition on <code>P.LASTNAME</code>, so that
+ * the database can use the indexes of the base tables. If the joins preserve
+ * cardinality (every employee has a person, an address and a company), the
+ * count query only reads EMPLOYEES and the tables the filters refer to.
+ * <p>
+ * Updating a row writes one UPDATE per base table whose columns were changed.
+ * The id columns are read only, which also rules out adding rows. Removing a
+ * row deletes the employee. In batch mode the writes are collected per
+ * statement and executed in {@link #executeBatch()}.
+ */
+@SuppressWarnings("serial")
+public class JoinFreeformStatementDelegate extends
+        AbstractBatchedStatementDelegate {
+
+    /* Base table, its alias in the join and the column holding its id */
+    private static final String[][] TABLES = {
+            { "EMPLOYEES", "E", "EMPLOYEE_ID" }, { "PEOPLE", "P", "PERSON_ID" }, { "ADDRESS", "A", "ADDRESS_ID" },
+            { "COMPANIES", "C", "COMPANY_ID" } };
+
+    /* Joins added to EMPLOYEES E when a count needs the table of the alias */
+    private static final String JOIN_PEOPLE = " INNER JOIN PEOPLE P ON E.PERSON_ID = P.ID";
+    private static final String JOIN_ADDRESS = " INNER JOIN ADDRESS A ON P.ADDRESS_ID = A.ID";
+    private static final String JOIN_COMPANIES = " INNER JOIN COMPANIES C ON E.COMPANY_ID = C.ID";
+
+    private static final String DELETE_QUERY = "DELETE FROM EMPLOYEES WHERE ID = ?";
+
+    /* The base table columns keyed by the column names of the join */
+    private static final Map<String, String> BASE_COLUMNS = new HashMap<String, String>();
+
+    static {
+        for (String[] column : MaterializedJoin.COLUMNS) {
+            BASE_COLUMNS.put(column[0], column[1]);
+        }
+    }
+
+    private List<Filter> filters;
+    private List<OrderBy> orderBys;
+    private boolean cardinalityPreserving = false;
+    private IndexAdvisor indexAdvisor;
+
+    public JoinFreeformStatementDelegate() {
+        super(DELETE_QUERY);
+    }
+
+    /**
+     * Returns the query string to give to the FreeformQuery using this
+     * delegate.
+     */
+    public static String getQueryString() {
+        return "SELECT " + MaterializedJoin.getSelectList() + " FROM "
+                + MaterializedJoin.JOIN;
+    }
+
+    @Deprecated
+    public String getQueryString(int offset, int limit)
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Use getQueryStatement method.");
+    }
+
+    public StatementHelper getQueryStatement(int offset, int limit)
+            throws UnsupportedOperationException {
+        StatementHelper sh = new StatementHelper();
+        StringBuffer query = new StringBuffer(getQueryString());
+        query.append(getWhereString(sh, null));
+        query.append(getOrderByString());
+        if (offset != 0 || limit != 0) {
+            query.append(" LIMIT ? OFFSET ?");
+            sh.addParameterValue(limit);
+            sh.addParameterValue(offset);
+        }
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /**
+     * Returns the WHERE clause of the current filters with the column names
+     * replaced by the base table columns.
+     *
+     * @param aliases
+     *            if not null, the aliases of the tables the clause refers to
+     *            are added to this set
+     */
+    private String getWhereString(StatementHelper sh, Set<String> aliases) {
+        if (filters == null || filters.isEmpty()) {
+            return "";
+        }
+        if (aliases != null) {
+            for (String[] column : MaterializedJoin.COLUMNS) {
+                for (Filter filter : filters) {
+                    if (filter.appliesToProperty(column[0])) {
+                        aliases.add(column[1].substring(0,
+                                column[1].indexOf('.')));
+                    }
+                }
+            }
+        }
+        return QualifyingStringDecorator.getWhereStringForFilters(filters, sh,
+                BASE_COLUMNS);
+    }
+
+    private String getOrderByString() {
+        StringBuffer orderBuffer = new StringBuffer(" ORDER BY ");
+        boolean orderedById = false;
+        if (orderBys != null) {
+            for (OrderBy orderBy : orderBys) {
+                String column = getBaseColumn(orderBy.getColumn());
+                orderBuffer.append(column);
+                orderBuffer.append(orderBy.isAscending() ? " ASC, "
+                        : " DESC, ");
+                orderedById |= "E.ID".equals(column);
+            }
+        }
+        if (orderedById) {
+            orderBuffer.setLength(orderBuffer.length() - 2);
+        } else {
+            /* Makes the order total, so that paging is stable */
+            orderBuffer.append("E.ID ASC");
+        }
+        return orderBuffer.toString();
+    }
+
+    private static String getBaseColumn(String column) {
+        for (String[] c : MaterializedJoin.COLUMNS) {
+            if (c[0].equalsIgnoreCase(column)) {
+                return c[1];
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + column);
+    }
+
+    @Deprecated
+    public String getCountQuery() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Use getCountStatement method.");
+    }
+
+    public StatementHelper getCountStatement()
+            throws UnsupportedOperationException {
+        StatementHelper sh = new StatementHelper();
+        Set<String> aliases = new LinkedHashSet<String>();
+        String where = getWhereString(sh, aliases);
+        StringBuffer query = new StringBuffer("SELECT COUNT(*) FROM ");
+        if (!cardinalityPreserving) {
+            query.append(MaterializedJoin.JOIN);
+        } else {
+            /* Only join the tables the filters need */
+            query.append("EMPLOYEES E");
+            if (aliases.contains("P") || aliases.contains("A")) {
+                query.append(JOIN_PEOPLE);
+            }
+            if (aliases.contains("A")) {
+                query.append(JOIN_ADDRESS);
+            }
+            if (aliases.contains("C")) {
+                query.append(JOIN_COMPANIES);
+            }
+        }
+        query.append(where);
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /**
+     * Declares whether the joins preserve the cardinality of EMPLOYEES, i.e.
+     * whether every employee refers to an existing person and company and
+     * every person to an existing address. If so, the rows can be counted
+     * without joining the tables that are not filtered on.
+     *
+     * @param cardinalityPreserving
+     *            true if every employee is part of the join
+     */
+    public void setCardinalityPreserving(boolean cardinalityPreserving) {
+        this.cardinalityPreserving = cardinalityPreserving;
+    }
+
+    public boolean isCardinalityPreserving() {
+        return cardinalityPreserving;
+    }
+
+    public void setFilters(List<Filter> filters)
+            throws UnsupportedOperationException {
+        this.filters = filters;
+        if (indexAdvisor != null) {
+            for (String column : IndexAdvisor.getIndexableColumns(filters)) {
+                String baseColumn = getBaseColumn(column);
+                indexAdvisor.observeColumns(getBaseTable(baseColumn), filters,
+                        baseColumn.substring(baseColumn.indexOf('.') + 1));
+            }
+        }
+    }
+
+    public void setOrderBy(List<OrderBy> orderBys)
+            throws UnsupportedOperationException {
+        this.orderBys = orderBys;
+        if (indexAdvisor != null && orderBys != null && !orderBys.isEmpty()) {
+            /* An index can serve the leading sort columns of one table */
+            String table = null;
+            List<String> columns = new ArrayList<String>();
+            for (OrderBy orderBy : orderBys) {
+                String baseColumn = getBaseColumn(orderBy.getColumn());
+                if (table != null && !table.equals(getBaseTable(baseColumn))) {
+                    break;
+                }
+                table = getBaseTable(baseColumn);
+                columns.add(baseColumn.substring(baseColumn.indexOf('.') + 1));
+            }
+            indexAdvisor.observeColumns(table, filters,
+                    columns.toArray(new String[columns.size()]));
+        }
+    }
+
+    private static String getBaseTable(String baseColumn) {
+        String alias = baseColumn.substring(0, baseColumn.indexOf('.'));
+        for (String[] table : TABLES) {
+            if (table[1].equals(alias)) {
+                return table[0];
+            }
+        }
+        throw new IllegalArgumentException("Unknown table alias: " + alias);
+    }
+
+    /**
+     * Sets the advisor that the filters and sort orders are reported to,
+     * translated to the base tables. The foreign keys of the join are
+     * registered as join columns.
+     *
+     * @param indexAdvisor
+     *            the advisor, or null
+     */
+    public void setIndexAdvisor(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+        if (indexAdvisor != null) {
+            indexAdvisor.addJoinColumn("PEOPLE", "ADDRESS_ID");
+            indexAdvisor.addJoinColumn("EMPLOYEES", "PERSON_ID");
+            indexAdvisor.addJoinColumn("EMPLOYEES", "COMPANY_ID");
+        }
+    }
+
+    public IndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+
+    public int storeRow(Connection conn, RowItem row) throws SQLException {
+        if (row.getId() instanceof TemporaryRowId) {
+            throw new UnsupportedOperationException(
+                    "Rows cannot be added to the join.");
+        }
+        int rowsChanged = 0;
+        boolean written = false;
+        for (String[] table : TABLES) {
+            List<String> columns = getUpdatableColumns(table[1]);
+            if (!isModified(row, columns)) {
+                continue;
+            }
+            String query = getUpdateQuery(table[0], table[1], columns);
+            PreparedStatement statement = prepareWrite(conn, query);
+            int i = 1;
+            for (String column : columns) {
+                statement.setObject(i++, row.getItemProperty(column)
+                        .getValue());
+            }
+            statement.setObject(i, row.getItemProperty(table[2]).getValue());
+            int result = executeWrite(statement, query, row);
+            if (result == 0) {
+                return 0;
+            }
+            rowsChanged += result;
+            written = true;
+        }
+        /* Nothing to write still counts as a successful store */
+        return written ? rowsChanged : 1;
+    }
+
+    /**
+     * Returns the columns of the join that are copied from a non-key column
+     * of the table with the given alias.
+     */
+    private static List<String> getUpdatableColumns(String alias) {
+        List<String> columns = new ArrayList<String>();
+        for (String[] c : MaterializedJoin.COLUMNS) {
+            if (c[1].startsWith(alias + ".") && !c[1].endsWith(".ID")) {
+                columns.add(c[0]);
+            }
+        }
+        return columns;
+    }
+
+    private static boolean isModified(RowItem row, List<String> columns) {
+        for (String column : columns) {
+            if (((ColumnProperty) row.getItemProperty(column)).isModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getUpdateQuery(String table, String alias,
+            List<String> columns) {
+        StringBuffer query = new StringBuffer("UPDATE ");
+        query.append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            String baseColumn = getBaseColumn(columns.get(i));
+            query.append(baseColumn.substring(alias.length() + 1)).append(
+                    " = ?");
+        }
+        query.append(" WHERE ID = ?");
+        return query.toString();
+    }
+
+    public boolean removeRow(Connection conn, RowItem row)
+            throws UnsupportedOperationException, SQLException {
+        PreparedStatement statement = prepareWrite(conn, DELETE_QUERY);
+        statement.setObject(1, row.getItemProperty("EMPLOYEE_ID").getValue());
+        return executeWrite(statement, DELETE_QUERY, row) == 1;
+    }
+
+    @Deprecated
+    public String getContainsRowQueryString(Object... keys)
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException(
+                "Please use getContainsRowQueryStatement method.");
+    }
+
+    public StatementHelper getContainsRowQueryStatement(Object... keys)
+            throws UnsupportedOperationException {
+        StatementHelper sh = new StatementHelper();
+        sh.addParameterValue(keys[0]);
+        sh.setQueryString(getQueryString() + " WHERE E.ID = ?");
+        return sh;
+    }
+}
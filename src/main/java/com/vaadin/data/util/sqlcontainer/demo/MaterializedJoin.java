@@ -0,0 +1,171 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Denormalized copy of the PEOPLE - ADDRESS - EMPLOYEES - COMPANIES join of
+ * {@link ComplexQueryDemo}, stored in the table {@value #TABLE_NAME} with one
+ * row per employee. Paging, sorting and counting the flat table is much
+ * cheaper than running the join for every page.
+ * <p>
+ * The table is kept up to date incrementally by triggers on the four base
+ * tables: a row written to a base table deletes the joined rows referring to
+ * it and inserts them again from the join, restricted to that row. The
+ * foreign key columns of the base tables are indexed so that these partial
+ * joins are index lookups.
+ * <p>
+ * Every column of the table has a unique name. The ids of the base tables
+ * are called EMPLOYEE_ID, PERSON_ID, ADDRESS_ID and COMPANY_ID and the
+ * company name is called COMPANY.
+ */
+public class MaterializedJoin {
+
+    public static final String TABLE_NAME = "PEOPLE_JOIN_MV";
+
+    /**
+     * The FROM clause of the join.
+     */
+    public static final String JOIN = "PEOPLE P INNER JOIN ADDRESS A ON P.ADDRESS_ID = A.ID "
+            + "INNER JOIN EMPLOYEES E ON E.PERSON_ID = P.ID "
+            + "INNER JOIN COMPANIES C ON E.COMPANY_ID = C.ID";
+
+    /**
+     * The columns of the materialized table and the join columns they are
+     * copied from.
+     */
+    public static final String[][] COLUMNS = { { "EMPLOYEE_ID", "E.ID" },
+            { "PERSON_ID", "P.ID" }, { "FIRSTNAME", "P.FIRSTNAME" },
+            { "LASTNAME", "P.LASTNAME" }, { "MOBILE", "P.MOBILE" },
+            { "HOMEPHONE", "P.HOMEPHONE" }, { "HOMEEMAIL", "P.HOMEEMAIL" },
+            { "ADDRESS_ID", "A.ID" }, { "STREET", "A.STREET" },
+            { "ZIP", "A.ZIP" }, { "CITY", "A.CITY" }, { "STATE", "A.STATE" },
+            { "COUNTRY", "A.COUNTRY" }, { "COMPANY_ID", "C.ID" },
+            { "COMPANY", "C.NAME" }, { "WORKPHONE", "E.WORKPHONE" },
+            { "WORKEMAIL", "E.WORKEMAIL" } };
+
+    /* Base table, its alias in the join and the column referring to it */
+    private static final String[][] BASE_TABLES = {
+            { "PEOPLE", "P", "PERSON_ID" }, { "ADDRESS", "A", "ADDRESS_ID" },
+            { "EMPLOYEES", "E", "EMPLOYEE_ID" },
+            { "COMPANIES", "C", "COMPANY_ID" } };
+
+    private final JDBCConnectionPool connectionPool;
+
+    public MaterializedJoin(JDBCConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Returns the select list of the join with every column aliased to its
+     * name in the materialized table.
+     */
+    public static String getSelectList() {
+        StringBuffer select = new StringBuffer();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                select.append(", ");
+            }
+            select.append(COLUMNS[i][1]).append(" AS ").append(COLUMNS[i][0]);
+        }
+        return select.toString();
+    }
+
+    /**
+     * Creates the materialized table, fills it from the base tables and
+     * creates the triggers that keep it up to date. An existing table is
+     * replaced.
+     *
+     * @throws SQLException
+     */
+    public void create() throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            Statement statement = conn.createStatement();
+            try {
+                statement.execute(getDropStatement());
+                statement.execute("CREATE TABLE " + TABLE_NAME
+                        + " AS (SELECT " + getSelectList() + " FROM " + JOIN
+                        + ") WITH NO DATA");
+                statement.execute("ALTER TABLE " + TABLE_NAME
+                        + " ADD PRIMARY KEY (EMPLOYEE_ID)");
+                for (String[] base : BASE_TABLES) {
+                    if (!"EMPLOYEE_ID".equals(base[2])) {
+                        statement.execute("CREATE INDEX " + TABLE_NAME + "_"
+                                + base[2] + " ON " + TABLE_NAME + " ("
+                                + base[2] + ")");
+                    }
+                }
+                /* Foreign keys used by the partial joins of the triggers */
+                statement.execute("CREATE INDEX IF NOT EXISTS PEOPLE_ADDRESS_ID"
+                        + " ON PEOPLE (ADDRESS_ID)");
+                statement.execute("CREATE INDEX IF NOT EXISTS EMPLOYEES_PERSON_ID"
+                        + " ON EMPLOYEES (PERSON_ID)");
+                statement.execute("CREATE INDEX IF NOT EXISTS EMPLOYEES_COMPANY_ID"
+                        + " ON EMPLOYEES (COMPANY_ID)");
+
+                statement.execute("INSERT INTO " + TABLE_NAME + " SELECT "
+                        + getSelectList() + " FROM " + JOIN);
+                for (String[] base : BASE_TABLES) {
+                    createTriggers(statement, base[0], base[1], base[2]);
+                }
+            } finally {
+                statement.close();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    private void createTriggers(Statement statement, String table,
+            String alias, String keyColumn) throws SQLException {
+        String delete = "DELETE FROM " + TABLE_NAME + " WHERE " + keyColumn
+                + " = O.ID;";
+        String insert = "INSERT INTO " + TABLE_NAME + " SELECT "
+                + getSelectList() + " FROM " + JOIN + " WHERE " + alias
+                + ".ID = N.ID;";
+        statement.execute("CREATE TRIGGER " + table + "_MV_I AFTER INSERT ON "
+                + table + " REFERENCING NEW ROW AS N FOR EACH ROW BEGIN ATOMIC "
+                + insert + " END");
+        statement.execute("CREATE TRIGGER " + table + "_MV_U AFTER UPDATE ON "
+                + table + " REFERENCING OLD ROW AS O NEW ROW AS N"
+                + " FOR EACH ROW BEGIN ATOMIC " + delete + " " + insert
+                + " END");
+        statement.execute("CREATE TRIGGER " + table + "_MV_D AFTER DELETE ON "
+                + table + " REFERENCING OLD ROW AS O FOR EACH ROW BEGIN ATOMIC "
+                + delete + " END");
+    }
+
+    /**
+     * Drops the materialized table and its triggers. This must be done before
+     * the base tables can be dropped.
+     *
+     * @throws SQLException
+     */
+    public void drop() throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            Statement statement = conn.createStatement();
+            try {
+                statement.execute(getDropStatement());
+            } finally {
+                statement.close();
+            }
+            conn.commit();
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    private static String getDropStatement() {
+        /* Cascading also drops the triggers on the base tables */
+        return "DROP TABLE " + TABLE_NAME + " IF EXISTS CASCADE";
+    }
+}
@@ -0,0 +1,211 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.data.Container;
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.terminal.PaintException;
+import com.vaadin.terminal.PaintTarget;
+import com.vaadin.ui.ComboBox;
+
+/**
+ * ComboBox for picking a row of a large reference table. The value of the
+ * field is the integer key of the row.
+ * <p>
+ * Instead of binding the whole table as the container, the options of the
+ * page the user is looking at are read with {@link ReferenceOptions} for the
+ * typed prefix. Only their captions are kept; a row is added to the small
+ * in-memory container when it is selected, as AbstractSelect requires. Opening
+ * the field reads one page and, to show the page of the selected row, the
+ * rank of that row.
+ */
+@SuppressWarnings("serial")
+public class ReferenceComboBox extends ComboBox {
+
+    private static final String CAPTION = "CAPTION";
+
+    private final ReferenceOptions options;
+    private final Map<Object, String> captions = new HashMap<Object, String>();
+    private boolean addingOption = false;
+
+    /* Filter and page requested by the client, page -1 if none */
+    private String filter = "";
+    private int page = -1;
+
+    public ReferenceComboBox(ReferenceOptions options) {
+        this.options = options;
+        IndexedContainer container = new IndexedContainer();
+        container.addContainerProperty(CAPTION, String.class, null);
+        setContainerDataSource(container);
+        setItemCaptionPropertyId(CAPTION);
+        setFilteringMode(FILTERINGMODE_STARTSWITH);
+    }
+
+    /**
+     * Returns the key of the first option, or null if there are none.
+     */
+    public Object getFirstOption() {
+        List<?> first = new LazyOptions("");
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    @Override
+    public String getItemCaption(Object itemId) {
+        String caption = getOptionCaption(itemId);
+        return caption == null ? super.getItemCaption(itemId) : caption;
+    }
+
+    /*
+     * Returns the caption of an option, reading it from the database if it
+     * has not been seen yet.
+     */
+    private String getOptionCaption(Object key) {
+        if (!(key instanceof Number)) {
+            return null;
+        }
+        String caption = captions.get(key);
+        if (caption == null) {
+            try {
+                caption = options.getCaption(((Number) key).intValue());
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            if (caption != null) {
+                captions.put(key, caption);
+            }
+        }
+        return caption;
+    }
+
+    /*
+     * Adds an option to the container so that it can be selected. The
+     * container is private, so the item set change does not need to be
+     * propagated, and doing so would clear the keys sent to the client.
+     */
+    private void addOption(Object key) {
+        if (key == null || containsId(key)) {
+            return;
+        }
+        addingOption = true;
+        try {
+            Item item = addItem(key);
+            item.getItemProperty(CAPTION).setValue(getOptionCaption(key));
+        } finally {
+            addingOption = false;
+        }
+    }
+
+    @Override
+    public void containerItemSetChange(Container.ItemSetChangeEvent event) {
+        if (!addingOption) {
+            super.containerItemSetChange(event);
+        }
+    }
+
+    @Override
+    protected void setValue(Object newValue, boolean repaintIsNotNeeded)
+            throws ReadOnlyException, ConversionException {
+        addOption(newValue);
+        super.setValue(newValue, repaintIsNotNeeded);
+    }
+
+    @Override
+    public void changeVariables(Object source, Map<String, Object> variables) {
+        String newFilter = (String) variables.get("filter");
+        if (newFilter != null) {
+            filter = newFilter;
+            page = ((Integer) variables.get("page")).intValue();
+        }
+        super.changeVariables(source, variables);
+    }
+
+    @Override
+    public void paintContent(PaintTarget target) throws PaintException {
+        if (page < 0) {
+            /* Not an option request, Select shows the unfiltered list */
+            filter = "";
+        }
+        super.paintContent(target);
+        page = -1;
+    }
+
+    /*
+     * Container filtering would read the whole table into the container, so
+     * Select falls back to getFilteredOptions().
+     */
+    @Override
+    protected List<?> getOptionsWithFilter(boolean needNullSelectOption) {
+        return null;
+    }
+
+    @Override
+    protected List<?> getFilteredOptions() {
+        return new LazyOptions(filter);
+    }
+
+    /**
+     * Options matching a prefix. Select only asks for the size, a sub list of
+     * one page and the index of the selected option, which are all answered
+     * with a query of their own.
+     */
+    private class LazyOptions extends AbstractList<Object> {
+        private final String prefix;
+        private int size = -1;
+
+        /* The block of options read last */
+        private int blockOffset = -1;
+        private List<Object[]> block;
+
+        private LazyOptions(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (block == null || index < blockOffset
+                    || index >= blockOffset + block.size()) {
+                try {
+                    blockOffset = index;
+                    block = options.getPage(prefix, index, Math.max(
+                            pageLength, 1));
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                for (Object[] option : block) {
+                    captions.put(option[0], (String) option[1]);
+                }
+            }
+            return block.get(index - blockOffset)[0];
+        }
+
+        @Override
+        public int size() {
+            if (size < 0) {
+                try {
+                    size = options.count(prefix);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object key) {
+            if (!(key instanceof Number)) {
+                return -1;
+            }
+            try {
+                return options.indexOf(prefix, ((Number) key).intValue(),
+                        getOptionCaption(key));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.vaadin.data.util.sqlcontainer.demo;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Reads the options of a foreign key picker, e.g. the cities of a person,
+ * one page at a time straight from the reference table. Options are ordered
+ * by their caption and filtered by a caption prefix with a range condition
+ * <code>CAPTION &gt;= prefix AND CAPTION &lt; prefix + U+FFFF</code>, which an
+ * index on the caption column answers without scanning the table.
+ * <p>
+ * For case insensitive matching the caption column should have a case
+ * insensitive type, e.g. VARCHAR_IGNORECASE in HSQLDB.
+ */
+@SuppressWarnings("serial")
+public class ReferenceOptions implements Serializable {
+
+    private final JDBCConnectionPool connectionPool;
+    private final String table;
+    private final String keyColumn;
+    private final String captionColumn;
+
+    /**
+     * Creates an options provider.
+     *
+     * @param connectionPool
+     *            the pool to query with
+     * @param table
+     *            the reference table
+     * @param keyColumn
+     *            the integer primary key column of the table
+     * @param captionColumn
+     *            the indexed column shown to the user
+     */
+    public ReferenceOptions(JDBCConnectionPool connectionPool, String table,
+            String keyColumn, String captionColumn) {
+        this.connectionPool = connectionPool;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.captionColumn = captionColumn;
+    }
+
+    /**
+     * Returns the number of options whose caption starts with the prefix.
+     */
+    public int count(String prefix) throws SQLException {
+        String query = "SELECT COUNT(*) FROM " + table + getWhere(prefix, "");
+        return queryInt(query, getParameters(prefix));
+    }
+
+    /**
+     * Returns a page of the options whose caption starts with the prefix.
+     *
+     * @param prefix
+     *            the caption prefix, or an empty string
+     * @param offset
+     *            the index of the first option
+     * @param limit
+     *            the largest number of options
+     * @return the keys and captions of the options, as two element arrays
+     * @throws SQLException
+     */
+    public List<Object[]> getPage(String prefix, int offset, int limit)
+            throws SQLException {
+        String query = "SELECT " + keyColumn + ", " + captionColumn + " FROM "
+                + table + getWhere(prefix, "") + " ORDER BY " + captionColumn
+                + ", " + keyColumn + " LIMIT ? OFFSET ?";
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(query);
+            try {
+                int i = setParameters(pstmt, getParameters(prefix));
+                pstmt.setInt(i++, limit);
+                pstmt.setInt(i, offset);
+                ResultSet rs = pstmt.executeQuery();
+                List<Object[]> page = new ArrayList<Object[]>(limit);
+                while (rs.next()) {
+                    page.add(new Object[] { rs.getInt(1), rs.getString(2) });
+                }
+                rs.close();
+                return page;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Returns the index of an option among the options whose caption starts
+     * with the prefix.
+     *
+     * @param prefix
+     *            the caption prefix, or an empty string
+     * @param key
+     *            the key of the option
+     * @param caption
+     *            the caption of the option
+     * @return the index, or -1 if the option does not start with the prefix
+     * @throws SQLException
+     */
+    public int indexOf(String prefix, int key, String caption)
+            throws SQLException {
+        if (caption == null
+                || !caption.toLowerCase().startsWith(prefix.toLowerCase())) {
+            return -1;
+        }
+        String query = "SELECT COUNT(*) FROM " + table
+                + getWhere(prefix, "(" + captionColumn + " < ? OR ("
+                        + captionColumn + " = ? AND " + keyColumn + " < ?))");
+        List<Object> parameters = getParameters(prefix);
+        parameters.add(caption);
+        parameters.add(caption);
+        parameters.add(key);
+        return queryInt(query, parameters);
+    }
+
+    /**
+     * Returns the caption of an option.
+     *
+     * @param key
+     *            the key of the option
+     * @return the caption, or null if there is no such option
+     */
+    public String getCaption(int key) throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement("SELECT "
+                    + captionColumn + " FROM " + table + " WHERE " + keyColumn
+                    + " = ?");
+            try {
+                pstmt.setInt(1, key);
+                ResultSet rs = pstmt.executeQuery();
+                String caption = rs.next() ? rs.getString(1) : null;
+                rs.close();
+                return caption;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    private String getWhere(String prefix, String condition) {
+        StringBuffer where = new StringBuffer();
+        if (prefix.length() > 0) {
+            where.append(" WHERE ").append(captionColumn).append(" >= ? AND ")
+                    .append(captionColumn).append(" < ?");
+        }
+        if (condition.length() > 0) {
+            where.append(prefix.length() > 0 ? " AND " : " WHERE ").append(
+                    condition);
+        }
+        return where.toString();
+    }
+
+    private List<Object> getParameters(String prefix) {
+        List<Object> parameters = new ArrayList<Object>();
+        if (prefix.length() > 0) {
+            parameters.add(prefix);
+            parameters.add(prefix + '\uffff');
+        }
+        return parameters;
+    }
+
+    private int setParameters(PreparedStatement pstmt, List<Object> parameters)
+            throws SQLException {
+        int i = 1;
+        for (Object parameter : parameters) {
+            pstmt.setObject(i++, parameter);
+        }
+        return i;
+    }
+
+    private int queryInt(String query, List<Object> parameters)
+            throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(query);
+            try {
+                setParameters(pstmt, parameters);
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                int value = rs.getInt(1);
+                rs.close();
+                return value;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+}
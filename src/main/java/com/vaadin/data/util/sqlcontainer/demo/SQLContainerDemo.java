@@ -1,24 +1,37 @@
 package com.vaadin.data.util.sqlcontainer.demo;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Arrays;
 
 import com.vaadin.Application;
+import com.vaadin.data.util.sqlcontainer.RowItem;
 import com.vaadin.data.util.sqlcontainer.SQLContainer;
-import com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool;
-import com.vaadin.data.util.sqlcontainer.query.FreeformQuery;
+import com.vaadin.data.util.sqlcontainer.TemporaryRowId;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.BulkLoader;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.RowSource;
+import com.vaadin.data.util.sqlcontainer.demo.connection.ConcurrentJDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.connection.StatementCachingConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.InstrumentedConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SlowQueryLog;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SqlStatistics;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
 import com.vaadin.data.Item;
 import com.vaadin.data.Property;
 import com.vaadin.data.Property.ValueChangeEvent;
+import com.vaadin.event.FieldEvents.TextChangeEvent;
+import com.vaadin.event.FieldEvents.TextChangeListener;
+import com.vaadin.ui.AbstractTextField.TextChangeEventMode;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.DefaultFieldFactory;
 import com.vaadin.ui.Field;
 import com.vaadin.ui.Form;
 import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.ProgressIndicator;
 import com.vaadin.ui.SplitPanel;
 import com.vaadin.ui.Table;
 import com.vaadin.ui.TextField;
@@ -33,15 +46,68 @@ public class SQLContainerDemo extends Application implements Serializable {
     private static final String[] VISIBLE_COLS = { "FIRSTNAME", "LASTNAME",
             "COMPANY" };
 
-    private SimpleJDBCConnectionPool connectionPool = null;
+    /**
+     * Row counts of the PEOPLE table, shared by all sessions so that a filter
+     * state typed by one user does not have to be counted again for the
+     * others.
+     */
+    private static final CountCache PEOPLE_COUNTS = new CountCache(60000);
+
+    /**
+     * Application property that makes the index advisor create the indexes
+     * it finds missing instead of only logging them.
+     */
+    public static final String AUTO_CREATE_INDEXES_PROPERTY = "autoCreateIndexes";
+
+    /**
+     * Application property that makes Save and remove commit on a background
+     * thread instead of holding the session for the transaction.
+     */
+    public static final String ASYNC_COMMIT_PROPERTY = "asyncCommit";
+
+    /**
+     * Background writer shared by all sessions, which bounds the number of
+     * concurrent commits.
+     */
+    private static final AsyncCommitter COMMITTER = new AsyncCommitter(4, 64);
+
+    /**
+     * Execution statistics of the SQL of all sessions.
+     */
+    private static final SqlStatistics SQL_STATISTICS = new SqlStatistics();
+
+    /**
+     * Connection pool shared by all sessions, created by the first one.
+     */
+    private static JDBCConnectionPool sharedConnectionPool = null;
+    private static IndexAdvisor sharedIndexAdvisor = null;
+
+    /**
+     * Statement creating the PEOPLE table.
+     */
+    public static final String CREATE_PEOPLE_TABLE = "CREATE TABLE PEOPLE "
+            + "(ID INTEGER GENERATED ALWAYS AS IDENTITY, "
+            + "FIRSTNAME VARCHAR(32), LASTNAME VARCHAR(32), "
+            + "COMPANY VARCHAR(32), MOBILE VARCHAR(20), WORKPHONE VARCHAR(20), "
+            + "HOMEPHONE VARCHAR(20), WORKEMAIL VARCHAR(128), HOMEEMAIL VARCHAR(128), "
+            + "STREET VARCHAR(32), ZIP VARCHAR(16), CITY VARCHAR(32), STATE VARCHAR(2), "
+            + "COUNTRY VARCHAR(32), PRIMARY KEY(ID))";
+
+    private JDBCConnectionPool connectionPool = null;
     private SQLContainer container = null;
+    /* Query the background commits write with, created when first needed */
+    private DemoFreeformQuery writer = null;
     private Window mainWindow;
 
     private Table contactList = new Table();
     private VerticalLayout editorLayout = new VerticalLayout();
     private Form contactEditor = new Form();
     private HorizontalLayout bottomLeftCorner = new HorizontalLayout();
+    private Button contactAddButton;
     private Button contactRemovalButton;
+    private ProgressIndicator filteringIndicator = new ProgressIndicator();
+    private ProgressIndicator savingIndicator = new ProgressIndicator();
+    private FilterPipeline filterPipeline;
 
     @Override
     public void init() {
@@ -98,6 +164,11 @@ public class SQLContainerDemo extends Application implements Serializable {
                 new Button.ClickListener() {
                     public void buttonClick(ClickEvent event) {
                         contactEditor.commit();
+                        if (isAsyncCommit()) {
+                            commitInBackground((RowItem) contactEditor
+                                    .getItemDataSource(), false);
+                            return;
+                        }
                         try {
                             container.commit();
                             editorLayout.setVisible(false);
@@ -114,18 +185,25 @@ public class SQLContainerDemo extends Application implements Serializable {
 
     private void initContactAddRemoveButtons() {
         // New item button
-        bottomLeftCorner.addComponent(new Button("+",
-                new Button.ClickListener() {
-                    public void buttonClick(ClickEvent event) {
-                        Object id = contactList.addItem();
-                        contactList.setValue(id);
-                    }
-                }));
+        contactAddButton = new Button("+", new Button.ClickListener() {
+            public void buttonClick(ClickEvent event) {
+                Object id = contactList.addItem();
+                contactList.setValue(id);
+            }
+        });
+        bottomLeftCorner.addComponent(contactAddButton);
 
         // Remove item button
         contactRemovalButton = new Button("-", new Button.ClickListener() {
             public void buttonClick(ClickEvent event) {
-                contactList.removeItem(contactList.getValue());
+                Object id = contactList.getValue();
+                if (isAsyncCommit() && !(id instanceof TemporaryRowId)) {
+                    RowItem row = (RowItem) container.getItem(id);
+                    contactList.removeItem(id);
+                    commitInBackground(row, true);
+                    return;
+                }
+                contactList.removeItem(id);
                 try {
                     container.commit();
                 } catch (SQLException e) {
@@ -137,6 +215,65 @@ public class SQLContainerDemo extends Application implements Serializable {
         });
         contactRemovalButton.setVisible(false);
         bottomLeftCorner.addComponent(contactRemovalButton);
+
+        /* Polls for the result of a background commit */
+        savingIndicator.setIndeterminate(true);
+        savingIndicator.setPollingInterval(500);
+        savingIndicator.setVisible(false);
+        bottomLeftCorner.addComponent(savingIndicator);
+    }
+
+    private boolean isAsyncCommit() {
+        return Boolean.parseBoolean(getProperty(ASYNC_COMMIT_PROPERTY));
+    }
+
+    /*
+     * Stores or removes a row on a background thread. The editor, the buttons
+     * and the list, whose selection rolls the container back, are disabled
+     * until it has been written, as the committer then drops every change
+     * buffered in the container.
+     */
+    private void commitInBackground(RowItem row, final boolean remove) {
+        if (writer == null) {
+            writer = createQuery();
+        }
+        setChangesEnabled(false);
+        savingIndicator.setVisible(true);
+        AsyncCommitter.Callback callback = new AsyncCommitter.Callback() {
+            public void commitSucceeded(
+                    QueryDelegate.RowIdChangeEvent rowIdChange) {
+                savingFinished();
+                if (remove) {
+                    contactList.select(null);
+                } else {
+                    editorLayout.setVisible(false);
+                }
+            }
+
+            public void commitFailed(Exception e) {
+                savingFinished();
+                showError(remove ? "Error when removing record!"
+                        : "Error when saving record!");
+                e.printStackTrace();
+            }
+        };
+        if (remove) {
+            COMMITTER.remove(this, container, writer, row, callback);
+        } else {
+            COMMITTER.store(this, container, writer, row, callback);
+        }
+    }
+
+    private void savingFinished() {
+        setChangesEnabled(true);
+        savingIndicator.setVisible(false);
+    }
+
+    private void setChangesEnabled(boolean enabled) {
+        editorLayout.setEnabled(enabled);
+        contactAddButton.setEnabled(enabled);
+        contactRemovalButton.setEnabled(enabled);
+        contactList.setEnabled(enabled);
     }
 
     private void initAddressList() {
@@ -165,38 +302,92 @@ public class SQLContainerDemo extends Application implements Serializable {
     }
 
     private void initFilteringControls() {
+        filterPipeline = new FilterPipeline(this, container, connectionPool,
+                "PEOPLE", PEOPLE_COUNTS);
+        filterPipeline.setListener(new FilterPipeline.Listener() {
+            public void filteringStarted() {
+                filteringIndicator.setVisible(true);
+            }
+
+            public void filteringFinished(int count) {
+                filteringIndicator.setVisible(false);
+                getMainWindow().showNotification(
+                        "" + count + " matches found");
+            }
+        });
         for (final String pn : VISIBLE_COLS) {
             final TextField sf = new TextField();
             bottomLeftCorner.addComponent(sf);
             sf.setWidth("100%");
             sf.setInputPrompt(pn);
-            sf.setImmediate(true);
+            /* Send the text once the user pauses typing */
+            sf.setTextChangeEventMode(TextChangeEventMode.LAZY);
+            sf.setTextChangeTimeout(400);
             bottomLeftCorner.setExpandRatio(sf, 1);
-            sf.addListener(new Property.ValueChangeListener() {
-                public void valueChange(ValueChangeEvent event) {
-                    container.removeContainerFilters(pn);
-                    if (sf.toString().length() > 0 && !pn.equals(sf.toString())) {
-                        container.addContainerFilter(pn, sf.toString(), true,
-                                false);
-                    }
-                    getMainWindow().showNotification(
-                            "" + container.size() + " matches found");
+            sf.addListener(new TextChangeListener() {
+                public void textChange(TextChangeEvent event) {
+                    filterPipeline.submit(pn, event.getText());
                 }
             });
         }
+        /* Polls for the filters applied in the background */
+        filteringIndicator.setIndeterminate(true);
+        filteringIndicator.setPollingInterval(300);
+        filteringIndicator.setVisible(false);
+        bottomLeftCorner.addComponent(filteringIndicator);
     }
 
     private void initConnectionPool() {
         try {
-            connectionPool = new SimpleJDBCConnectionPool(
-                    "org.hsqldb.jdbc.JDBCDriver",
-                    "jdbc:hsqldb:mem:sqlcontainer", "SA", "", 2, 5);
+            connectionPool = getSharedConnectionPool();
         } catch (SQLException e) {
             showError("Couldn't create the connection pool!");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns the connection pool of all sessions, creating it and
+     * registering its statistics on first use.
+     */
+    private static synchronized JDBCConnectionPool getSharedConnectionPool()
+            throws SQLException {
+        if (sharedConnectionPool == null) {
+            InstrumentedConnectionPool instrumentedPool = new InstrumentedConnectionPool(
+                    new StatementCachingConnectionPool(
+                            new ConcurrentJDBCConnectionPool(
+                                    "org.hsqldb.jdbc.JDBCDriver",
+                                    "jdbc:hsqldb:mem:sqlcontainer", "SA", "",
+                                    2, 20)), SQL_STATISTICS);
+            instrumentedPool.setSlowQueryLog(SlowQueryLog.getDefault());
+            SQL_STATISTICS.registerMBean("people");
+            sharedConnectionPool = instrumentedPool;
+        }
+        return sharedConnectionPool;
+    }
+
+    /**
+     * Returns the index advisor of all sessions, so that the uses of a filter
+     * are counted and advised on once whichever session runs it. The first
+     * session decides whether indexes are created automatically.
+     */
+    private static synchronized IndexAdvisor getSharedIndexAdvisor(
+            JDBCConnectionPool connectionPool, boolean autoCreate) {
+        if (sharedIndexAdvisor == null) {
+            sharedIndexAdvisor = new IndexAdvisor(connectionPool);
+            sharedIndexAdvisor.setAutoCreate(autoCreate);
+        }
+        return sharedIndexAdvisor;
+    }
+
+    @Override
+    public void close() {
+        if (filterPipeline != null) {
+            filterPipeline.shutdown();
+        }
+        super.close();
+    }
+
     public void showError(String errorString) {
         mainWindow.showNotification(errorString,
                 Notification.TYPE_ERROR_MESSAGE);
@@ -210,14 +401,7 @@ public class SQLContainerDemo extends Application implements Serializable {
                 statement.executeQuery("SELECT * FROM PEOPLE");
             } catch (SQLException e) {
                 // Failed, which means that we should init the database
-                statement
-                        .execute("CREATE TABLE PEOPLE "
-                                + "(ID INTEGER GENERATED ALWAYS AS IDENTITY, "
-                                + "FIRSTNAME VARCHAR(32), LASTNAME VARCHAR(32), "
-                                + "COMPANY VARCHAR(32), MOBILE VARCHAR(20), WORKPHONE VARCHAR(20), "
-                                + "HOMEPHONE VARCHAR(20), WORKEMAIL VARCHAR(128), HOMEEMAIL VARCHAR(128), "
-                                + "STREET VARCHAR(32), ZIP VARCHAR(16), CITY VARCHAR(32), STATE VARCHAR(2), "
-                                + "COUNTRY VARCHAR(32), PRIMARY KEY(ID))");
+                statement.execute(CREATE_PEOPLE_TABLE);
             }
             statement.close();
             conn.commit();
@@ -230,38 +414,62 @@ public class SQLContainerDemo extends Application implements Serializable {
 
     private void initContainer() {
         try {
-            FreeformQuery query = new FreeformQuery("SELECT * FROM PEOPLE",
-                    Arrays.asList("ID"), connectionPool);
-            query.setDelegate(new DemoFreeformQueryDelegate());
-            container = new SQLContainer(query);
+            container = new SQLContainer(createQuery());
         } catch (SQLException e) {
             showError("Could not create an instance of SQLContainer!");
             e.printStackTrace();
         }
     }
 
+    private DemoFreeformQuery createQuery() {
+        DemoFreeformQuery query = new DemoFreeformQuery("SELECT * FROM PEOPLE",
+                connectionPool, "ID");
+        query.setCountCache(PEOPLE_COUNTS);
+        DemoFreeformQueryDelegate delegate = new DemoFreeformQueryDelegate();
+        delegate.setKeysetPaging(true);
+        delegate.setBatchMode(true);
+        delegate.setIndexAdvisor(getSharedIndexAdvisor(connectionPool, Boolean
+                .parseBoolean(getProperty(AUTO_CREATE_INDEXES_PROPERTY))));
+        query.setDelegate(delegate);
+        return query;
+    }
+
     private void fillContainer(SQLContainer container) {
         if (container.size() == 0) {
-            String[] fnames = { "Peter", "Alice", "Joshua", "Mike", "Olivia",
-                    "Nina", "Alex", "Rita", "Dan", "Umberto", "Henrik", "Rene",
-                    "Lisa", "Marge" };
-            String[] lnames = { "Smith", "Gordon", "Simpson", "Brown",
+            final String[] fnames = { "Peter", "Alice", "Joshua", "Mike",
+                    "Olivia", "Nina", "Alex", "Rita", "Dan", "Umberto",
+                    "Henrik", "Rene", "Lisa", "Marge" };
+            final String[] lnames = { "Smith", "Gordon", "Simpson", "Brown",
                     "Clavel", "Simons", "Verne", "Scott", "Allison", "Gates",
                     "Rowling", "Barks", "Ross", "Schneider", "Tate" };
 
-            for (int i = 0; i < 1000; i++) {
-                Object id = container.addItem();
-                container.getContainerProperty(id, "FIRSTNAME").setValue(
-                        fnames[(int) (fnames.length * Math.random())]);
-                container.getContainerProperty(id, "LASTNAME").setValue(
-                        lnames[(int) (lnames.length * Math.random())]);
-            }
+            /* Stream the rows to the database instead of buffering items */
+            BulkLoader loader = new BulkLoader(connectionPool, "PEOPLE",
+                    "FIRSTNAME", "LASTNAME");
             try {
-                container.commit();
+                loader.load(new RowSource() {
+                    private int i = 0;
+
+                    public boolean nextRow(Object[] values) {
+                        if (i++ == 1000) {
+                            return false;
+                        }
+                        values[0] = fnames[(int) (fnames.length * Math
+                                .random())];
+                        values[1] = lnames[(int) (lnames.length * Math
+                                .random())];
+                        return true;
+                    }
+                });
             } catch (SQLException e) {
                 showError("Could not store items!");
                 e.printStackTrace();
+            } catch (IOException e) {
+                showError("Could not store items!");
+                e.printStackTrace();
             }
+            PEOPLE_COUNTS.invalidate();
+            container.refresh();
         }
     }
 
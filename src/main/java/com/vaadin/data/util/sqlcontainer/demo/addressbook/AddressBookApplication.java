@@ -1,7 +1,13 @@
 package com.vaadin.data.util.sqlcontainer.demo.addressbook;
 
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import com.vaadin.Application;
-import com.vaadin.data.util.sqlcontainer.SQLContainer;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.SearchFilter;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.HelpWindow;
@@ -11,19 +17,16 @@ import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.PersonForm;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.PersonList;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.SearchView;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.ui.SharingOptions;
-import com.vaadin.data.util.filter.Like;
 import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
 import com.vaadin.data.util.sqlcontainer.query.QueryDelegate.RowIdChangeEvent;
-import com.vaadin.data.Container.Filter;
 import com.vaadin.data.Item;
 import com.vaadin.data.Property;
 import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.data.Property.ValueChangeListener;
-import com.vaadin.data.util.filter.Compare.Equal;
-import com.vaadin.data.util.filter.Or;
 import com.vaadin.event.ItemClickEvent;
 import com.vaadin.event.ItemClickEvent.ItemClickListener;
 import com.vaadin.terminal.ThemeResource;
+import com.vaadin.terminal.gwt.server.HttpServletRequestListener;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
@@ -39,7 +42,7 @@ import com.vaadin.ui.Window.Notification;
 @SuppressWarnings("serial")
 public class AddressBookApplication extends Application implements
         ClickListener, ValueChangeListener, ItemClickListener,
-        QueryDelegate.RowIdChangeListener {
+        QueryDelegate.RowIdChangeListener, HttpServletRequestListener {
 
     private final NavigationTree tree = new NavigationTree(this);
 
@@ -57,8 +60,20 @@ public class AddressBookApplication extends Application implements
     private HelpWindow helpWindow = null;
     private SharingOptions sharingOptions = null;
 
-    /* Helper class that creates the tables and SQLContainers. */
-    private final DatabaseHelper dbHelp = new DatabaseHelper();
+    /* Helper class that creates the SQLContainers of this session. */
+    private final DatabaseHelper dbHelp;
+
+    public AddressBookApplication() {
+        this(new DatabaseHelper());
+    }
+
+    /**
+     * Creates an application using the given containers, e.g. to share them
+     * between applications in a load test.
+     */
+    public AddressBookApplication(DatabaseHelper dbHelp) {
+        this.dbHelp = dbHelp;
+    }
 
     @Override
     public void init() {
@@ -211,12 +226,20 @@ public class AddressBookApplication extends Application implements
                 } else if (NavigationTree.SEARCH.equals(itemId)) {
                     showSearchView();
                 } else if (itemId instanceof SearchFilter[]) {
-                    search((SearchFilter[]) itemId);
+                    searchSaved((SearchFilter[]) itemId);
                 }
             }
         }
     }
 
+    /**
+     * Enables or disables the button adding a contact. It is disabled while a
+     * contact is saved in the background.
+     */
+    public void setAddingContactsEnabled(boolean enabled) {
+        newContact.setEnabled(enabled);
+    }
+
     private void addNewContact() {
         showListView();
         tree.select(NavigationTree.SHOW_ALL);
@@ -226,56 +249,102 @@ public class AddressBookApplication extends Application implements
     }
 
     public void search(SearchFilter... searchFilters) {
+        search(false, searchFilters);
+    }
+
+    /**
+     * Runs a saved search, whose result is cached for the next run.
+     */
+    public void searchSaved(SearchFilter... searchFilters) {
+        search(true, searchFilters);
+    }
+
+    private void search(boolean saved, SearchFilter... searchFilters) {
         if (searchFilters.length == 0) {
             return;
         }
-        SQLContainer c = getDbHelp().getPersonContainer();
-
-        /* Clear all filters from person container. */
-        getDbHelp().getPersonContainer().removeAllContainerFilters();
-
-        /* Build an array of filters */
-        Filter[] filters = new Filter[searchFilters.length];
-        int ix = 0;
-        for (SearchFilter searchFilter : searchFilters) {
-            if (Integer.class.equals(c.getType(searchFilter.getPropertyId()))) {
-                try {
-                    filters[ix] = new Equal(searchFilter.getPropertyId(),
-                            Integer.parseInt(searchFilter.getTerm()));
-                } catch (NumberFormatException nfe) {
-                    getMainWindow().showNotification("Invalid search term!");
-                    return;
-                }
-            } else {
-                filters[ix] = new Like((String) searchFilter.getPropertyId(),
-                        "%" + searchFilter.getTerm() + "%");
-            }
-            ix++;
+        int count = saved ? getDbHelp().searchSaved(searchFilters)
+                : getDbHelp().search(searchFilters);
+        if (count < 0) {
+            getMainWindow().showNotification("Invalid search term!");
+            return;
         }
-        /* Add the filter(s) to the person container. */
-        c.addContainerFilter(new Or(filters));
         showListView();
 
         getMainWindow().showNotification(
                 "Searched for:<br/> "
                         + searchFilters[0].getPropertyIdDisplayName() + " = *"
                         + searchFilters[0].getTermDisplayName()
-                        + "*<br/>Found " + c.size() + " item(s).",
+                        + "*<br/>Found " + count + " item(s).",
                 Notification.TYPE_TRAY_NOTIFICATION);
     }
 
-    public void saveSearch(SearchFilter... searchFilter) {
-        tree.addItem(searchFilter);
-        tree.setItemCaption(searchFilter, searchFilter[0].getSearchName());
-        tree.setParent(searchFilter, NavigationTree.SEARCH);
-        // mark the saved search as a leaf (cannot have children)
-        tree.setChildrenAllowed(searchFilter, false);
-        // make sure "Search" is expanded
+    /**
+     * Saves a search in the navigation tree. Shared searches, and the private
+     * searches of a logged in user, are also stored in the database.
+     */
+    public void saveSearch(boolean shared, SearchFilter... searchFilter) {
+        /*
+         * Make sure "Search" is expanded before the search is stored, as
+         * expanding it the first time loads the stored searches, which would
+         * then contain the new one too.
+         */
         tree.expandItem(NavigationTree.SEARCH);
+        String owner = getOwner();
+        if (shared || owner != null) {
+            try {
+                getDbHelp().saveSearch(searchFilter, owner, shared);
+            } catch (SQLException e) {
+                getMainWindow().showNotification("Could not store the search!",
+                        Notification.TYPE_ERROR_MESSAGE);
+                e.printStackTrace();
+            }
+        }
+        tree.addSavedSearch(searchFilter);
         // select the saved search
         tree.setValue(searchFilter);
     }
 
+    /**
+     * Returns the stored searches visible to the current user.
+     */
+    public List<SearchFilter[]> getSavedSearches() {
+        try {
+            return getDbHelp().getSavedSearches(getOwner());
+        } catch (SQLException e) {
+            getMainWindow().showNotification(
+                    "Could not load the saved searches!",
+                    Notification.TYPE_ERROR_MESSAGE);
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    private String getOwner() {
+        return getUser() == null ? null : getUser().toString();
+    }
+
+    /**
+     * Takes the user authenticated by the servlet container as the owner of
+     * the private searches, and brings the containers up to date with the
+     * changes committed by other sessions before the request is handled.
+     * Anonymous users only store shared searches.
+     */
+    public void onRequestStart(HttpServletRequest request,
+            HttpServletResponse response) {
+        synchronized (this) {
+            String user = request.getRemoteUser();
+            if (user != null && !user.equals(getOwner())) {
+                setUser(user);
+            }
+            dbHelp.refreshChangedContainers();
+        }
+    }
+
+    public void onRequestEnd(HttpServletRequest request,
+            HttpServletResponse response) {
+    }
+
     public DatabaseHelper getDbHelp() {
         return dbHelp;
     }
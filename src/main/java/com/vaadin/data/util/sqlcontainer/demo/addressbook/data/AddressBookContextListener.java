@@ -0,0 +1,21 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Creates the shared {@link AddressBookDatabase} when the web application is
+ * started, so that the first session does not pay for creating the schema and
+ * the demo data, and closes its connections when the web application is
+ * stopped.
+ */
+public class AddressBookContextListener implements ServletContextListener {
+
+    public void contextInitialized(ServletContextEvent sce) {
+        AddressBookDatabase.getInstance();
+    }
+
+    public void contextDestroyed(ServletContextEvent sce) {
+        AddressBookDatabase.shutdown();
+    }
+}
@@ -0,0 +1,523 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vaadin.data.util.sqlcontainer.SQLContainer;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.AdvisedTableQuery;
+import com.vaadin.data.util.sqlcontainer.demo.AsyncCommitter;
+import com.vaadin.data.util.sqlcontainer.demo.IndexAdvisor;
+import com.vaadin.data.util.sqlcontainer.demo.ReferenceOptions;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.BulkLoader;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.CsvRowSource;
+import com.vaadin.data.util.sqlcontainer.demo.bulk.RowSource;
+import com.vaadin.data.util.sqlcontainer.demo.connection.ConcurrentJDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.connection.StatementCachingConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.filter.IdSetTranslator;
+import com.vaadin.data.util.sqlcontainer.demo.filter.InSubqueryTranslator;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.InstrumentedConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SlowQueryLog;
+import com.vaadin.data.util.sqlcontainer.demo.monitor.SqlStatistics;
+import com.vaadin.data.util.sqlcontainer.query.TableQuery;
+
+/**
+ * Application scoped data layer of the address book. A single instance owns
+ * the connection pool and creates and seeds the database tables once. Every
+ * session gets its own lightweight SQLContainers from
+ * {@link #createPersonContainer()} and {@link #createCityContainer()}, which
+ * all share the pool.
+ * <p>
+ * The instance is created by {@link AddressBookContextListener} when the web
+ * application starts and closed when it stops. Outside of a servlet container
+ * it is created on first use.
+ */
+public class AddressBookDatabase {
+
+    /**
+     * System property for the number of persons generated into an empty
+     * database.
+     */
+    public static final String PERSONS_PROPERTY = "addressbook.persons";
+
+    /**
+     * System property that makes the index advisor create the indexes it
+     * finds missing instead of only logging them.
+     */
+    public static final String AUTO_CREATE_INDEXES_PROPERTY = "addressbook.autoCreateIndexes";
+
+    /**
+     * System property that enables the in-memory search index of the person
+     * text columns.
+     */
+    public static final String SEARCH_INDEX_PROPERTY = "addressbook.searchIndex";
+
+    /**
+     * System property that makes the person form commit on a background
+     * thread instead of holding the session for the transaction.
+     */
+    public static final String ASYNC_COMMIT_PROPERTY = "addressbook.asyncCommit";
+
+    /**
+     * System property giving the largest number of connections of the pool,
+     * 20 by default.
+     */
+    public static final String MAX_CONNECTIONS_PROPERTY = "addressbook.maxConnections";
+
+    /**
+     * System property giving the interval in seconds of the SQL statistics
+     * log line, 60 by default; 0 turns the log line off.
+     */
+    public static final String SQL_LOG_INTERVAL_PROPERTY = "addressbook.sqlLogInterval";
+
+    /*
+     * Milliseconds for which the table versions read by one request are
+     * reused by the requests of all sessions, so that polling clients do not
+     * query the versions on every request.
+     */
+    private static final long TABLE_VERSIONS_INTERVAL = 1000;
+
+    private static AddressBookDatabase instance;
+
+    /**
+     * JDBC Connection pool shared by all the sessions.
+     */
+    private JDBCConnectionPool connectionPool = null;
+
+    /**
+     * Execution statistics of all the SQL run on the connection pool.
+     */
+    private SqlStatistics sqlStatistics = null;
+
+    /**
+     * City names by id, shared by all the sessions.
+     */
+    private CityNameCache cityNames = null;
+
+    /**
+     * Index advisor watching the filters and sort orders of all sessions.
+     */
+    private IndexAdvisor indexAdvisor = null;
+
+    /**
+     * Substring index of the person text columns, or null if disabled.
+     */
+    private PersonSearchIndex searchIndex = null;
+
+    /**
+     * Results of person searches, shared by all the sessions.
+     */
+    private SearchResultCache searchResults = null;
+
+    /**
+     * Saved searches of all the users.
+     */
+    private SavedSearchStore savedSearches = null;
+
+    /**
+     * Background writer of the person form, or null if commits are
+     * synchronous.
+     */
+    private AsyncCommitter committer = null;
+
+    /**
+     * The table versions last read, and when they were read.
+     */
+    private Map<String, Long> tableVersions = null;
+    private long tableVersionsRead = 0;
+
+    /**
+     * Returns the shared data layer, creating it if necessary.
+     *
+     * @return the shared data layer
+     */
+    public static synchronized AddressBookDatabase getInstance() {
+        if (instance == null) {
+            instance = new AddressBookDatabase();
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the connections of the shared data layer. A new instance is
+     * created if {@link #getInstance()} is called again.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            if (instance.committer != null) {
+                instance.committer.shutdown();
+            }
+            instance.connectionPool.destroy();
+            instance.sqlStatistics.shutdown();
+            instance = null;
+        }
+    }
+
+    private AddressBookDatabase() {
+        InSubqueryTranslator.register();
+        IdSetTranslator.register();
+        initConnectionPool();
+        initDatabase();
+        fillDatabase();
+        cityNames = new CityNameCache(connectionPool);
+        searchResults = new SearchResultCache(connectionPool, 100);
+        savedSearches = new SavedSearchStore(connectionPool);
+        if (Boolean.getBoolean(SEARCH_INDEX_PROPERTY)) {
+            initSearchIndex();
+        }
+        if (Boolean.getBoolean(ASYNC_COMMIT_PROPERTY)) {
+            committer = new AsyncCommitter(4, 100);
+        }
+    }
+
+    private void initConnectionPool() {
+        try {
+            ConcurrentJDBCConnectionPool pool = new ConcurrentJDBCConnectionPool(
+                    "org.hsqldb.jdbc.JDBCDriver",
+                    "jdbc:hsqldb:mem:sqlcontainer", "SA", "", 2, Integer
+                            .getInteger(MAX_CONNECTIONS_PROPERTY, 20));
+            pool.registerMBean("addressbook");
+            /*
+             * Every statement of the containers and the other users of the
+             * pool is timed, see SqlStatistics for the JMX attributes and the
+             * log line. Slow statements are shown by the admin application.
+             */
+            sqlStatistics = new SqlStatistics();
+            sqlStatistics.registerMBean("addressbook");
+            sqlStatistics.setLogInterval(Long.getLong(
+                    SQL_LOG_INTERVAL_PROPERTY, 60));
+            InstrumentedConnectionPool instrumentedPool = new InstrumentedConnectionPool(
+                    new StatementCachingConnectionPool(pool), sqlStatistics);
+            instrumentedPool.setSlowQueryLog(SlowQueryLog.getDefault());
+            connectionPool = instrumentedPool;
+            indexAdvisor = new IndexAdvisor(connectionPool);
+            indexAdvisor.setAutoCreate(Boolean
+                    .getBoolean(AUTO_CREATE_INDEXES_PROPERTY));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void initDatabase() {
+        try {
+            Connection conn = connectionPool.reserveConnection();
+            Statement statement = conn.createStatement();
+            try {
+                statement.executeQuery("SELECT * FROM PERSONADDRESS");
+                statement.executeQuery("SELECT * FROM CITY");
+            } catch (SQLException e) {
+                /*
+                 * Failed, which means that the database is not yet initialized
+                 * => Create the tables
+                 */
+                statement
+                        .execute("create table city (id integer generated always as identity, name varchar_ignorecase(64), version integer default 0 not null)");
+                statement.execute("alter table city add primary key (id)");
+                /* For the prefix queries of the city picker */
+                statement.execute("create index city_name on city (name)");
+                statement
+                        .execute("create table personaddress "
+                                + "(id integer generated always as identity, "
+                                + "firstname varchar(64), lastname varchar(64), "
+                                + "email varchar(64), phonenumber varchar(64), "
+                                + "streetaddress varchar(128), postalcode integer, "
+                                + "cityId integer not null, version integer default 0 not null , "
+                                + "FOREIGN KEY (cityId) REFERENCES city(id))");
+                statement
+                        .execute("alter table personaddress add primary key (id)");
+            }
+            try {
+                statement.executeQuery("SELECT * FROM SAVED_SEARCH");
+            } catch (SQLException e) {
+                statement
+                        .execute("create table saved_search (id integer generated always as identity primary key, "
+                                + "name varchar(64) not null, owner varchar(64), shared boolean default false not null, "
+                                + "filters varbinary(4096) not null)");
+                statement
+                        .execute("create index saved_search_owner on saved_search (owner)");
+            }
+            try {
+                statement.executeQuery("SELECT * FROM TABLE_VERSIONS");
+            } catch (SQLException e) {
+                /*
+                 * Version the personaddress and city tables on every change,
+                 * and the person rows for the optimistic locking of the
+                 * containers
+                 */
+                statement
+                        .execute("create table table_versions (table_name varchar(64) primary key, version bigint default 0 not null)");
+                statement
+                        .execute("create trigger personaddress_version before update on personaddress "
+                                + "referencing old row as o new row as n for each row "
+                                + "set n.version = o.version + 1");
+                String[] tables = { "PERSONADDRESS", "CITY" };
+                String[] events = { "insert", "update", "delete" };
+                for (String table : tables) {
+                    statement
+                            .execute("insert into table_versions (table_name) values ('"
+                                    + table + "')");
+                    for (String event : events) {
+                        statement.execute("create trigger " + table
+                                + "_tv_" + event + " after " + event + " on "
+                                + table + " for each statement "
+                                + "update table_versions set version = version + 1 "
+                                + "where table_name = '" + table + "'");
+                    }
+                }
+            }
+            statement.close();
+            conn.commit();
+            connectionPool.releaseConnection(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void initSearchIndex() {
+        /* The text columns of DatabaseHelper.NATURAL_COL_ORDER */
+        searchIndex = new PersonSearchIndex("FIRSTNAME", "LASTNAME", "EMAIL",
+                "PHONENUMBER", "STREETADDRESS");
+        try {
+            searchIndex.load(connectionPool);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            searchIndex = null;
+        }
+    }
+
+    /**
+     * Creates a new SQLContainer for the personaddress table. The container
+     * does not see the changes committed by other sessions before it is
+     * refreshed, see {@link #getTableVersions()}.
+     *
+     * @return a new person container
+     * @throws SQLException
+     */
+    public SQLContainer createPersonContainer() throws SQLException {
+        /* TableQuery and SQLContainer for personaddress -table */
+        TableQuery q1 = createPersonQuery();
+        return new SQLContainer(q1);
+    }
+
+    /**
+     * Creates a new TableQuery for the personaddress table. Besides the
+     * containers, the queries are used to write persons with the
+     * {@link AsyncCommitter}.
+     *
+     * @return a new person query
+     * @throws SQLException
+     */
+    public TableQuery createPersonQuery() throws SQLException {
+        TableQuery query = searchIndex == null ? new AdvisedTableQuery(
+                "personaddress", connectionPool, indexAdvisor)
+                : new SearchIndexedTableQuery("personaddress", connectionPool,
+                        indexAdvisor, searchIndex);
+        query.setVersionColumn("VERSION");
+        return query;
+    }
+
+    /**
+     * Creates a new SQLContainer for the city table. The container does not
+     * see the changes committed by other sessions before it is refreshed, see
+     * {@link #getTableVersions()}.
+     *
+     * @return a new city container
+     * @throws SQLException
+     */
+    public SQLContainer createCityContainer() throws SQLException {
+        /* TableQuery and SQLContainer for city -table */
+        TableQuery q2 = new AdvisedTableQuery("city", connectionPool,
+                indexAdvisor);
+        q2.setVersionColumn("VERSION");
+        return new SQLContainer(q2);
+    }
+
+    /**
+     * Creates an options provider for picking a city by the prefix of its
+     * name.
+     *
+     * @return the city options
+     */
+    public ReferenceOptions createCityOptions() {
+        return new ReferenceOptions(connectionPool, "CITY", "ID", "NAME");
+    }
+
+    /**
+     * Method to generate dummy data to the database. The rows are streamed to
+     * the database with batched inserts. The number of generated persons can
+     * be set with the system property {@value #PERSONS_PROPERTY}.
+     */
+    private void fillDatabase() {
+        try {
+            if (countRows("PERSONADDRESS") > 0 || countRows("CITY") > 0) {
+                return;
+            }
+            /* Create cities */
+            final String cities[] = { "[no city]", "Amsterdam", "Berlin",
+                    "Helsinki", "Hong Kong", "London", "Luxemburg", "New York",
+                    "Oslo", "Paris", "Rome", "Stockholm", "Tokyo", "Turku" };
+            new BulkLoader(connectionPool, "CITY", "NAME")
+                    .load(new RowSource() {
+                        private int i = 0;
+
+                        public boolean nextRow(Object[] values) {
+                            if (i == cities.length) {
+                                return false;
+                            }
+                            values[0] = cities[i++];
+                            return true;
+                        }
+                    });
+
+            loadPersons(new PersonGenerator(Long.getLong(PERSONS_PROPERTY,
+                    100), cities.length, 0), null);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Streams persons to the personaddress table, e.g. from a
+     * {@link PersonGenerator} or a {@link CsvRowSource} with the columns of
+     * {@link PersonGenerator#COLUMNS}. Open containers do not see the new rows
+     * before they are refreshed. The search index, if enabled, is reloaded
+     * afterwards.
+     *
+     * @param source
+     *            the persons to load
+     * @param listener
+     *            listener notified after each commit, or null
+     * @return the number of persons loaded
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long loadPersons(RowSource source,
+            BulkLoader.ProgressListener listener) throws SQLException,
+            IOException {
+        BulkLoader loader = new BulkLoader(connectionPool, "PERSONADDRESS",
+                PersonGenerator.COLUMNS);
+        loader.setProgressListener(listener);
+        long rows = loader.load(source);
+        if (searchIndex != null) {
+            searchIndex.load(connectionPool);
+        }
+        return rows;
+    }
+
+    private int countRows(String table) throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            Statement statement = conn.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM "
+                    + table);
+            rs.next();
+            int count = rs.getInt(1);
+            rs.close();
+            statement.close();
+            conn.commit();
+            return count;
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Returns the versions of the personaddress and city tables. Triggers
+     * increment the version of a table on every statement that changes it,
+     * whichever session or connection runs it, so a container whose table
+     * version has changed since it was last refreshed is out of date.
+     * <p>
+     * The versions are read at most once a second for all the sessions, so a
+     * change made by another session is seen within a second.
+     *
+     * @return the versions by upper case table name
+     * @throws SQLException
+     */
+    public synchronized Map<String, Long> getTableVersions()
+            throws SQLException {
+        long now = System.currentTimeMillis();
+        if (tableVersions == null
+                || now - tableVersionsRead >= TABLE_VERSIONS_INTERVAL
+                || now < tableVersionsRead) {
+            tableVersions = Collections.unmodifiableMap(readTableVersions());
+            tableVersionsRead = now;
+        }
+        return tableVersions;
+    }
+
+    private Map<String, Long> readTableVersions() throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn
+                    .prepareStatement("SELECT TABLE_NAME, VERSION FROM TABLE_VERSIONS");
+            try {
+                Map<String, Long> versions = new HashMap<String, Long>();
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    versions.put(rs.getString(1), rs.getLong(2));
+                }
+                rs.close();
+                return versions;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    public JDBCConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Returns the execution statistics of the SQL run on the connection pool,
+     * which are also exported over JMX.
+     */
+    public SqlStatistics getSqlStatistics() {
+        return sqlStatistics;
+    }
+
+    public CityNameCache getCityNameCache() {
+        return cityNames;
+    }
+
+    public IndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+
+    public SearchResultCache getSearchResultCache() {
+        return searchResults;
+    }
+
+    public SavedSearchStore getSavedSearchStore() {
+        return savedSearches;
+    }
+
+    /**
+     * Returns the substring index of the person text columns, or null if it
+     * is not enabled with the system property {@value #SEARCH_INDEX_PROPERTY}.
+     */
+    public PersonSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns the background writer of the person form, or null if commits
+     * are synchronous, which is the default unless the system property
+     * {@value #ASYNC_COMMIT_PROPERTY} is set.
+     */
+    public AsyncCommitter getCommitter() {
+        return committer;
+    }
+}
@@ -0,0 +1,247 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Cache of city names by city id, shared by all sessions. The cache is filled
+ * with all the cities when it is created and kept up to date by the sessions
+ * adding cities. Names missing from the cache are fetched in batches with a
+ * single <code>SELECT ... WHERE ID IN (...)</code> query, so that rendering a
+ * page of persons costs at most one query for the city names of the whole
+ * page. Ids that are not found are cached as missing until the version of the
+ * city table changes, see {@link #setVersion(long)}.
+ * <p>
+ * The names are stored in an open addressing hash table keyed by the primitive
+ * id. Lookups read an immutable table without locking or allocating; writes
+ * are rare and replace the whole table.
+ */
+public class CityNameCache {
+
+    /* Name of the ids not found in the database, compared by identity */
+    private static final String MISSING = new String();
+
+    private final JDBCConnectionPool connectionPool;
+    private volatile IntStringMap names = new IntStringMap(16);
+    private long version = -1;
+
+    public CityNameCache(JDBCConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        load("SELECT ID, NAME FROM CITY", null);
+    }
+
+    /**
+     * Returns the cached name of a city without querying the database.
+     *
+     * @param cityId
+     *            the id of the city
+     * @return the name of the city, an empty string if there is no such city,
+     *         or null if it is not cached
+     */
+    public String getCachedName(int cityId) {
+        return names.get(cityId);
+    }
+
+    /**
+     * Returns the name of a city, fetching it from the database if it is not
+     * cached.
+     *
+     * @param cityId
+     *            the id of the city
+     * @return the name of the city, or null if there is no such city
+     */
+    public String getName(int cityId) {
+        String name = names.get(cityId);
+        if (name == null) {
+            List<Integer> ids = new ArrayList<Integer>(1);
+            ids.add(cityId);
+            prefetch(ids);
+            name = names.get(cityId);
+        }
+        return name == MISSING ? null : name;
+    }
+
+    /**
+     * Fetches the names of all the given cities that are not cached yet with
+     * one query.
+     *
+     * @param cityIds
+     *            the ids of the cities
+     */
+    public void prefetch(Collection<Integer> cityIds) {
+        IntStringMap current = names;
+        List<Integer> missing = new ArrayList<Integer>();
+        for (Integer id : cityIds) {
+            if (id != null && current.get(id) == null && !missing.contains(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        StringBuffer query = new StringBuffer(
+                "SELECT ID, NAME FROM CITY WHERE ID IN (");
+        for (int i = 0; i < missing.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(")");
+        load(query.toString(), missing);
+    }
+
+    /**
+     * Stores the name of a city, e.g. after it has been added.
+     */
+    public synchronized void put(int cityId, String name) {
+        IntStringMap copy = names.copy(names.size() + 1);
+        copy.put(cityId, name == null ? "" : name);
+        names = copy;
+    }
+
+    /**
+     * Sets the current version of the city table. The ids cached as missing
+     * are dropped when the version changes, as the cities may have been
+     * added since.
+     *
+     * @param version
+     *            the version of the city table
+     */
+    public synchronized void setVersion(long version) {
+        if (version == this.version) {
+            return;
+        }
+        this.version = version;
+        IntStringMap copy = names.copyFound();
+        if (copy != null) {
+            names = copy;
+        }
+    }
+
+    private void load(String query, List<Integer> params) {
+        try {
+            Connection conn = connectionPool.reserveConnection();
+            try {
+                PreparedStatement pstmt = conn.prepareStatement(query);
+                if (params != null) {
+                    for (int i = 0; i < params.size(); i++) {
+                        pstmt.setInt(i + 1, params.get(i));
+                    }
+                }
+                ResultSet rs = pstmt.executeQuery();
+                List<Integer> ids = new ArrayList<Integer>();
+                List<String> values = new ArrayList<String>();
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                    String name = rs.getString(2);
+                    values.add(name == null ? "" : name);
+                }
+                rs.close();
+                pstmt.close();
+                conn.commit();
+                if (params != null) {
+                    for (Integer id : params) {
+                        if (!ids.contains(id)) {
+                            ids.add(id);
+                            values.add(MISSING);
+                        }
+                    }
+                }
+                putAll(ids, values);
+            } finally {
+                connectionPool.releaseConnection(conn);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void putAll(List<Integer> ids, List<String> values) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        IntStringMap copy = names.copy(names.size() + ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            copy.put(ids.get(i), values.get(i));
+        }
+        names = copy;
+    }
+
+    /**
+     * Open addressing hash table from int keys to non-null strings. Instances
+     * are only modified before they are published.
+     */
+    private static final class IntStringMap {
+        private final int[] keys;
+        private final String[] values;
+        private int size;
+
+        private IntStringMap(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            values = new String[capacity];
+        }
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private String get(int key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] != null; i = (i + 1)
+                    & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private void put(int key, String value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private IntStringMap copy(int expectedSize) {
+            IntStringMap copy = new IntStringMap(Math.max(expectedSize, size));
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    copy.put(keys[i], values[i]);
+                }
+            }
+            return copy;
+        }
+
+        /* Copies the found names, or returns null if there are no misses */
+        private IntStringMap copyFound() {
+            IntStringMap copy = new IntStringMap(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null && values[i] != MISSING) {
+                    copy.put(keys[i], values[i]);
+                }
+            }
+            return copy.size == size ? null : copy;
+        }
+
+        private int size() {
+            return size;
+        }
+    }
+}
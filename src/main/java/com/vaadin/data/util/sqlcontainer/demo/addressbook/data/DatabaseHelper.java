@@ -1,14 +1,29 @@
 package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
 
 import java.io.Serializable;
-import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import com.vaadin.Application;
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.Compare.Equal;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Or;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.RowItem;
 import com.vaadin.data.util.sqlcontainer.SQLContainer;
-import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
-import com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.AdvisedTableQuery;
+import com.vaadin.data.util.sqlcontainer.demo.AsyncCommitter;
+import com.vaadin.data.util.sqlcontainer.demo.ReferenceOptions;
+import com.vaadin.data.util.sqlcontainer.demo.filter.IdSetFilter;
+import com.vaadin.data.util.sqlcontainer.demo.filter.InSubqueryFilter;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate.RowIdChangeEvent;
 import com.vaadin.data.util.sqlcontainer.query.TableQuery;
 
 @SuppressWarnings("serial")
@@ -29,198 +44,365 @@ public class DatabaseHelper implements Serializable {
             "First name", "Last name", "Email", "Phone number",
             "Street Address", "Postal Code", "City" };
 
+    /*
+     * Searches matching more persons than this are left to the database, as
+     * an IN list of that size costs more than the scan it would save.
+     */
+    private static final int MAX_INDEXED_HITS = 10000;
+
     /**
-     * JDBC Connection pool and the two SQLContainers connecting to the persons
-     * and cities DB tables.
+     * The two SQLContainers of this session connecting to the persons and
+     * cities DB tables. The connection pool is shared by all sessions through
+     * {@link AddressBookDatabase}.
      */
-    private JDBCConnectionPool connectionPool = null;
     private SQLContainer personContainer = null;
     private SQLContainer cityContainer = null;
 
     /**
-     * Enable debug mode to output SQL queries to System.out.
+     * Query of the person container.
+     */
+    private TableQuery personQuery = null;
+
+    /**
+     * Names of the cities added by this session, by their temporary row ids,
+     * until their real ids are known.
+     */
+    private final Map<Object, String> pendingCityNames = new HashMap<Object, String>();
+
+    /**
+     * Query writing the persons of this session committed in the background,
+     * created when first needed.
      */
-    private boolean debugMode = false;
+    private TableQuery personWriter = null;
+
+    /**
+     * Versions of the personaddress and city tables when the containers were
+     * last refreshed.
+     */
+    private long personVersion = -1;
+    private long cityVersion = -1;
 
     public DatabaseHelper() {
-        initConnectionPool();
-        initDatabase();
         initContainers();
-        fillContainers();
     }
 
-    private void initConnectionPool() {
+    private void initContainers() {
         try {
-            connectionPool = new SimpleJDBCConnectionPool(
-                    "org.hsqldb.jdbc.JDBCDriver",
-                    "jdbc:hsqldb:mem:sqlcontainer", "SA", "", 2, 5);
+            AddressBookDatabase database = AddressBookDatabase.getInstance();
+            Map<String, Long> versions = database.getTableVersions();
+            personVersion = getVersion(versions, "PERSONADDRESS");
+            cityVersion = getVersion(versions, "CITY");
+            personQuery = database.createPersonQuery();
+            personContainer = new SQLContainer(personQuery);
+            cityContainer = database.createCityContainer();
+            /* Store the names of added cities in the shared cache */
+            cityContainer.addListener(new QueryDelegate.RowIdChangeListener() {
+                public void rowIdChange(RowIdChangeEvent event) {
+                    String name = pendingCityNames.remove(event.getOldRowId());
+                    Object id = event.getNewRowId().getId()[0];
+                    if (name != null && id instanceof Number) {
+                        AddressBookDatabase.getInstance().getCityNameCache()
+                                .put(((Number) id).intValue(), name);
+                    }
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    private void initDatabase() {
+    /**
+     * Refreshes the containers whose tables have been changed since they were
+     * last refreshed, e.g. by another session. Called at the start of every
+     * request of the session, with the application locked, so that a
+     * container is only ever refreshed by the thread of its own session. A
+     * container with uncommitted changes is left as it is until they are
+     * committed or discarded. The versions are read from the database at
+     * most once a second for all sessions, see
+     * {@link AddressBookDatabase#getTableVersions()}.
+     */
+    public void refreshChangedContainers() {
+        Map<String, Long> versions;
         try {
-            Connection conn = connectionPool.reserveConnection();
-            Statement statement = conn.createStatement();
-            try {
-                statement.executeQuery("SELECT * FROM PERSONADDRESS");
-                statement.executeQuery("SELECT * FROM CITY");
-            } catch (SQLException e) {
-                /*
-                 * Failed, which means that the database is not yet initialized
-                 * => Create the tables
-                 */
-                statement
-                        .execute("create table city (id integer generated always as identity, name varchar(64), version integer default 0 not null)");
-                statement.execute("alter table city add primary key (id)");
-                statement
-                        .execute("create table personaddress "
-                                + "(id integer generated always as identity, "
-                                + "firstname varchar(64), lastname varchar(64), "
-                                + "email varchar(64), phonenumber varchar(64), "
-                                + "streetaddress varchar(128), postalcode integer, "
-                                + "cityId integer not null, version integer default 0 not null , "
-                                + "FOREIGN KEY (cityId) REFERENCES city(id))");
-                statement
-                        .execute("alter table personaddress add primary key (id)");
-            }
-            statement.close();
-            conn.commit();
-            connectionPool.releaseConnection(conn);
+            versions = AddressBookDatabase.getInstance().getTableVersions();
         } catch (SQLException e) {
             e.printStackTrace();
+            return;
+        }
+        long version = getVersion(versions, "PERSONADDRESS");
+        if (version != personVersion && !personContainer.isModified()) {
+            personContainer.refresh();
+            personVersion = version;
+        }
+        version = getVersion(versions, "CITY");
+        AddressBookDatabase.getInstance().getCityNameCache()
+                .setVersion(version);
+        if (version != cityVersion && !cityContainer.isModified()) {
+            cityContainer.refresh();
+            cityVersion = version;
         }
     }
 
-    private void initContainers() {
+    private static long getVersion(Map<String, Long> versions, String table) {
+        Long version = versions.get(table);
+        return version == null ? -1 : version;
+    }
+
+    public SQLContainer getPersonContainer() {
+        return personContainer;
+    }
+
+    public SQLContainer getCityContainer() {
+        return cityContainer;
+    }
+
+    /**
+     * Returns a provider of the cities for a city picker, which reads one
+     * page of cities at a time.
+     * 
+     * @return the city options
+     */
+    public ReferenceOptions getCityOptions() {
+        return AddressBookDatabase.getInstance().createCityOptions();
+    }
+
+    /**
+     * Fetches a city name based on its primary key. The names of all cities
+     * are cached and shared by all sessions.
+     * 
+     * @param cityId
+     *            Key
+     * @return City name
+     */
+    public String getCityName(int cityId) {
+        return AddressBookDatabase.getInstance().getCityNameCache()
+                .getName(cityId);
+    }
+
+    /**
+     * Returns a city name if it has already been cached.
+     * 
+     * @param cityId
+     *            Key
+     * @return City name, an empty string if there is no such city, or null
+     *         if it is not cached
+     */
+    public String getCachedCityName(int cityId) {
+        return AddressBookDatabase.getInstance().getCityNameCache()
+                .getCachedName(cityId);
+    }
+
+    /**
+     * Fetches the names of the given cities with one query, so that following
+     * calls to {@link #getCityName(int)} are served from the cache.
+     * 
+     * @param cityIds
+     *            Keys
+     */
+    public void prefetchCityNames(Collection<Integer> cityIds) {
+        AddressBookDatabase.getInstance().getCityNameCache().prefetch(cityIds);
+    }
+
+    /**
+     * Creates a filter for the persons living in a city whose name contains
+     * the given term, ignoring case. The cities are resolved by a subquery in
+     * the same statement as the persons.
+     * 
+     * @param term
+     *            Part of the city name
+     * @return Filter for the CITYID property
+     */
+    public Filter createCityNameFilter(String term) {
+        return new InSubqueryFilter("CITYID", "CITY", "ID",
+                new SimpleStringFilter("NAME", term, true, false));
+    }
+
+    /**
+     * Returns the shared substring index of the person text columns.
+     * 
+     * @return the index, or null if it is not enabled
+     */
+    public PersonSearchIndex getSearchIndex() {
+        return AddressBookDatabase.getInstance().getSearchIndex();
+    }
+
+    /**
+     * Filters the person container by an ad-hoc search.
+     * 
+     * @param searchFilters
+     *            the search, whose filters are ORed together
+     * @return the number of matching persons, or -1 if a search term is
+     *         invalid
+     */
+    public int search(SearchFilter... searchFilters) {
+        Filter filter = createFilter(searchFilters);
+        if (filter == null) {
+            return -1;
+        }
+        personContainer.removeAllContainerFilters();
+        personContainer.addContainerFilter(filter);
+        return personContainer.size();
+    }
+
+    /**
+     * Filters the person container by a saved search. The result of an
+     * earlier run of the same search is reused if the persons have not
+     * changed since, which saves the LIKE scan and the count: the container
+     * is filtered by the cached ids and given the cached count, so it only
+     * reads the rows of the visible page by primary key. Only saved searches
+     * are cached, as reading the ids of a result for the cache is a second
+     * query that only pays off for searches that are run again.
+     * <p>
+     * The version of the persons is the one read for
+     * {@link #refreshChangedContainers()} at the start of the request.
+     * 
+     * @param searchFilters
+     *            the search, whose filters are ORed together
+     * @return the number of matching persons, or -1 if a search term is
+     *         invalid
+     */
+    public int searchSaved(SearchFilter... searchFilters) {
+        SearchResultCache cache = getSearchResultCache();
+        long version = -1;
+        SearchResultCache.Result result = null;
         try {
-            /* TableQuery and SQLContainer for personaddress -table */
-            TableQuery q1 = new TableQuery("personaddress", connectionPool);
-            q1.setVersionColumn("VERSION");
-//            q1.setDebug(debugMode);
-            personContainer = new SQLContainer(q1);
-//            personContainer.setDebugMode(debugMode);
-
-            /* TableQuery and SQLContainer for city -table */
-            TableQuery q2 = new TableQuery("city", connectionPool);
-            q2.setVersionColumn("VERSION");
-//            q2.setDebug(debugMode);
-            cityContainer = new SQLContainer(q2);
-//            cityContainer.setDebugMode(debugMode);
+            version = getVersion(AddressBookDatabase.getInstance()
+                    .getTableVersions(), "PERSONADDRESS");
+            result = cache.get(searchFilters, version);
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        Filter filter;
+        if (result != null && result.getIds() != null) {
+            filter = new IdSetFilter("ID", result.getIds());
+        } else {
+            filter = createFilter(searchFilters);
+            if (filter == null) {
+                return -1;
+            }
+        }
+        if (result != null && personQuery instanceof AdvisedTableQuery) {
+            ((AdvisedTableQuery) personQuery).setKnownCount(filter,
+                    result.getCount());
+        }
+
+        /* Replace the filters of the person container. */
+        personContainer.removeAllContainerFilters();
+        personContainer.addContainerFilter(filter);
+
+        int count = personContainer.size();
+        if (result != null) {
+            return count;
+        }
+        try {
+            int[] ids = count <= cache.getMaxIds() ? cache.findIds(filter)
+                    : null;
+            if (version >= 0) {
+                cache.put(searchFilters, version, count, ids);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return count;
     }
 
     /**
-     * Method to generate dummy data to the database. Everything is added to the
-     * database through the SQLContainers.
+     * Builds the filter of a search. Substring searches are resolved to
+     * person ids by the search index when it is enabled, so the database
+     * reads the rows by primary key instead of scanning for the LIKE pattern.
+     * 
+     * @return the filter, or null if a search term is invalid
      */
-    private void fillContainers() {
-        if (personContainer.size() == 0 && cityContainer.size() == 0) {
-            /* Create cities */
-            final String cities[] = { "[no city]", "Amsterdam", "Berlin",
-                    "Helsinki", "Hong Kong", "London", "Luxemburg", "New York",
-                    "Oslo", "Paris", "Rome", "Stockholm", "Tokyo", "Turku" };
-            for (int i = 0; i < cities.length; i++) {
-                Object id = cityContainer.addItem();
-                cityContainer.getContainerProperty(id, "NAME").setValue(
-                        cities[i]);
-            }
-            try {
-                cityContainer.commit();
-            } catch (SQLException e) {
-                e.printStackTrace();
+    private Filter createFilter(SearchFilter... searchFilters) {
+        PersonSearchIndex searchIndex = getSearchIndex();
+        List<Filter> filters = new ArrayList<Filter>();
+        int[] ids = null;
+        for (SearchFilter searchFilter : searchFilters) {
+            int[] hits = null;
+            if ("CITYID".equals(searchFilter.getPropertyId())) {
+                /* Cities are searched by name in a subquery */
+                filters.add(createCityNameFilter(searchFilter.getTerm()));
+            } else if (Integer.class.equals(personContainer
+                    .getType(searchFilter.getPropertyId()))) {
+                try {
+                    filters.add(new Equal(searchFilter.getPropertyId(),
+                            Integer.parseInt(searchFilter.getTerm())));
+                } catch (NumberFormatException nfe) {
+                    return null;
+                }
+            } else if (searchIndex != null
+                    && (hits = searchIndex.search(
+                            searchFilter.getPropertyId(),
+                            searchFilter.getTerm())) != null
+                    && hits.length <= MAX_INDEXED_HITS) {
+                ids = ids == null ? hits : union(ids, hits);
+            } else {
+                filters.add(new Like((String) searchFilter.getPropertyId(),
+                        "%" + searchFilter.getTerm() + "%"));
             }
+        }
+        if (ids != null) {
+            filters.add(new IdSetFilter("ID", ids));
+        }
+        return new Or(filters.toArray(new Filter[filters.size()]));
+    }
 
-            final String[] fnames = { "Peter", "Alice", "Joshua", "Mike",
-                    "Olivia", "Nina", "Alex", "Rita", "Dan", "Umberto",
-                    "Henrik", "Rene", "Lisa", "Marge" };
-            final String[] lnames = { "Smith", "Gordon", "Simpson", "Brown",
-                    "Clavel", "Simons", "Verne", "Scott", "Allison", "Gates",
-                    "Rowling", "Barks", "Ross", "Schneider", "Tate" };
-
-            final String streets[] = { "4215 Blandit Av.", "452-8121 Sem Ave",
-                    "279-4475 Tellus Road", "4062 Libero. Av.",
-                    "7081 Pede. Ave", "6800 Aliquet St.",
-                    "P.O. Box 298, 9401 Mauris St.", "161-7279 Augue Ave",
-                    "P.O. Box 496, 1390 Sagittis. Rd.", "448-8295 Mi Avenue",
-                    "6419 Non Av.", "659-2538 Elementum Street",
-                    "2205 Quis St.", "252-5213 Tincidunt St.",
-                    "P.O. Box 175, 4049 Adipiscing Rd.", "3217 Nam Ave",
-                    "P.O. Box 859, 7661 Auctor St.", "2873 Nonummy Av.",
-                    "7342 Mi, Avenue", "539-3914 Dignissim. Rd.",
-                    "539-3675 Magna Avenue", "Ap #357-5640 Pharetra Avenue",
-                    "416-2983 Posuere Rd.", "141-1287 Adipiscing Avenue",
-                    "Ap #781-3145 Gravida St.", "6897 Suscipit Rd.",
-                    "8336 Purus Avenue", "2603 Bibendum. Av.",
-                    "2870 Vestibulum St.", "Ap #722 Aenean Avenue",
-                    "446-968 Augue Ave", "1141 Ultricies Street",
-                    "Ap #992-5769 Nunc Street", "6690 Porttitor Avenue",
-                    "Ap #105-1700 Risus Street",
-                    "P.O. Box 532, 3225 Lacus. Avenue", "736 Metus Street",
-                    "414-1417 Fringilla Street",
-                    "Ap #183-928 Scelerisque Road", "561-9262 Iaculis Avenue" };
-            Random r = new Random(0);
-            try {
-                for (int i = 0; i < 100; i++) {
-                    Object id = personContainer.addItem();
-                    String firstName = fnames[r.nextInt(fnames.length)];
-                    String lastName = lnames[r.nextInt(lnames.length)];
-                    personContainer.getContainerProperty(id, "FIRSTNAME")
-                            .setValue(firstName);
-                    personContainer.getContainerProperty(id, "LASTNAME")
-                            .setValue(lastName);
-                    personContainer.getContainerProperty(id, "EMAIL").setValue(
-                            firstName.toLowerCase() + "."
-                                    + lastName.toLowerCase() + "@vaadin.com");
-                    personContainer.getContainerProperty(id, "PHONENUMBER")
-                            .setValue(
-                                    "+358 02 555 " + r.nextInt(10)
-                                            + r.nextInt(10) + r.nextInt(10)
-                                            + r.nextInt(10));
-                    personContainer.getContainerProperty(id, "STREETADDRESS")
-                            .setValue(streets[r.nextInt(streets.length)]);
-                    int n = r.nextInt(100000);
-                    if (n < 10000) {
-                        n += 10000;
-                    }
-                    personContainer.getContainerProperty(id, "POSTALCODE")
-                            .setValue(n);
-                    personContainer.getContainerProperty(id, "CITYID")
-                            .setValue(r.nextInt(cities.length));
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+    /* Merges two sorted id arrays */
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
             }
-            try {
-                personContainer.commit();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            if (n == 0 || result[n - 1] != next) {
+                result[n++] = next;
             }
         }
+        return Arrays.copyOf(result, n);
     }
 
-    public SQLContainer getPersonContainer() {
-        return personContainer;
+    /**
+     * Stores a saved search in the database.
+     * 
+     * @param searchFilters
+     *            the search
+     * @param owner
+     *            the user saving the search, or null
+     * @param shared
+     *            true to share the search with everyone
+     * @throws SQLException
+     */
+    public void saveSearch(SearchFilter[] searchFilters, String owner,
+            boolean shared) throws SQLException {
+        AddressBookDatabase.getInstance().getSavedSearchStore()
+                .save(searchFilters, owner, shared);
     }
 
-    public SQLContainer getCityContainer() {
-        return cityContainer;
+    /**
+     * Loads the stored searches visible to a user.
+     * 
+     * @param owner
+     *            the user, or null for the shared searches only
+     * @return the searches
+     * @throws SQLException
+     */
+    public List<SearchFilter[]> getSavedSearches(String owner)
+            throws SQLException {
+        return AddressBookDatabase.getInstance().getSavedSearchStore()
+                .load(owner);
     }
 
     /**
-     * Fetches a city name based on its key.
+     * Returns the search results shared by all sessions.
      * 
-     * @param cityId
-     *            Key
-     * @return City name
+     * @return the search result cache
      */
-    public String getCityName(int cityId) {
-        Object cityItemId = cityContainer.getIdByIndex(cityId);
-        return cityContainer.getItem(cityItemId).getItemProperty("NAME")
-                .getValue().toString();
+    public SearchResultCache getSearchResultCache() {
+        return AddressBookDatabase.getInstance().getSearchResultCache();
     }
 
     /**
@@ -231,8 +413,9 @@ public class DatabaseHelper implements Serializable {
      * @return true if the city was added successfully
      */
     public boolean addCity(String cityName) {
-        cityContainer.getItem(cityContainer.addItem()).getItemProperty("NAME")
-                .setValue(cityName);
+        Object id = cityContainer.addItem();
+        cityContainer.getItem(id).getItemProperty("NAME").setValue(cityName);
+        pendingCityNames.put(id, cityName);
         try {
             cityContainer.commit();
             return true;
@@ -241,6 +424,39 @@ public class DatabaseHelper implements Serializable {
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        pendingCityNames.remove(id);
         return false;
     }
+
+    /**
+     * Returns true if persons are committed in the background with
+     * {@link #commitPerson(Application, RowItem, AsyncCommitter.Callback)}.
+     */
+    public boolean isAsyncCommit() {
+        return AddressBookDatabase.getInstance().getCommitter() != null;
+    }
+
+    /**
+     * Commits an added or modified person of the person container in the
+     * background. The callback is called under the application lock once the
+     * person has been written and the container refreshed.
+     * 
+     * @param application
+     *            the application of this session
+     * @param person
+     *            the person item of the person container
+     * @param callback
+     *            the callback
+     * @throws SQLException
+     *             if the writer could not be created
+     */
+    public void commitPerson(Application application, RowItem person,
+            AsyncCommitter.Callback callback) throws SQLException {
+        if (personWriter == null) {
+            personWriter = AddressBookDatabase.getInstance()
+                    .createPersonQuery();
+        }
+        AddressBookDatabase.getInstance().getCommitter().store(application,
+                personContainer, personWriter, person, callback);
+    }
 }
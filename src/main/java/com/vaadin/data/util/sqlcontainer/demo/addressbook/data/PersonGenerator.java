@@ -0,0 +1,87 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.util.Random;
+
+import com.vaadin.data.util.sqlcontainer.demo.bulk.RowSource;
+
+/**
+ * Generates random persons for the personaddress table. The values are
+ * produced in the column order of {@link #COLUMNS}.
+ */
+public class PersonGenerator implements RowSource {
+
+    public static final String[] COLUMNS = { "FIRSTNAME", "LASTNAME", "EMAIL",
+            "PHONENUMBER", "STREETADDRESS", "POSTALCODE", "CITYID" };
+
+    private static final String[] fnames = { "Peter", "Alice", "Joshua",
+            "Mike", "Olivia", "Nina", "Alex", "Rita", "Dan", "Umberto",
+            "Henrik", "Rene", "Lisa", "Marge" };
+    private static final String[] lnames = { "Smith", "Gordon", "Simpson",
+            "Brown", "Clavel", "Simons", "Verne", "Scott", "Allison", "Gates",
+            "Rowling", "Barks", "Ross", "Schneider", "Tate" };
+
+    private static final String streets[] = { "4215 Blandit Av.",
+            "452-8121 Sem Ave", "279-4475 Tellus Road", "4062 Libero. Av.",
+            "7081 Pede. Ave", "6800 Aliquet St.",
+            "P.O. Box 298, 9401 Mauris St.", "161-7279 Augue Ave",
+            "P.O. Box 496, 1390 Sagittis. Rd.", "448-8295 Mi Avenue",
+            "6419 Non Av.", "659-2538 Elementum Street", "2205 Quis St.",
+            "252-5213 Tincidunt St.", "P.O. Box 175, 4049 Adipiscing Rd.",
+            "3217 Nam Ave", "P.O. Box 859, 7661 Auctor St.",
+            "2873 Nonummy Av.", "7342 Mi, Avenue", "539-3914 Dignissim. Rd.",
+            "539-3675 Magna Avenue", "Ap #357-5640 Pharetra Avenue",
+            "416-2983 Posuere Rd.", "141-1287 Adipiscing Avenue",
+            "Ap #781-3145 Gravida St.", "6897 Suscipit Rd.",
+            "8336 Purus Avenue", "2603 Bibendum. Av.", "2870 Vestibulum St.",
+            "Ap #722 Aenean Avenue", "446-968 Augue Ave",
+            "1141 Ultricies Street", "Ap #992-5769 Nunc Street",
+            "6690 Porttitor Avenue", "Ap #105-1700 Risus Street",
+            "P.O. Box 532, 3225 Lacus. Avenue", "736 Metus Street",
+            "414-1417 Fringilla Street", "Ap #183-928 Scelerisque Road",
+            "561-9262 Iaculis Avenue" };
+
+    private final long count;
+    private final int cityCount;
+    private final Random r;
+    private long generated = 0;
+
+    /**
+     * Creates a generator.
+     *
+     * @param count
+     *            the number of persons to generate
+     * @param cityCount
+     *            the number of cities; the persons live in cities with ids
+     *            from 0 to cityCount - 1
+     * @param seed
+     *            the seed of the random values
+     */
+    public PersonGenerator(long count, int cityCount, long seed) {
+        this.count = count;
+        this.cityCount = cityCount;
+        r = new Random(seed);
+    }
+
+    public boolean nextRow(Object[] values) {
+        if (generated >= count) {
+            return false;
+        }
+        generated++;
+        String firstName = fnames[r.nextInt(fnames.length)];
+        String lastName = lnames[r.nextInt(lnames.length)];
+        values[0] = firstName;
+        values[1] = lastName;
+        values[2] = firstName.toLowerCase() + "." + lastName.toLowerCase()
+                + "@vaadin.com";
+        values[3] = "+358 02 555 " + r.nextInt(10) + r.nextInt(10)
+                + r.nextInt(10) + r.nextInt(10);
+        values[4] = streets[r.nextInt(streets.length)];
+        int n = r.nextInt(100000);
+        if (n < 10000) {
+            n += 10000;
+        }
+        values[5] = n;
+        values[6] = r.nextInt(cityCount);
+        return true;
+    }
+}
@@ -0,0 +1,408 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * In-memory substring index over the text columns of the personaddress table,
+ * shared by all sessions. A search for <code>%term%</code> resolves to the ids
+ * of the matching persons without touching the database, which can then fetch
+ * the rows by primary key instead of scanning the table.
+ * <p>
+ * Each column has a trigram inverted index: every three character substring
+ * of a value maps to the sorted ids of the rows containing it, stored in a
+ * primitive int array. A term of three or more characters is looked up by
+ * intersecting the posting lists of its trigrams, and the candidates are
+ * verified against the stored values. Shorter terms scan the stored values.
+ * Matching is case sensitive, like the LIKE filter it replaces.
+ * <p>
+ * The index is filled from the database by {@link #load(JDBCConnectionPool)}
+ * and kept current by {@link SearchIndexedTableQuery}, which reports the rows
+ * committed through the person containers.
+ */
+public class PersonSearchIndex {
+
+    private final String[] columns;
+    private final ColumnIndex[] indexes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /*
+     * Rows put or removed while a load is reading the table, null if removed.
+     * Null when no load is running. Guarded by the write lock.
+     */
+    private Map<Integer, String[]> loadChanges;
+
+    /**
+     * Creates an empty index over the given text columns.
+     *
+     * @param columns
+     *            the columns to index
+     */
+    public PersonSearchIndex(String... columns) {
+        this.columns = columns;
+        indexes = new ColumnIndex[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = new ColumnIndex();
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with the rows of the personaddress
+     * table. The index stays searchable while the table is read. Rows put or
+     * removed meanwhile are applied again to the loaded index, as the read
+     * may have missed them.
+     *
+     * @param connectionPool
+     *            the pool to read the table with
+     * @throws SQLException
+     */
+    public synchronized void load(JDBCConnectionPool connectionPool)
+            throws SQLException {
+        StringBuffer query = new StringBuffer("SELECT ID");
+        for (String column : columns) {
+            query.append(", ").append(column);
+        }
+        query.append(" FROM PERSONADDRESS ORDER BY ID");
+        ColumnIndex[] loaded = new ColumnIndex[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            loaded[i] = new ColumnIndex();
+        }
+        lock.writeLock().lock();
+        try {
+            loadChanges = new LinkedHashMap<Integer, String[]>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            Connection conn = connectionPool.reserveConnection();
+            try {
+                Statement statement = conn.createStatement();
+                try {
+                    statement.setFetchSize(1000);
+                    ResultSet rs = statement.executeQuery(query.toString());
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        for (int i = 0; i < columns.length; i++) {
+                            loaded[i].put(id, rs.getString(i + 2));
+                        }
+                    }
+                    rs.close();
+                } finally {
+                    statement.close();
+                }
+                conn.commit();
+            } finally {
+                connectionPool.releaseConnection(conn);
+            }
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<Integer, String[]> e : loadChanges.entrySet()) {
+                    String[] values = e.getValue();
+                    for (int i = 0; i < columns.length; i++) {
+                        loaded[i].put(e.getKey(), values == null ? null
+                                : values[i]);
+                    }
+                }
+                System.arraycopy(loaded, 0, indexes, 0, loaded.length);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                loadChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given column is indexed.
+     */
+    public boolean isIndexed(Object column) {
+        return getColumnIndex(column) >= 0;
+    }
+
+    /**
+     * Returns the ids of the rows whose value of the column contains the
+     * term.
+     *
+     * @param column
+     *            the column to search
+     * @param term
+     *            the substring to look for
+     * @return the matching ids in ascending order, or null if the column is
+     *         not indexed or the term contains LIKE wildcards
+     */
+    public int[] search(Object column, String term) {
+        int c = getColumnIndex(column);
+        if (c < 0 || term.indexOf('%') >= 0 || term.indexOf('_') >= 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return indexes[c].search(term);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a row.
+     *
+     * @param id
+     *            the id of the row
+     * @param values
+     *            the values of the indexed columns, in the order given to the
+     *            constructor
+     */
+    public void put(int id, String[] values) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i].put(id, values[i]);
+            }
+            if (loadChanges != null) {
+                loadChanges.put(id, values);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a row.
+     *
+     * @param id
+     *            the id of the row
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            for (ColumnIndex index : indexes) {
+                index.put(id, null);
+            }
+            if (loadChanges != null) {
+                loadChanges.put(id, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    private int getColumnIndex(Object column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Trigram index of one column. Not thread safe.
+     */
+    private static class ColumnIndex {
+        /* Values by row id */
+        private String[] values = new String[1024];
+
+        /* Open addressing table of trigram -> posting list */
+        private long[] keys = new long[1024];
+        private int[][] postings = new int[1024][];
+        private int[] sizes = new int[1024];
+        private int trigrams = 0;
+
+        private void put(int id, String value) {
+            String old = id < values.length ? values[id] : null;
+            if (old != null) {
+                for (long trigram : getTrigrams(old)) {
+                    removePosting(trigram, id);
+                }
+            }
+            if (id >= values.length) {
+                if (value == null) {
+                    return;
+                }
+                values = Arrays.copyOf(values, Math.max(values.length * 2,
+                        id + 1));
+            }
+            values[id] = value;
+            if (value != null) {
+                for (long trigram : getTrigrams(value)) {
+                    addPosting(trigram, id);
+                }
+            }
+        }
+
+        private int[] search(String term) {
+            if (term.length() < 3) {
+                return scan(term, null, 0);
+            }
+            long[] wanted = getTrigrams(term);
+            int[] slots = new int[wanted.length];
+            for (int i = 0; i < wanted.length; i++) {
+                slots[i] = find(wanted[i]);
+                if (postings[slots[i]] == null) {
+                    return new int[0];
+                }
+            }
+            /* Intersect starting from the shortest list */
+            int shortest = 0;
+            for (int i = 1; i < slots.length; i++) {
+                if (sizes[slots[i]] < sizes[slots[shortest]]) {
+                    shortest = i;
+                }
+            }
+            int[] candidates = Arrays.copyOf(postings[slots[shortest]],
+                    sizes[slots[shortest]]);
+            int count = candidates.length;
+            for (int i = 0; i < slots.length && count > 0; i++) {
+                if (i == shortest) {
+                    continue;
+                }
+                int[] list = postings[slots[i]];
+                int size = sizes[slots[i]];
+                int kept = 0;
+                int from = 0;
+                for (int j = 0; j < count; j++) {
+                    int pos = Arrays.binarySearch(list, from, size,
+                            candidates[j]);
+                    if (pos >= 0) {
+                        candidates[kept++] = candidates[j];
+                        from = pos + 1;
+                    } else {
+                        from = -pos - 1;
+                    }
+                }
+                count = kept;
+            }
+            /* Sharing trigrams does not mean containing the term */
+            return scan(term, candidates, count);
+        }
+
+        /*
+         * Returns the ids among the candidates, or among all rows if
+         * candidates is null, whose value contains the term.
+         */
+        private int[] scan(String term, int[] candidates, int count) {
+            int n = candidates == null ? values.length : count;
+            int[] result = new int[Math.min(n, 1024)];
+            int found = 0;
+            for (int i = 0; i < n; i++) {
+                int id = candidates == null ? i : candidates[i];
+                if (values[id] != null && values[id].contains(term)) {
+                    if (found == result.length) {
+                        result = Arrays.copyOf(result, result.length * 2);
+                    }
+                    result[found++] = id;
+                }
+            }
+            return Arrays.copyOf(result, found);
+        }
+
+        private void addPosting(long trigram, int id) {
+            int slot = find(trigram);
+            int[] list = postings[slot];
+            if (list == null) {
+                keys[slot] = trigram;
+                postings[slot] = new int[] { id };
+                sizes[slot] = 1;
+                if (++trigrams * 2 > keys.length) {
+                    rehash();
+                }
+                return;
+            }
+            int size = sizes[slot];
+            /* Ids mostly arrive in ascending order */
+            int pos = size > 0 && list[size - 1] < id ? -size - 1 : Arrays
+                    .binarySearch(list, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == list.length) {
+                list = Arrays.copyOf(list, size + (size >> 1) + 1);
+                postings[slot] = list;
+            }
+            System.arraycopy(list, pos, list, pos + 1, size - pos);
+            list[pos] = id;
+            sizes[slot] = size + 1;
+        }
+
+        private void removePosting(long trigram, int id) {
+            int slot = find(trigram);
+            int[] list = postings[slot];
+            if (list == null) {
+                return;
+            }
+            int size = sizes[slot];
+            int pos = Arrays.binarySearch(list, 0, size, id);
+            if (pos >= 0) {
+                System.arraycopy(list, pos + 1, list, pos, size - pos - 1);
+                sizes[slot] = size - 1;
+            }
+        }
+
+        private int find(long trigram) {
+            int mask = keys.length - 1;
+            int slot = (int) (trigram ^ (trigram >>> 29)) * 0x9E3779B1 & mask;
+            while (postings[slot] != null && keys[slot] != trigram) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[][] oldPostings = postings;
+            int[] oldSizes = sizes;
+            keys = new long[oldKeys.length * 2];
+            postings = new int[oldKeys.length * 2][];
+            sizes = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldPostings[i] != null) {
+                    int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    postings[slot] = oldPostings[i];
+                    sizes[slot] = oldSizes[i];
+                }
+            }
+        }
+
+        /*
+         * Returns the distinct trigrams of a value, each packed as three 16
+         * bit chars.
+         */
+        private static long[] getTrigrams(String value) {
+            int n = Math.max(value.length() - 2, 0);
+            long[] trigrams = new long[n];
+            for (int i = 0; i < n; i++) {
+                trigrams[i] = ((long) value.charAt(i) << 32)
+                        | ((long) value.charAt(i + 1) << 16)
+                        | value.charAt(i + 2);
+            }
+            Arrays.sort(trigrams);
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                    trigrams[distinct++] = trigrams[i];
+                }
+            }
+            return Arrays.copyOf(trigrams, distinct);
+        }
+    }
+}
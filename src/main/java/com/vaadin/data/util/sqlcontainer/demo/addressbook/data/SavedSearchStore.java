@@ -0,0 +1,175 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Stores saved searches in the SAVED_SEARCH table so that they outlive the
+ * session. A search is either private to its owner or shared with everyone.
+ * As the demo database is in memory, the searches do not survive a restart
+ * of the web application.
+ * <p>
+ * The filters of a search are stored in a single VARBINARY column in a
+ * compact binary form written with a DataOutputStream: a format version, the
+ * number of filters and, for each filter, the property id, the term and the
+ * optional display names as modified UTF-8 strings. This is an order of
+ * magnitude smaller and faster to read than Java serialization.
+ */
+public class SavedSearchStore {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final JDBCConnectionPool connectionPool;
+
+    public SavedSearchStore(JDBCConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Saves a search.
+     *
+     * @param searchFilters
+     *            the filters of the search, all with the same search name
+     * @param owner
+     *            the user saving the search, or null
+     * @param shared
+     *            true if the search is visible to everyone
+     * @throws SQLException
+     */
+    public void save(SearchFilter[] searchFilters, String owner, boolean shared)
+            throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn
+                    .prepareStatement("INSERT INTO SAVED_SEARCH (NAME, OWNER, SHARED, FILTERS) VALUES (?, ?, ?, ?)");
+            try {
+                pstmt.setString(1, searchFilters[0].getSearchName());
+                pstmt.setString(2, owner);
+                pstmt.setBoolean(3, shared);
+                pstmt.setBytes(4, encode(searchFilters));
+                pstmt.executeUpdate();
+            } finally {
+                pstmt.close();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Loads the searches visible to a user: the shared ones and those the
+     * user owns.
+     *
+     * @param owner
+     *            the user, or null for the shared searches only
+     * @return the searches in the order they were saved
+     * @throws SQLException
+     */
+    public List<SearchFilter[]> load(String owner) throws SQLException {
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn
+                    .prepareStatement("SELECT NAME, FILTERS FROM SAVED_SEARCH WHERE SHARED = TRUE OR OWNER = ? ORDER BY ID");
+            try {
+                pstmt.setString(1, owner);
+                ResultSet rs = pstmt.executeQuery();
+                List<SearchFilter[]> searches = new ArrayList<SearchFilter[]>();
+                while (rs.next()) {
+                    searches.add(decode(rs.getBytes(2), rs.getString(1)));
+                }
+                rs.close();
+                return searches;
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Encodes the filters of a search. The search name is not included.
+     *
+     * @param searchFilters
+     *            the filters
+     * @return the encoded filters
+     */
+    public static byte[] encode(SearchFilter[] searchFilters) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeShort(searchFilters.length);
+            for (SearchFilter sf : searchFilters) {
+                out.writeUTF(sf.getPropertyId().toString());
+                out.writeUTF(sf.getTerm());
+                writeNullableUTF(out, sf.getPropertyIdDisplayName());
+                writeNullableUTF(out, sf.getTermDisplayName());
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            /* Not thrown by a ByteArrayOutputStream */
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Decodes the filters of a search.
+     *
+     * @param data
+     *            the encoded filters
+     * @param searchName
+     *            the name of the search
+     * @return the filters
+     */
+    public static SearchFilter[] decode(byte[] data, String searchName) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    data));
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                        "Unknown saved search format");
+            }
+            SearchFilter[] searchFilters = new SearchFilter[in.readShort()];
+            for (int i = 0; i < searchFilters.length; i++) {
+                String propertyId = in.readUTF();
+                String term = in.readUTF();
+                searchFilters[i] = new SearchFilter(propertyId, term,
+                        searchName, readNullableUTF(in), readNullableUTF(in));
+            }
+            return searchFilters;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated saved search", e);
+        }
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in)
+            throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -41,6 +41,24 @@ public class SearchFilter implements Serializable {
         return getSearchName();
     }
 
+    /**
+     * Search filters are equal if they search the same property for the same
+     * term, regardless of their names.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SearchFilter)) {
+            return false;
+        }
+        SearchFilter other = (SearchFilter) obj;
+        return propertyId.equals(other.propertyId) && term.equals(other.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return propertyId.hashCode() * 31 + term.hashCode();
+    }
+
     public String getPropertyIdDisplayName() {
         return propertyIdDisplayName;
     }
@@ -0,0 +1,123 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vaadin.data.Property;
+import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+import com.vaadin.data.util.sqlcontainer.TemporaryRowId;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.AdvisedTableQuery;
+import com.vaadin.data.util.sqlcontainer.demo.IndexAdvisor;
+import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
+
+/**
+ * TableQuery for the personaddress table that keeps a
+ * {@link PersonSearchIndex} current. The rows stored and removed in a
+ * transaction are buffered and applied to the index once the transaction has
+ * been committed; added rows are indexed under the ids the database gave
+ * them. A row inserted with {@link #storeRowImmediately(RowItem)}, as
+ * SQLContainer does in auto commit mode, is indexed once the insert returns
+ * its id.
+ */
+@SuppressWarnings("serial")
+public class SearchIndexedTableQuery extends AdvisedTableQuery {
+
+    private final PersonSearchIndex searchIndex;
+
+    /* Values of the rows changed in the open transaction, null if removed */
+    private final Map<RowId, String[]> changes = new LinkedHashMap<RowId, String[]>();
+    private final Map<RowId, RowId> newIds = new HashMap<RowId, RowId>();
+
+    public SearchIndexedTableQuery(String tableName,
+            JDBCConnectionPool connectionPool, IndexAdvisor indexAdvisor,
+            PersonSearchIndex searchIndex) throws SQLException {
+        super(tableName, connectionPool, indexAdvisor);
+        this.searchIndex = searchIndex;
+        addListener(new QueryDelegate.RowIdChangeListener() {
+            public void rowIdChange(QueryDelegate.RowIdChangeEvent event) {
+                newIds.put(event.getOldRowId(), event.getNewRowId());
+            }
+        });
+    }
+
+    @Override
+    public int storeRow(RowItem row) throws UnsupportedOperationException,
+            SQLException {
+        int result = super.storeRow(row);
+        changes.put(row.getId(), getValues(row));
+        return result;
+    }
+
+    @Override
+    public RowId storeRowImmediately(RowItem row) throws SQLException {
+        String[] values = getValues(row);
+        RowId newId = super.storeRowImmediately(row);
+        /* Committed, but no RowIdChangeEvent is fired for the new id */
+        if (newId != null) {
+            index(newId, values);
+        }
+        return newId;
+    }
+
+    @Override
+    public boolean removeRow(RowItem row) throws UnsupportedOperationException,
+            SQLException {
+        boolean removed = super.removeRow(row);
+        if (removed) {
+            changes.put(row.getId(), null);
+        }
+        return removed;
+    }
+
+    @Override
+    public void commit() throws UnsupportedOperationException, SQLException {
+        super.commit();
+        for (Map.Entry<RowId, String[]> change : changes.entrySet()) {
+            RowId id = change.getKey();
+            if (id instanceof TemporaryRowId) {
+                id = newIds.get(id);
+            }
+            index(id, change.getValue());
+        }
+        changes.clear();
+        newIds.clear();
+    }
+
+    /*
+     * Puts the values of a committed row to the index, or removes the row if
+     * the values are null.
+     */
+    private void index(RowId id, String[] values) {
+        if (id != null && id.getId()[0] instanceof Number) {
+            int key = ((Number) id.getId()[0]).intValue();
+            if (values == null) {
+                searchIndex.remove(key);
+            } else {
+                searchIndex.put(key, values);
+            }
+        }
+    }
+
+    @Override
+    public void rollback() throws UnsupportedOperationException, SQLException {
+        changes.clear();
+        newIds.clear();
+        super.rollback();
+    }
+
+    private String[] getValues(RowItem row) {
+        String[] columns = searchIndex.getColumns();
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Property p = row.getItemProperty(columns[i]);
+            if (p != null && p.getValue() != null) {
+                values[i] = p.getValue().toString();
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,181 @@
+package com.vaadin.data.util.sqlcontainer.demo.addressbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+
+/**
+ * Results of person searches, shared by all sessions, so that re-running a
+ * saved search does not have to query and count the persons again.
+ * <p>
+ * A result holds the number of matching persons and, for results of at most
+ * {@link #getMaxIds()} persons, their ids. Each result remembers the version
+ * of the personaddress table it was read at. The version is kept in the
+ * TABLE_VERSIONS table by triggers that also increment the VERSION column of
+ * every updated person; a result is only returned while the table version is
+ * unchanged. The version is passed in by the caller, see
+ * {@link AddressBookDatabase#getTableVersions()}.
+ */
+public class SearchResultCache {
+
+    /**
+     * Cached result of a search.
+     */
+    public static class Result {
+        private final long version;
+        private final int count;
+        private final int[] ids;
+
+        private Result(long version, int count, int[] ids) {
+            this.version = version;
+            this.count = count;
+            this.ids = ids;
+        }
+
+        /**
+         * Returns the number of matching persons.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sorted ids of the matching persons, or null if there
+         * were too many to cache.
+         */
+        public int[] getIds() {
+            return ids;
+        }
+    }
+
+    private final JDBCConnectionPool connectionPool;
+    private final Map<List<SearchFilter>, Result> results;
+    private int maxIds = 10000;
+
+    /**
+     * Creates a cache.
+     *
+     * @param connectionPool
+     *            the pool to read the ids with
+     * @param maxEntries
+     *            the number of searches to keep, the least recently used are
+     *            dropped first
+     */
+    public SearchResultCache(JDBCConnectionPool connectionPool,
+            final int maxEntries) {
+        this.connectionPool = connectionPool;
+        results = new LinkedHashMap<List<SearchFilter>, Result>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<List<SearchFilter>, Result> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a search if the table has not changed
+     * since it was cached.
+     *
+     * @param searchFilters
+     *            the search
+     * @param version
+     *            the current table version
+     * @return the result, or null
+     */
+    public synchronized Result get(SearchFilter[] searchFilters, long version) {
+        List<SearchFilter> key = Arrays.asList(searchFilters);
+        Result result = results.get(key);
+        if (result != null && result.version != version) {
+            results.remove(key);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the result of a search.
+     *
+     * @param searchFilters
+     *            the search
+     * @param version
+     *            the table version read before the search was run
+     * @param count
+     *            the number of matching persons
+     * @param ids
+     *            the ids of the matching persons, or null
+     * @return the cached result
+     */
+    public synchronized Result put(SearchFilter[] searchFilters, long version,
+            int count, int[] ids) {
+        Result result = new Result(version, count, ids);
+        results.put(new ArrayList<SearchFilter>(Arrays.asList(searchFilters)),
+                result);
+        return result;
+    }
+
+    /**
+     * Reads the ids of the persons passing a filter.
+     *
+     * @param filter
+     *            the filter
+     * @return the sorted ids, or null if there are more than
+     *         {@link #getMaxIds()}
+     * @throws SQLException
+     */
+    public int[] findIds(Filter filter) throws SQLException {
+        List<Filter> filters = new ArrayList<Filter>();
+        filters.add(filter);
+        StatementHelper sh = new StatementHelper();
+        String query = "SELECT ID FROM PERSONADDRESS"
+                + QueryBuilder.getWhereStringForFilters(filters, sh)
+                + " ORDER BY ID";
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(query);
+            try {
+                sh.setParameterValuesToStatement(pstmt);
+                pstmt.setMaxRows(maxIds + 1);
+                ResultSet rs = pstmt.executeQuery();
+                int[] ids = new int[16];
+                int n = 0;
+                while (rs.next()) {
+                    if (n == ids.length) {
+                        ids = Arrays.copyOf(ids, n * 2);
+                    }
+                    ids[n++] = rs.getInt(1);
+                }
+                rs.close();
+                return n > maxIds ? null : Arrays.copyOf(ids, n);
+            } finally {
+                pstmt.close();
+                conn.commit();
+            }
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Sets the largest number of ids cached for a search.
+     */
+    public void setMaxIds(int maxIds) {
+        this.maxIds = maxIds;
+    }
+
+    public int getMaxIds() {
+        return maxIds;
+    }
+}
@@ -1,6 +1,7 @@
 package com.vaadin.data.util.sqlcontainer.demo.addressbook.ui;
 
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.AddressBookApplication;
+import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.SearchFilter;
 import com.vaadin.event.ItemClickEvent.ItemClickListener;
 import com.vaadin.ui.Tree;
 
@@ -9,7 +10,9 @@ public class NavigationTree extends Tree {
     public static final Object SHOW_ALL = "Show all";
     public static final Object SEARCH = "Search";
 
-    public NavigationTree(AddressBookApplication app) {
+    private boolean savedSearchesLoaded = false;
+
+    public NavigationTree(final AddressBookApplication app) {
         addItem(SHOW_ALL);
         addItem(SEARCH);
 
@@ -24,5 +27,28 @@ public class NavigationTree extends Tree {
 
         // Make application handle item click events
         addListener((ItemClickListener) app);
+
+        // Load the stored searches when they are first shown
+        addListener(new ExpandListener() {
+            public void nodeExpand(ExpandEvent event) {
+                if (SEARCH.equals(event.getItemId()) && !savedSearchesLoaded) {
+                    savedSearchesLoaded = true;
+                    for (SearchFilter[] searchFilter : app.getSavedSearches()) {
+                        addSavedSearch(searchFilter);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a saved search under the Search node.
+     */
+    public void addSavedSearch(SearchFilter... searchFilter) {
+        addItem(searchFilter);
+        setItemCaption(searchFilter, searchFilter[0].getSearchName());
+        setParent(searchFilter, SEARCH);
+        // mark the saved search as a leaf (cannot have children)
+        setChildrenAllowed(searchFilter, false);
     }
 }
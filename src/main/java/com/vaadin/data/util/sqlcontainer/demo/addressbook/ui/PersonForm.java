@@ -4,7 +4,9 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
 
-import com.vaadin.data.util.sqlcontainer.RowId;
+import com.vaadin.data.util.sqlcontainer.RowItem;
+import com.vaadin.data.util.sqlcontainer.demo.AsyncCommitter;
+import com.vaadin.data.util.sqlcontainer.demo.ReferenceComboBox;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.AddressBookApplication;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
 import com.vaadin.data.util.sqlcontainer.query.QueryDelegate;
@@ -15,15 +17,16 @@ import com.vaadin.data.validator.EmailValidator;
 import com.vaadin.data.validator.RegexpValidator;
 import com.vaadin.ui.AbstractSelect;
 import com.vaadin.ui.Button;
-import com.vaadin.ui.ComboBox;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.DefaultFieldFactory;
 import com.vaadin.ui.Field;
 import com.vaadin.ui.Form;
 import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.ProgressIndicator;
 import com.vaadin.ui.TextField;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.Window.Notification;
 
 @SuppressWarnings("serial")
 public class PersonForm extends Form implements ClickListener,
@@ -32,7 +35,8 @@ public class PersonForm extends Form implements ClickListener,
     private Button save = new Button("Save", (ClickListener) this);
     private Button cancel = new Button("Cancel", (ClickListener) this);
     private Button edit = new Button("Edit", (ClickListener) this);
-    private final ComboBox cities = new ComboBox();
+    private final ReferenceComboBox cities;
+    private final ProgressIndicator savingIndicator = new ProgressIndicator();
 
     private final AddressBookApplication app;
 
@@ -52,18 +56,22 @@ public class PersonForm extends Form implements ClickListener,
         footer.addComponent(save);
         footer.addComponent(cancel);
         footer.addComponent(edit);
+        /* Polls for the result of a background commit */
+        savingIndicator.setIndeterminate(true);
+        savingIndicator.setPollingInterval(500);
+        savingIndicator.setVisible(false);
+        footer.addComponent(savingIndicator);
         footer.setVisible(false);
         setFooter(footer);
 
+        /* Cities selection, read one page at a time */
+        cities = new ReferenceComboBox(app.getDbHelp().getCityOptions());
+
         /* Allow the user to enter new cities */
         cities.setNewItemsAllowed(true);
         /* We do not want to use null values */
         cities.setNullSelectionAllowed(false);
 
-        /* Cities selection */
-        cities.setContainerDataSource(app.getDbHelp().getCityContainer());
-        cities.setItemCaptionPropertyId("NAME");
-
         cities.setImmediate(true);
 
         /* NewItemHandler to add new cities */
@@ -142,12 +150,12 @@ public class PersonForm extends Form implements ClickListener,
             List<Object> orderedProperties = Arrays
                     .asList(DatabaseHelper.NATURAL_COL_ORDER);
             super.setItemDataSource(newDataSource, orderedProperties);
-            /* Select correct city from the cities ComboBox */
-            if (newDataSource.getItemProperty("CITYID").getValue() != null) {
-                cities.select(new RowId(new Object[] { newDataSource
-                        .getItemProperty("CITYID").getValue() }));
-            } else {
-                cities.select(cities.getItemIds().iterator().next());
+            /*
+             * The cities ComboBox shows the city of the person, new persons
+             * get the first city
+             */
+            if (newDataSource.getItemProperty("CITYID").getValue() == null) {
+                cities.select(cities.getFirstOption());
             }
             setReadOnly(true);
             getFooter().setVisible(true);
@@ -182,6 +190,10 @@ public class PersonForm extends Form implements ClickListener,
     public void commit() throws Buffered.SourceException {
         /* Commit the data entered to the person form to the actual item. */
         super.commit();
+        if (app.getDbHelp().isAsyncCommit()) {
+            commitInBackground();
+            return;
+        }
         /* Commit changes to the database. */
         try {
             app.getDbHelp().getPersonContainer().commit();
@@ -191,6 +203,48 @@ public class PersonForm extends Form implements ClickListener,
         setReadOnly(true);
     }
 
+    /*
+     * Commits the person on a background thread. The form is read-only and
+     * adding contacts disabled until the person has been written, as the
+     * committer then drops every change buffered in the person container.
+     */
+    private void commitInBackground() {
+        setReadOnly(true);
+        edit.setEnabled(false);
+        app.setAddingContactsEnabled(false);
+        savingIndicator.setVisible(true);
+        try {
+            app.getDbHelp().commitPerson(app, (RowItem) getItemDataSource(),
+                    new AsyncCommitter.Callback() {
+                        public void commitSucceeded(RowIdChangeEvent rowIdChange) {
+                            savingFinished();
+                            if (rowIdChange != null) {
+                                /* Select the added person */
+                                app.rowIdChange(rowIdChange);
+                            }
+                        }
+
+                        public void commitFailed(Exception e) {
+                            savingFinished();
+                            e.printStackTrace();
+                            setReadOnly(false);
+                            app.getMainWindow().showNotification(
+                                    "Saving failed", e.getMessage(),
+                                    Notification.TYPE_ERROR_MESSAGE);
+                        }
+                    });
+        } catch (SQLException e) {
+            savingFinished();
+            e.printStackTrace();
+        }
+    }
+
+    private void savingFinished() {
+        edit.setEnabled(true);
+        app.setAddingContactsEnabled(true);
+        savingIndicator.setVisible(false);
+    }
+
     @Override
     public void discard() throws Buffered.SourceException {
         super.discard();
@@ -210,8 +264,8 @@ public class PersonForm extends Form implements ClickListener,
      * source
      */
     public void rowIdChange(RowIdChangeEvent event) {
-        cities.setValue(event.getNewRowId());
-        getItemDataSource().getItemProperty("CITYID").setValue(
-                event.getNewRowId().getId()[0]);
+        Object cityId = event.getNewRowId().getId()[0];
+        cities.setValue(cityId);
+        getItemDataSource().getItemProperty("CITYID").setValue(cityId);
     }
 }
\ No newline at end of file
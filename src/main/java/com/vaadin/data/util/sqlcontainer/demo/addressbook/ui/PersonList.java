@@ -1,10 +1,12 @@
 package com.vaadin.data.util.sqlcontainer.demo.addressbook.ui;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.AddressBookApplication;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
 import com.vaadin.terminal.ExternalResource;
 import com.vaadin.ui.Component;
-import com.vaadin.ui.Label;
 import com.vaadin.ui.Link;
 import com.vaadin.ui.Table;
 
@@ -56,19 +58,25 @@ public class PersonList extends Table {
         });
 
         /*
-         * Create a cityName column that fetches the city name from another
-         * SQLContainer through the DatabaseHelper.
+         * Create a cityName column that fetches the city name from the city
+         * name cache through the DatabaseHelper. When a name is missing, the
+         * names of all the rows that are about to be rendered are fetched with
+         * one query.
          */
         addGeneratedColumn("CITYID", new ColumnGenerator() {
-            public Component generateCell(Table source, Object itemId,
+            public Object generateCell(Table source, Object itemId,
                     Object columnId) {
-                if (getItem(itemId).getItemProperty("CITYID").getValue() != null) {
-                    Label l = new Label();
-                    int cityId = (Integer) getItem(itemId).getItemProperty(
-                            "CITYID").getValue();
-                    l.setValue(app.getDbHelp().getCityName(cityId));
-                    l.setSizeUndefined();
-                    return l;
+                Object cityId = getItem(itemId).getItemProperty("CITYID")
+                        .getValue();
+                if (cityId != null) {
+                    String name = app.getDbHelp().getCachedCityName(
+                            (Integer) cityId);
+                    if (name == null) {
+                        app.getDbHelp().prefetchCityNames(
+                                getRenderedCityIds(itemId));
+                        name = app.getDbHelp().getCityName((Integer) cityId);
+                    }
+                    return name;
                 }
                 return null;
             }
@@ -79,6 +87,26 @@ public class PersonList extends Table {
         setColumnHeaders(DatabaseHelper.COL_HEADERS_ENGLISH);
     }
 
+    /**
+     * Collects the city ids of the rows rendered together with the given row.
+     * The rows are read from the container cache that was filled when the
+     * page was loaded.
+     */
+    private List<Integer> getRenderedCityIds(Object firstItemId) {
+        List<Integer> cityIds = new ArrayList<Integer>();
+        int rows = (int) (getPageLength() * (1 + 2 * getCacheRate()));
+        Object itemId = firstItemId;
+        for (int i = 0; i < rows && itemId != null; i++) {
+            Object cityId = getItem(itemId).getItemProperty("CITYID")
+                    .getValue();
+            if (cityId instanceof Integer) {
+                cityIds.add((Integer) cityId);
+            }
+            itemId = nextItemId(itemId);
+        }
+        return cityIds;
+    }
+
     /**
      * Checks that selection is not null and that the selection actually exists
      * in the container. If no valid selection is made, the first item will be
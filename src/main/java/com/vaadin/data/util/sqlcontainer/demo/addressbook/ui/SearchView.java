@@ -3,7 +3,6 @@ package com.vaadin.data.util.sqlcontainer.demo.addressbook.ui;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.vaadin.data.util.sqlcontainer.SQLContainer;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.AddressBookApplication;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.DatabaseHelper;
 import com.vaadin.data.util.sqlcontainer.demo.addressbook.data.SearchFilter;
@@ -23,6 +22,7 @@ public class SearchView extends Panel {
     private TextField tf;
     private NativeSelect fieldToSearch;
     private CheckBox saveSearch;
+    private CheckBox shareSearch;
     private TextField searchName;
     private AddressBookApplication app;
 
@@ -43,6 +43,8 @@ public class SearchView extends Panel {
         saveSearch = new CheckBox("Save search");
         searchName = new TextField("Search name");
         searchName.setVisible(false);
+        shareSearch = new CheckBox("Share with team");
+        shareSearch.setVisible(false);
         Button search = new Button("Search");
 
         /* Initialize fieldToSearch */
@@ -63,6 +65,7 @@ public class SearchView extends Panel {
         saveSearch.addListener(new ClickListener() {
             public void buttonClick(ClickEvent event) {
                 searchName.setVisible(event.getButton().booleanValue());
+                shareSearch.setVisible(event.getButton().booleanValue());
             }
         });
 
@@ -78,6 +81,7 @@ public class SearchView extends Panel {
         addComponent(fieldToSearch);
         addComponent(saveSearch);
         addComponent(searchName);
+        addComponent(shareSearch);
         addComponent(search);
 
         /* Focus the search term field. */
@@ -91,47 +95,14 @@ public class SearchView extends Panel {
                     Notification.TYPE_WARNING_MESSAGE);
             return;
         }
+        /*
+         * A city search is a single filter too: the person container resolves
+         * the matching cities in a subquery of the same statement.
+         */
         List<SearchFilter> searchFilters = new ArrayList<SearchFilter>();
-
-        if (!"CITYID".equals(fieldToSearch.getValue())) {
-            /* If this is NOT a City search, one filter is enough. */
-            searchFilters.add(new SearchFilter(fieldToSearch.getValue(),
-                    searchTerm, (String) searchName.getValue(), fieldToSearch
-                            .getItemCaption(fieldToSearch.getValue()),
-                    searchTerm));
-        } else {
-            SQLContainer cc = app.getDbHelp().getCityContainer();
-            /*
-             * If the city column is searched, the filtering becomes a bit more
-             * complicated: We need to first find all the search hits from the
-             * city container, create search filters for all their ID's and
-             * finally use these filters to search the person container (which
-             * only holds a foreign key reference to an id of a city).
-             */
-            cc.addContainerFilter("NAME", searchTerm, true, false);
-            for (Object cityItemId : cc.getItemIds()) {
-                searchFilters.add(new SearchFilter("CITYID",
-                        cc.getItem(cityItemId).getItemProperty("ID").getValue()
-                                .toString(), (String) searchName.getValue(),
-                        fieldToSearch.getItemCaption(fieldToSearch.getValue()),
-                        searchTerm));
-            }
-            cc.removeAllContainerFilters();
-            /*
-             * If the search does not find any matched in the cities container,
-             * we show a notification at this point. It would not make sense to
-             * continue since obviously there will be no results from the person
-             * container.
-             */
-            if (searchFilters.isEmpty()) {
-                getWindow().showNotification(
-                        "No matches found for \'"
-                                + searchTerm
-                                + "\' in "
-                                + fieldToSearch.getItemCaption(fieldToSearch
-                                        .getValue()));
-            }
-        }
+        searchFilters.add(new SearchFilter(fieldToSearch.getValue(),
+                searchTerm, (String) searchName.getValue(), fieldToSearch
+                        .getItemCaption(fieldToSearch.getValue()), searchTerm));
 
         /* If Save is checked, save the search through the main app. */
         if (saveSearch.booleanValue()) {
@@ -143,10 +114,14 @@ public class SearchView extends Panel {
                 return;
             }
             SearchFilter[] sf = {};
-            app.saveSearch(searchFilters.toArray(sf));
+            app.saveSearch(shareSearch.booleanValue(),
+                    searchFilters.toArray(sf));
+            /* Cache the result for the next run of the saved search */
+            app.searchSaved(searchFilters.toArray(sf));
+        } else {
+            SearchFilter[] sf = {};
+            app.search(searchFilters.toArray(sf));
         }
-        SearchFilter[] sf = {};
-        app.search(searchFilters.toArray(sf));
 
         /*
          * Clear the save name and check box to prevent multiple unintentional
@@ -158,5 +133,6 @@ public class SearchView extends Panel {
     private void clearSaving() {
         searchName.setValue("");
         saveSearch.setValue(false);
+        shareSearch.setValue(false);
     }
 }
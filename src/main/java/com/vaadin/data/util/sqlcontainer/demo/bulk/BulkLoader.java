@@ -0,0 +1,196 @@
+package com.vaadin.data.util.sqlcontainer.demo.bulk;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Streams rows from a {@link RowSource} into a database table with batched
+ * <code>INSERT</code> statements. Unlike adding items to an SQLContainer, only
+ * the current row is kept in memory, so the loader can be used to load
+ * millions of rows.
+ * <p>
+ * Rows are sent to the database in batches of {@link #getBatchSize()} rows and
+ * the transaction is committed every {@link #getCommitInterval()} rows and
+ * after the last row. If loading fails, the rows since the last commit are
+ * rolled back.
+ */
+@SuppressWarnings("serial")
+public class BulkLoader implements Serializable {
+
+    /**
+     * Listener notified of the progress of a load.
+     */
+    public interface ProgressListener extends Serializable {
+        /**
+         * Called after each commit.
+         *
+         * @param rowsLoaded
+         *            the number of rows committed so far
+         */
+        public void progress(long rowsLoaded);
+    }
+
+    private final JDBCConnectionPool connectionPool;
+    private final String tableName;
+    private final String[] columns;
+
+    private int batchSize = 1000;
+    private int commitInterval = 10000;
+    private ProgressListener progressListener;
+
+    /**
+     * Creates a loader for the given table.
+     *
+     * @param connectionPool
+     *            the pool to take the connection from
+     * @param tableName
+     *            the table to insert the rows to
+     * @param columns
+     *            the columns the values of the rows are written to
+     */
+    public BulkLoader(JDBCConnectionPool connectionPool, String tableName,
+            String... columns) {
+        if (connectionPool == null) {
+            throw new IllegalArgumentException(
+                    "The connection pool may not be null!");
+        }
+        if (tableName == null || columns == null || columns.length == 0) {
+            throw new IllegalArgumentException(
+                    "The table name and columns must be given!");
+        }
+        this.connectionPool = connectionPool;
+        this.tableName = tableName;
+        this.columns = columns;
+    }
+
+    /**
+     * Loads all the rows of the given source.
+     *
+     * @param source
+     *            the rows to load
+     * @return the number of rows loaded
+     * @throws SQLException
+     *             if writing the rows failed
+     * @throws IOException
+     *             if reading the rows failed
+     */
+    public long load(RowSource source) throws SQLException, IOException {
+        Object[] values = new Object[columns.length];
+        long rows = 0;
+        Connection conn = connectionPool.reserveConnection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(getInsertQuery());
+            try {
+                while (source.nextRow(values)) {
+                    for (int i = 0; i < values.length; i++) {
+                        pstmt.setObject(i + 1, values[i]);
+                    }
+                    pstmt.addBatch();
+                    rows++;
+                    if (rows % batchSize == 0) {
+                        pstmt.executeBatch();
+                    }
+                    if (rows % commitInterval == 0) {
+                        if (rows % batchSize != 0) {
+                            pstmt.executeBatch();
+                        }
+                        conn.commit();
+                        fireProgress(rows);
+                    }
+                }
+                if (rows % commitInterval != 0) {
+                    if (rows % batchSize != 0) {
+                        pstmt.executeBatch();
+                    }
+                    conn.commit();
+                    fireProgress(rows);
+                }
+            } finally {
+                pstmt.close();
+            }
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        } catch (IOException e) {
+            rollback(conn);
+            throw e;
+        } catch (RuntimeException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            connectionPool.releaseConnection(conn);
+        }
+        return rows;
+    }
+
+    private String getInsertQuery() {
+        StringBuffer query = new StringBuffer("INSERT INTO ");
+        query.append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        query.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(")");
+        return query.toString();
+    }
+
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            // The original exception is more interesting
+        }
+    }
+
+    private void fireProgress(long rows) {
+        if (progressListener != null) {
+            progressListener.progress(rows);
+        }
+    }
+
+    /**
+     * Sets the number of rows sent to the database in one batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "The batch size must be at least one.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows written in one transaction.
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException(
+                    "The commit interval must be at least one.");
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+}
@@ -0,0 +1,111 @@
+package com.vaadin.data.util.sqlcontainer.demo.bulk;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * RowSource reading comma separated values. Fields may be enclosed in double
+ * quotes, in which case they may contain commas, line breaks and doubled
+ * quotes. Empty unquoted fields are read as null, all other fields as
+ * strings. Missing trailing fields are set to null and extra fields are
+ * ignored.
+ */
+public class CsvRowSource implements RowSource, Closeable {
+
+    private final BufferedReader reader;
+    private final char separator;
+    private final StringBuilder field = new StringBuilder();
+
+    public CsvRowSource(Reader reader) {
+        this(reader, ',');
+    }
+
+    /**
+     * Creates a CSV row source.
+     *
+     * @param reader
+     *            the reader to read the rows from
+     * @param separator
+     *            the field separator
+     */
+    public CsvRowSource(Reader reader, char separator) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+                : new BufferedReader(reader);
+        this.separator = separator;
+    }
+
+    /**
+     * Skips the next line, e.g. a header row.
+     *
+     * @return true if a line was skipped
+     * @throws IOException
+     */
+    public boolean skipLine() throws IOException {
+        return reader.readLine() != null;
+    }
+
+    public boolean nextRow(Object[] values) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        int column = 0;
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        field.setLength(0);
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field");
+                } else if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == separator) {
+                setValue(values, column++, wasQuoted);
+                wasQuoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                setValue(values, column++, wasQuoted);
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        for (; column < values.length; column++) {
+            values[column] = null;
+        }
+        return true;
+    }
+
+    private void setValue(Object[] values, int column, boolean wasQuoted) {
+        if (column < values.length) {
+            values[column] = field.length() == 0 && !wasQuoted ? null : field
+                    .toString();
+        }
+        field.setLength(0);
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,23 @@
+package com.vaadin.data.util.sqlcontainer.demo.bulk;
+
+import java.io.IOException;
+
+/**
+ * Source of rows for the {@link BulkLoader}. Rows are read one at a time into
+ * an array owned by the loader, so a source never has to hold more than the
+ * current row.
+ */
+public interface RowSource {
+
+    /**
+     * Reads the next row.
+     *
+     * @param values
+     *            array to fill with the column values of the row, in the
+     *            column order of the loader
+     * @return true if a row was read, false if there are no more rows
+     * @throws IOException
+     *             if reading the row failed
+     */
+    public boolean nextRow(Object[] values) throws IOException;
+}
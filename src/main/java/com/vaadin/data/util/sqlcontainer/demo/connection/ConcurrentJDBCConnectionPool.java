@@ -0,0 +1,508 @@
+package com.vaadin.data.util.sqlcontainer.demo.connection;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * JDBCConnectionPool for high concurrency. Unlike SimpleJDBCConnectionPool it
+ * does not serialize on a monitor: idle connections are kept in a lock-free
+ * deque and the number of reserved connections is bounded by a semaphore, so
+ * that a thread finding the pool exhausted waits up to a configurable time
+ * instead of failing at once.
+ * <p>
+ * Connections are validated when reserved, idle connections above the initial
+ * count are closed after a configurable idle time, and connections held longer
+ * than the leak detection threshold are logged together with the stack trace
+ * of the code that reserved them. Pool statistics can be exported over JMX
+ * with {@link #registerMBean(String)}. Listeners are told of every connection
+ * the pool closes.
+ */
+@SuppressWarnings("serial")
+public class ConcurrentJDBCConnectionPool implements JDBCConnectionPool,
+        ConnectionPoolMXBean, ConnectionCloseNotifier {
+
+    private int initialConnections = 5;
+    private int maxConnections = 20;
+
+    private String driverName;
+    private String connectionUri;
+    private String userName;
+    private String password;
+
+    private long maxWaitMillis = 30000;
+    private long idleTimeoutMillis = 10 * 60 * 1000;
+    private long leakThresholdMillis = 60 * 1000;
+    private int validationTimeoutSeconds = 2;
+    private boolean validateOnReserve = true;
+
+    private transient ConcurrentLinkedDeque<PooledConnection> idleConnections;
+    private transient Map<Connection, PooledConnection> reservedConnections;
+    private transient Semaphore permits;
+    private transient ScheduledExecutorService housekeeper;
+    private transient ObjectName mbeanName;
+
+    private volatile boolean initialized;
+
+    private final List<ConnectionCloseListener> closeListeners = new CopyOnWriteArrayList<ConnectionCloseListener>();
+
+    /* Statistics */
+    private final AtomicLong reserveCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class PooledConnection {
+        private final Connection connection;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long reservedAt;
+        private volatile Throwable reservedBy;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    public ConcurrentJDBCConnectionPool(String driverName,
+            String connectionUri, String userName, String password)
+            throws SQLException {
+        if (driverName == null) {
+            throw new IllegalArgumentException(
+                    "JDBC driver class name must be given.");
+        }
+        if (connectionUri == null) {
+            throw new IllegalArgumentException(
+                    "Database connection URI must be given.");
+        }
+        if (userName == null) {
+            throw new IllegalArgumentException(
+                    "Database username must be given.");
+        }
+        if (password == null) {
+            throw new IllegalArgumentException(
+                    "Database password must be given.");
+        }
+        this.driverName = driverName;
+        this.connectionUri = connectionUri;
+        this.userName = userName;
+        this.password = password;
+
+        /* Initialize JDBC driver */
+        try {
+            Class.forName(driverName);
+        } catch (Exception ex) {
+            throw new RuntimeException("Specified JDBC Driver: " + driverName
+                    + " - initialization failed.", ex);
+        }
+    }
+
+    public ConcurrentJDBCConnectionPool(String driverName,
+            String connectionUri, String userName, String password,
+            int initialConnections, int maxConnections) throws SQLException {
+        this(driverName, connectionUri, userName, password);
+        if (initialConnections < 0 || maxConnections < 1
+                || initialConnections > maxConnections) {
+            throw new IllegalArgumentException(
+                    "Invalid initial or maximum connection count.");
+        }
+        this.initialConnections = initialConnections;
+        this.maxConnections = maxConnections;
+    }
+
+    private synchronized void initializeConnections() throws SQLException {
+        if (initialized) {
+            return;
+        }
+        idleConnections = new ConcurrentLinkedDeque<PooledConnection>();
+        reservedConnections = new ConcurrentHashMap<Connection, PooledConnection>();
+        permits = new Semaphore(maxConnections, true);
+        for (int i = 0; i < initialConnections; i++) {
+            idleConnections.add(new PooledConnection(createConnection()));
+        }
+        housekeeper = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ConnectionPool housekeeper");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        long period = Math.max(1000,
+                Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdleConnections();
+                detectLeaks();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        initialized = true;
+    }
+
+    public Connection reserveConnection() throws SQLException {
+        if (!initialized) {
+            initializeConnections();
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + maxWaitMillis
+                        + " ms waiting for a connection, all "
+                        + maxConnections + " connections are reserved.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.",
+                    e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        PooledConnection pc;
+        try {
+            pc = takeIdleConnection();
+            if (pc == null) {
+                pc = new PooledConnection(createConnection());
+            }
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        pc.reservedAt = System.currentTimeMillis();
+        pc.leakReported = false;
+        pc.reservedBy = leakThresholdMillis > 0 ? new Throwable(
+                "Connection reserved by " + Thread.currentThread().getName())
+                : null;
+        reservedConnections.put(pc.connection, pc);
+        return pc.connection;
+    }
+
+    /**
+     * Takes the most recently used idle connection that passes validation.
+     */
+    private PooledConnection takeIdleConnection() {
+        PooledConnection pc;
+        while ((pc = idleConnections.pollFirst()) != null) {
+            if (!validateOnReserve || isValid(pc.connection)) {
+                return pc;
+            }
+            evictions.incrementAndGet();
+            close(pc.connection);
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public void releaseConnection(Connection conn) {
+        if (conn == null || !initialized) {
+            return;
+        }
+        PooledConnection pc = reservedConnections.remove(conn);
+        if (pc == null) {
+            /* Not reserved from this pool, or already released */
+            return;
+        }
+        try {
+            /* Try to roll back if necessary */
+            try {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                /* Roll back failed, close and discard connection */
+                close(conn);
+                return;
+            }
+            pc.reservedBy = null;
+            pc.lastUsed = System.currentTimeMillis();
+            idleConnections.offerFirst(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Connection createConnection() throws SQLException {
+        Connection c = DriverManager.getConnection(connectionUri, userName,
+                password);
+        c.setAutoCommit(false);
+        if (driverName.toLowerCase().contains("mysql")) {
+            try {
+                Statement s = c.createStatement();
+                s.execute("SET SESSION sql_mode = 'ANSI'");
+                s.close();
+            } catch (Exception e) {
+                // Failed to set ansi mode; continue
+            }
+        }
+        return c;
+    }
+
+    private void recordWait(long nanos) {
+        reserveCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get())
+                && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // Retry until the maximum is updated or is larger
+        }
+    }
+
+    /**
+     * Closes the connections that have been idle longer than the idle
+     * timeout, keeping at least the initial number of connections open.
+     */
+    private void evictIdleConnections() {
+        long limit = System.currentTimeMillis() - idleTimeoutMillis;
+        for (PooledConnection pc : idleConnections) {
+            if (idleConnections.size() <= initialConnections) {
+                return;
+            }
+            if (pc.lastUsed < limit && idleConnections.remove(pc)) {
+                evictions.incrementAndGet();
+                close(pc.connection);
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - leakThresholdMillis;
+        for (PooledConnection pc : reservedConnections.values()) {
+            Throwable reservedBy = pc.reservedBy;
+            if (pc.reservedAt < limit && !pc.leakReported
+                    && reservedBy != null) {
+                pc.leakReported = true;
+                leaksDetected.incrementAndGet();
+                getLogger().log(
+                        Level.WARNING,
+                        "Connection held for more than " + leakThresholdMillis
+                                + " ms, possible leak", reservedBy);
+            }
+        }
+    }
+
+    public void destroy() {
+        if (!initialized) {
+            return;
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pc : idleConnections) {
+            close(pc.connection);
+        }
+        idleConnections.clear();
+        for (Connection c : reservedConnections.keySet()) {
+            close(c);
+        }
+        reservedConnections.clear();
+        unregisterMBean();
+        initialized = false;
+    }
+
+    private void close(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException e) {
+            // No need to do anything
+        }
+        for (ConnectionCloseListener listener : closeListeners) {
+            listener.connectionClosed(c);
+        }
+    }
+
+    public void addListener(ConnectionCloseListener listener) {
+        closeListeners.add(listener);
+    }
+
+    public void removeListener(ConnectionCloseListener listener) {
+        closeListeners.remove(listener);
+    }
+
+    /**
+     * Registers the statistics of this pool to the platform MBean server. A
+     * pool previously registered with the same name is replaced.
+     *
+     * @param name
+     *            the name of the pool in the MBean object name
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            unregisterMBean();
+            ObjectName objectName = new ObjectName(
+                    "com.vaadin.data.util.sqlcontainer.demo:type=ConnectionPool,name="
+                            + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not register the connection pool MBean", e);
+        }
+    }
+
+    private synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName)) {
+                server.unregisterMBean(mbeanName);
+            }
+        } catch (JMException e) {
+            getLogger().log(Level.FINE,
+                    "Could not unregister the connection pool MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    public int getActiveConnections() {
+        return initialized ? reservedConnections.size() : 0;
+    }
+
+    public int getIdleConnections() {
+        return initialized ? idleConnections.size() : 0;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getWaitingThreads() {
+        return initialized ? permits.getQueueLength() : 0;
+    }
+
+    public long getReserveCount() {
+        return reserveCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = reserveCount.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1000000.0 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Sets how long a reservation waits for a connection when all connections
+     * are reserved.
+     *
+     * @param maxWaitMillis
+     *            the maximum wait time in milliseconds
+     */
+    public void setMaxWait(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getMaxWait() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Sets the time after which idle connections above the initial connection
+     * count are closed. Takes effect when the pool is initialized.
+     *
+     * @param idleTimeoutMillis
+     *            the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets the time after which a reserved connection is reported as a
+     * possible leak. Takes effect when the pool is initialized.
+     *
+     * @param leakThresholdMillis
+     *            the threshold in milliseconds, 0 to disable leak detection
+     */
+    public void setLeakThreshold(long leakThresholdMillis) {
+        this.leakThresholdMillis = leakThresholdMillis;
+    }
+
+    public long getLeakThreshold() {
+        return leakThresholdMillis;
+    }
+
+    /**
+     * Sets whether idle connections are validated before they are handed
+     * out.
+     *
+     * @param validateOnReserve
+     *            true to validate connections when reserved
+     */
+    public void setValidateOnReserve(boolean validateOnReserve) {
+        this.validateOnReserve = validateOnReserve;
+    }
+
+    public boolean isValidateOnReserve() {
+        return validateOnReserve;
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        boolean wasInitialized = initialized;
+        initialized = false;
+        out.defaultWriteObject();
+        initialized = wasInitialized;
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(ConcurrentJDBCConnectionPool.class.getName());
+    }
+}
@@ -0,0 +1,29 @@
+package com.vaadin.data.util.sqlcontainer.demo.connection;
+
+import java.io.Serializable;
+import java.sql.Connection;
+
+/**
+ * Implemented by connection pools that tell when they close one of their
+ * connections, e.g. one that failed validation or has been idle too long, so
+ * that pool decorators can release what they keep per connection.
+ */
+public interface ConnectionCloseNotifier {
+
+    /**
+     * Receives the connections closed by a pool.
+     */
+    public interface ConnectionCloseListener extends Serializable {
+        /**
+         * Called after the pool has closed a connection.
+         *
+         * @param conn
+         *            the closed connection
+         */
+        public void connectionClosed(Connection conn);
+    }
+
+    public void addListener(ConnectionCloseListener listener);
+
+    public void removeListener(ConnectionCloseListener listener);
+}
@@ -0,0 +1,57 @@
+package com.vaadin.data.util.sqlcontainer.demo.connection;
+
+/**
+ * Management interface of {@link ConcurrentJDBCConnectionPool}, exported
+ * over JMX.
+ */
+public interface ConnectionPoolMXBean {
+
+    /**
+     * @return the number of connections currently reserved
+     */
+    public int getActiveConnections();
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdleConnections();
+
+    public int getMaxConnections();
+
+    /**
+     * @return the number of threads waiting for a connection
+     */
+    public int getWaitingThreads();
+
+    /**
+     * @return the number of connections handed out since the pool was created
+     */
+    public long getReserveCount();
+
+    /**
+     * @return the average time in milliseconds spent waiting for a connection
+     */
+    public double getAverageWaitMillis();
+
+    /**
+     * @return the longest time in milliseconds spent waiting for a connection
+     */
+    public double getMaxWaitMillis();
+
+    /**
+     * @return the number of reservations that timed out
+     */
+    public long getTimeouts();
+
+    /**
+     * @return the number of connections found held longer than the leak
+     *         detection threshold
+     */
+    public long getLeaksDetected();
+
+    /**
+     * @return the number of idle connections closed by idle eviction or failed
+     *         validation
+     */
+    public long getEvictions();
+}
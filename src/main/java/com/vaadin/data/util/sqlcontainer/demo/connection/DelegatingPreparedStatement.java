@@ -0,0 +1,359 @@
+package com.vaadin.data.util.sqlcontainer.demo.connection;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * PreparedStatement that delegates every call to the statement it wraps.
+ * Subclasses override the calls they intercept, and are told of the
+ * parameters set through {@link #parameterSet(int, Object)}.
+ */
+public class DelegatingPreparedStatement extends
+        DelegatingStatement<PreparedStatement> implements PreparedStatement {
+
+    protected DelegatingPreparedStatement(PreparedStatement statement) {
+        super(statement);
+    }
+
+    public ResultSet executeQuery() throws SQLException {
+        return statement.executeQuery();
+    }
+
+    public int executeUpdate() throws SQLException {
+        return statement.executeUpdate();
+    }
+
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        statement.setNull(parameterIndex, sqlType);
+        parameterSet(parameterIndex, null);
+    }
+
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        statement.setBoolean(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        statement.setByte(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        statement.setShort(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        statement.setInt(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        statement.setLong(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        statement.setFloat(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        statement.setDouble(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBigDecimal(int parameterIndex, BigDecimal x)
+            throws SQLException {
+        statement.setBigDecimal(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setString(int parameterIndex, String x) throws SQLException {
+        statement.setString(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        statement.setBytes(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        statement.setDate(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        statement.setTime(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setTimestamp(int parameterIndex, Timestamp x)
+            throws SQLException {
+        statement.setTimestamp(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x, int length)
+            throws SQLException {
+        statement.setAsciiStream(parameterIndex, x, length);
+        parameterSet(parameterIndex, x);
+    }
+
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+            throws SQLException {
+        statement.setUnicodeStream(parameterIndex, x, length);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x, int length)
+            throws SQLException {
+        statement.setBinaryStream(parameterIndex, x, length);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void clearParameters() throws SQLException {
+        statement.clearParameters();
+    }
+
+    public void setObject(int parameterIndex, Object x, int targetSqlType)
+            throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        statement.setObject(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public boolean execute() throws SQLException {
+        return statement.execute();
+    }
+
+    public void addBatch() throws SQLException {
+        statement.addBatch();
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader reader,
+            int length) throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader, length);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        statement.setRef(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        statement.setBlob(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        statement.setClob(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        statement.setArray(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return statement.getMetaData();
+    }
+
+    public void setDate(int parameterIndex, Date x, Calendar cal)
+            throws SQLException {
+        statement.setDate(parameterIndex, x, cal);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setTime(int parameterIndex, Time x, Calendar cal)
+            throws SQLException {
+        statement.setTime(parameterIndex, x, cal);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
+            throws SQLException {
+        statement.setTimestamp(parameterIndex, x, cal);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setNull(int parameterIndex, int sqlType, String typeName)
+            throws SQLException {
+        statement.setNull(parameterIndex, sqlType, typeName);
+        parameterSet(parameterIndex, null);
+    }
+
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        statement.setURL(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return statement.getParameterMetaData();
+    }
+
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        statement.setRowId(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setNString(int parameterIndex, String value)
+            throws SQLException {
+        statement.setNString(parameterIndex, value);
+        parameterSet(parameterIndex, value);
+    }
+
+    public void setNCharacterStream(int parameterIndex, Reader value,
+            long length) throws SQLException {
+        statement.setNCharacterStream(parameterIndex, value, length);
+        parameterSet(parameterIndex, value);
+    }
+
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        statement.setNClob(parameterIndex, value);
+        parameterSet(parameterIndex, value);
+    }
+
+    public void setClob(int parameterIndex, Reader reader, long length)
+            throws SQLException {
+        statement.setClob(parameterIndex, reader, length);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setBlob(int parameterIndex, InputStream inputStream,
+            long length) throws SQLException {
+        statement.setBlob(parameterIndex, inputStream, length);
+        parameterSet(parameterIndex, inputStream);
+    }
+
+    public void setNClob(int parameterIndex, Reader reader, long length)
+            throws SQLException {
+        statement.setNClob(parameterIndex, reader, length);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject)
+            throws SQLException {
+        statement.setSQLXML(parameterIndex, xmlObject);
+        parameterSet(parameterIndex, xmlObject);
+    }
+
+    public void setObject(int parameterIndex, Object x, int targetSqlType,
+            int scaleOrLength) throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x, long length)
+            throws SQLException {
+        statement.setAsciiStream(parameterIndex, x, length);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x, long length)
+            throws SQLException {
+        statement.setBinaryStream(parameterIndex, x, length);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader reader,
+            long length) throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader, length);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setAsciiStream(int parameterIndex, InputStream x)
+            throws SQLException {
+        statement.setAsciiStream(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setBinaryStream(int parameterIndex, InputStream x)
+            throws SQLException {
+        statement.setBinaryStream(parameterIndex, x);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader reader)
+            throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setNCharacterStream(int parameterIndex, Reader value)
+            throws SQLException {
+        statement.setNCharacterStream(parameterIndex, value);
+        parameterSet(parameterIndex, value);
+    }
+
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        statement.setClob(parameterIndex, reader);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setBlob(int parameterIndex, InputStream inputStream)
+            throws SQLException {
+        statement.setBlob(parameterIndex, inputStream);
+        parameterSet(parameterIndex, inputStream);
+    }
+
+    public void setNClob(int parameterIndex, Reader reader)
+            throws SQLException {
+        statement.setNClob(parameterIndex, reader);
+        parameterSet(parameterIndex, reader);
+    }
+
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType,
+            int scaleOrLength) throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        parameterSet(parameterIndex, x);
+    }
+
+    public void setObject(int parameterIndex, Object x, SQLType targetSqlType)
+            throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType);
+        parameterSet(parameterIndex, x);
+    }
+
+    public long executeLargeUpdate() throws SQLException {
+        return statement.executeLargeUpdate();
+    }
+
+    /**
+     * Called after a parameter has been set. Does nothing by default.
+     *
+     * @param parameterIndex
+     *            the index of the parameter, the first is 1
+     * @param x
+     *            the value set, or null if the parameter was set to null
+     */
+    protected void parameterSet(int parameterIndex, Object x) {
+    }
+}
@@ -0,0 +1,404 @@
+package com.vaadin.data.util.sqlcontainer.demo.connection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.connection.ConnectionCloseNotifier.ConnectionCloseListener;
+
+/**
+ * JDBCConnectionPool decorator that caches prepared statements per pooled
+ * connection. The connections handed out by the wrapped pool are wrapped so
+ * that <code>prepareStatement</code> returns a cached statement for SQL that
+ * has already been prepared on the same connection, and <code>close()</code>
+ * returns the statement to the cache instead of closing it. Each connection
+ * keeps at most <code>cacheSize</code> statements and evicts the least
+ * recently used one when the cache is full. Statements that are not in use
+ * are evicted first; a statement evicted while in use is closed when it is
+ * released.
+ * <p>
+ * The cache of a connection is dropped when the wrapped pool closes the
+ * connection: right away if the pool is a {@link ConnectionCloseNotifier},
+ * otherwise when the pool hands out a connection not seen before, which is
+ * when the closed connections of other pools are replaced.
+ */
+@SuppressWarnings("serial")
+public class StatementCachingConnectionPool implements JDBCConnectionPool {
+
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    private final JDBCConnectionPool pool;
+    private final int cacheSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /* The caching wrappers of the open connections of the wrapped pool */
+    private transient Map<Connection, CachingConnection> connections;
+    private final boolean notified;
+
+    public StatementCachingConnectionPool(JDBCConnectionPool pool) {
+        this(pool, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a statement caching pool.
+     *
+     * @param pool
+     *            the pool that provides the connections
+     * @param cacheSize
+     *            the maximum number of statements cached per connection
+     */
+    public StatementCachingConnectionPool(JDBCConnectionPool pool,
+            int cacheSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool may not be null!");
+        }
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException(
+                    "The cache size must be at least one.");
+        }
+        this.pool = pool;
+        this.cacheSize = cacheSize;
+        notified = pool instanceof ConnectionCloseNotifier;
+        if (notified) {
+            ((ConnectionCloseNotifier) pool)
+                    .addListener(new ConnectionCloseListener() {
+                        public void connectionClosed(Connection conn) {
+                            dropCache(conn);
+                        }
+                    });
+        }
+    }
+
+    public Connection reserveConnection() throws SQLException {
+        Connection conn = pool.reserveConnection();
+        synchronized (this) {
+            if (connections == null) {
+                connections = new HashMap<Connection, CachingConnection>();
+            }
+            CachingConnection cachingConnection = connections.get(conn);
+            if (cachingConnection == null) {
+                if (!notified) {
+                    dropClosedCaches();
+                }
+                cachingConnection = new CachingConnection(conn);
+                connections.put(conn, cachingConnection);
+            }
+            return cachingConnection;
+        }
+    }
+
+    private synchronized void dropCache(Connection conn) {
+        CachingConnection cachingConnection = connections == null ? null
+                : connections.remove(conn);
+        if (cachingConnection != null) {
+            cachingConnection.closeStatements();
+        }
+    }
+
+    private void dropClosedCaches() {
+        for (Iterator<CachingConnection> i = connections.values().iterator(); i
+                .hasNext();) {
+            CachingConnection cachingConnection = i.next();
+            if (isClosed(cachingConnection.connection)) {
+                i.remove();
+                cachingConnection.closeStatements();
+            }
+        }
+    }
+
+    private static boolean isClosed(Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    public void releaseConnection(Connection conn) {
+        pool.releaseConnection(unwrap(conn));
+    }
+
+    public void destroy() {
+        synchronized (this) {
+            if (connections != null) {
+                for (CachingConnection c : connections.values()) {
+                    c.closeStatements();
+                }
+                connections.clear();
+            }
+        }
+        pool.destroy();
+    }
+
+    /**
+     * Returns the pooled connection wrapped by the given connection.
+     *
+     * @param conn
+     *            a connection handed out by this pool
+     * @return the connection of the wrapped pool
+     */
+    public static Connection unwrap(Connection conn) {
+        if (conn instanceof CachingConnection) {
+            return ((CachingConnection) conn).getWrappedConnection();
+        }
+        return conn;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Connection wrapper holding the statement cache of one connection.
+     */
+    private class CachingConnection extends DelegatingConnection {
+        private final Map<String, CachedStatement> statements;
+        private final Set<CachedStatement> inUse = new HashSet<CachedStatement>();
+
+        private CachingConnection(Connection connection) {
+            super(connection);
+            statements = new LinkedHashMap<String, CachedStatement>(16,
+                    0.75f, true);
+        }
+
+        private Connection getWrappedConnection() {
+            return connection;
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException {
+            String key = key(sql);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+            String key = key(sql, resultSetType, resultSetConcurrency);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql, resultSetType,
+                            resultSetConcurrency));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            String key = key(sql, resultSetType, resultSetConcurrency,
+                    resultSetHoldability);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql, resultSetType,
+                            resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int autoGeneratedKeys) throws SQLException {
+            String key = key(sql, autoGeneratedKeys);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int[] columnIndexes) throws SQLException {
+            String key = key(sql, columnIndexes);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql, columnIndexes));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                String[] columnNames) throws SQLException {
+            String key = key(sql, columnNames);
+            PreparedStatement cached = take(key);
+            return cached != null ? cached : put(key,
+                    connection.prepareStatement(sql, columnNames));
+        }
+
+        @Override
+        public void close() throws SQLException {
+            closeStatements();
+            connection.close();
+        }
+
+        /* The SQL and the key generation options make up the key */
+        private String key(Object... args) {
+            return Arrays.deepToString(args);
+        }
+
+        /*
+         * Returns the cached statement of the key for use, or null if there
+         * is none or it is in use.
+         */
+        private synchronized PreparedStatement take(String key)
+                throws SQLException {
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !inUse.contains(cached)
+                    && !cached.isClosed()) {
+                hits.incrementAndGet();
+                inUse.add(cached);
+                return cached;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        /*
+         * Caches a statement prepared after a miss and returns it for use.
+         */
+        private synchronized PreparedStatement put(String key,
+                PreparedStatement statement) {
+            CachedStatement cached = statements.get(key);
+            if (cached != null && inUse.contains(cached)) {
+                /* The cached copy is in use, hand out an uncached one */
+                return statement;
+            }
+            cached = new CachedStatement(this, statement);
+            statements.put(key, cached);
+            inUse.add(cached);
+            evict();
+            return cached;
+        }
+        /*
+         * Evicts the least recently used statements beyond the cache size,
+         * those not in use first. The statements in use are left open until
+         * they are released.
+         */
+        private void evict() {
+            for (Iterator<CachedStatement> i = statements.values().iterator(); i
+                    .hasNext()
+                    && statements.size() > cacheSize;) {
+                CachedStatement cached = i.next();
+                if (!inUse.contains(cached)) {
+                    i.remove();
+                    cached.closeQuietly();
+                    evictions.incrementAndGet();
+                }
+            }
+            for (Iterator<CachedStatement> i = statements.values().iterator(); i
+                    .hasNext()
+                    && statements.size() > cacheSize;) {
+                i.next();
+                i.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        private synchronized void release(CachedStatement cached) {
+            inUse.remove(cached);
+            if (!statements.containsValue(cached)) {
+                /* Evicted or replaced while in use */
+                cached.closeQuietly();
+            }
+        }
+
+        private synchronized void closeStatements() {
+            for (Iterator<CachedStatement> i = statements.values().iterator(); i
+                    .hasNext();) {
+                i.next().closeQuietly();
+                i.remove();
+            }
+            inUse.clear();
+        }
+    }
+
+    /**
+     * Prepared statement wrapper that returns the statement to the cache of
+     * its connection when closed. The result sets it returns report it as
+     * their statement, so that closing it through them does not close the
+     * real one.
+     */
+    private static class CachedStatement extends DelegatingPreparedStatement {
+        private final CachingConnection owner;
+
+        private CachedStatement(CachingConnection owner,
+                PreparedStatement statement) {
+            super(statement);
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!statement.isClosed()) {
+                statement.clearParameters();
+                statement.clearBatch();
+            }
+            owner.release(this);
+        }
+
+        @Override
+        public Connection getConnection() {
+            return owner;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return wrap(statement.executeQuery());
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return wrap(statement.getResultSet());
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return wrap(statement.getGeneratedKeys());
+        }
+
+        private ResultSet wrap(ResultSet rs) {
+            if (rs == null) {
+                return null;
+            }
+            return new DelegatingResultSet(rs) {
+                @Override
+                public Statement getStatement() {
+                    return CachedStatement.this;
+                }
+            };
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Nothing needs to be done
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vaadin.data.util.sqlcontainer.demo.filter;
+
+import java.util.Arrays;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+
+/**
+ * Filter that passes the items whose integer property is one of a given set
+ * of values, typically row ids resolved by an in-memory index. Translated to
+ * <code>column IN (UNNEST(?))</code> by {@link IdSetTranslator}.
+ */
+@SuppressWarnings("serial")
+public class IdSetFilter implements Filter {
+
+    private final Object propertyId;
+    private final int[] ids;
+
+    /**
+     * Creates a filter for the given ids.
+     *
+     * @param propertyId
+     *            the integer property to filter
+     * @param ids
+     *            the accepted values, sorted in ascending order
+     */
+    public IdSetFilter(Object propertyId, int[] ids) {
+        this.propertyId = propertyId;
+        this.ids = ids;
+    }
+
+    public Object getPropertyId() {
+        return propertyId;
+    }
+
+    /**
+     * Returns the accepted values in ascending order. The array must not be
+     * modified.
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    public boolean passesFilter(Object itemId, Item item)
+            throws UnsupportedOperationException {
+        Property p = item.getItemProperty(propertyId);
+        if (p == null || !(p.getValue() instanceof Number)) {
+            return false;
+        }
+        return Arrays.binarySearch(ids, ((Number) p.getValue()).intValue()) >= 0;
+    }
+
+    public boolean appliesToProperty(Object propertyId) {
+        return this.propertyId.equals(propertyId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof IdSetFilter)) {
+            return false;
+        }
+        IdSetFilter other = (IdSetFilter) obj;
+        return propertyId.equals(other.propertyId)
+                && Arrays.equals(ids, other.ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return propertyId.hashCode() * 31 + Arrays.hashCode(ids);
+    }
+}
@@ -0,0 +1,46 @@
+package com.vaadin.data.util.sqlcontainer.demo.filter;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.FilterTranslator;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+
+/**
+ * Translates an {@link IdSetFilter} to <code>column IN (UNNEST(?))</code>,
+ * binding the ids as a single HSQLDB array parameter. The statement text does
+ * not depend on the ids, so the database parses it once and it can be reused
+ * from a statement cache however many ids are searched for.
+ */
+@SuppressWarnings("serial")
+public class IdSetTranslator implements FilterTranslator {
+
+    private static boolean registered = false;
+
+    /**
+     * Registers the translator with the QueryBuilder, once.
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            QueryBuilder.addFilterTranslator(new IdSetTranslator());
+            registered = true;
+        }
+    }
+
+    public boolean translatesFilter(Filter filter) {
+        return filter instanceof IdSetFilter;
+    }
+
+    public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
+        IdSetFilter isf = (IdSetFilter) filter;
+        int[] ids = isf.getIds();
+        if (ids.length == 0) {
+            return "1 = 0";
+        }
+        Integer[] values = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = ids[i];
+        }
+        sh.addParameterValue(values);
+        return QueryBuilder.quote(isf.getPropertyId()) + " IN (UNNEST(?))";
+    }
+}
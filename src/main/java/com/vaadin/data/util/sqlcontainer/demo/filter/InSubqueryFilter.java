@@ -0,0 +1,86 @@
+package com.vaadin.data.util.sqlcontainer.demo.filter;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+
+/**
+ * Filter that passes the items whose property is one of the keys of the rows
+ * of another table passing a filter, e.g. the persons living in a city whose
+ * name contains a term. Translated by {@link InSubqueryTranslator} to
+ * <code>column IN (SELECT key FROM table WHERE ...)</code>, so the database
+ * resolves the keys in the same query instead of the application fetching
+ * them first.
+ * <p>
+ * The other table is not available in memory, so rows that have not been
+ * stored in the database yet always pass.
+ */
+@SuppressWarnings("serial")
+public class InSubqueryFilter implements Filter {
+
+    private final Object propertyId;
+    private final String table;
+    private final String keyColumn;
+    private final Filter filter;
+
+    /**
+     * Creates a subquery filter.
+     *
+     * @param propertyId
+     *            the property holding the key, e.g. a foreign key column
+     * @param table
+     *            the table of the subquery
+     * @param keyColumn
+     *            the key column the subquery selects
+     * @param filter
+     *            the filter applied to the rows of the subquery
+     */
+    public InSubqueryFilter(Object propertyId, String table, String keyColumn,
+            Filter filter) {
+        this.propertyId = propertyId;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.filter = filter;
+    }
+
+    public Object getPropertyId() {
+        return propertyId;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public boolean passesFilter(Object itemId, Item item)
+            throws UnsupportedOperationException {
+        return true;
+    }
+
+    public boolean appliesToProperty(Object propertyId) {
+        return this.propertyId.equals(propertyId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof InSubqueryFilter)) {
+            return false;
+        }
+        InSubqueryFilter other = (InSubqueryFilter) obj;
+        return propertyId.equals(other.propertyId)
+                && table.equals(other.table)
+                && keyColumn.equals(other.keyColumn)
+                && filter.equals(other.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return propertyId.hashCode() * 31 + filter.hashCode();
+    }
+}
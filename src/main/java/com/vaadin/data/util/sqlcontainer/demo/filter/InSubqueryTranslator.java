@@ -0,0 +1,41 @@
+package com.vaadin.data.util.sqlcontainer.demo.filter;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.FilterTranslator;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+
+/**
+ * Translates an {@link InSubqueryFilter} to
+ * <code>column IN (SELECT key FROM table WHERE ...)</code>. The filter of the
+ * subquery is translated by the QueryBuilder, so its values are bound as
+ * statement parameters.
+ */
+@SuppressWarnings("serial")
+public class InSubqueryTranslator implements FilterTranslator {
+
+    private static boolean registered = false;
+
+    /**
+     * Registers the translator with the QueryBuilder, once.
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            QueryBuilder.addFilterTranslator(new InSubqueryTranslator());
+            registered = true;
+        }
+    }
+
+    public boolean translatesFilter(Filter filter) {
+        return filter instanceof InSubqueryFilter;
+    }
+
+    public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
+        InSubqueryFilter isf = (InSubqueryFilter) filter;
+        return QueryBuilder.quote(isf.getPropertyId()) + " IN (SELECT "
+                + QueryBuilder.quote(isf.getKeyColumn()) + " FROM "
+                + isf.getTable() + " WHERE "
+                + QueryBuilder.getWhereStringForFilter(isf.getFilter(), sh)
+                + ")";
+    }
+}
@@ -0,0 +1,77 @@
+package com.vaadin.data.util.sqlcontainer.demo.filter;
+
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.sqlcontainer.query.generator.StatementHelper;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.QueryBuilder;
+import com.vaadin.data.util.sqlcontainer.query.generator.filter.StringDecorator;
+
+/**
+ * StringDecorator that writes the column names of filters as qualified column
+ * names, e.g. <code>P.LASTNAME</code> for a filter on LASTNAME, while
+ * {@link #getWhereStringForFilters(List, StatementHelper, Map)} translates the
+ * filters on the current thread. Otherwise, and for names that are not mapped,
+ * names are quoted with double quotes like the default decorator of the
+ * QueryBuilder.
+ * <p>
+ * As the names are replaced when the filter translators quote them, values of
+ * the filters and identifiers merely containing a mapped name are left alone.
+ */
+@SuppressWarnings("serial")
+public class QualifyingStringDecorator extends StringDecorator {
+
+    private static final ThreadLocal<Map<String, String>> COLUMNS = new ThreadLocal<Map<String, String>>();
+
+    private static boolean registered = false;
+
+    private QualifyingStringDecorator() {
+        super("\"", "\"");
+    }
+
+    /**
+     * Sets the decorator as the decorator of the QueryBuilder, once.
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            QueryBuilder.setStringDecorator(new QualifyingStringDecorator());
+            registered = true;
+        }
+    }
+
+    /**
+     * Returns the WHERE clause of the filters with the column names replaced
+     * by the given qualified names.
+     *
+     * @param filters
+     *            the filters
+     * @param sh
+     *            the statement helper to add the values of the filters to
+     * @param columns
+     *            the qualified names keyed by the column names
+     * @return the WHERE clause, or an empty string if there are no filters
+     */
+    public static String getWhereStringForFilters(List<Filter> filters,
+            StatementHelper sh, Map<String, String> columns) {
+        register();
+        COLUMNS.set(columns);
+        try {
+            return QueryBuilder.getWhereStringForFilters(filters, sh);
+        } finally {
+            COLUMNS.remove();
+        }
+    }
+
+    @Override
+    public String quote(Object str) {
+        Map<String, String> columns = COLUMNS.get();
+        if (columns != null) {
+            String column = columns.get(str);
+            if (column != null) {
+                return column;
+            }
+        }
+        return super.quote(str);
+    }
+}
@@ -0,0 +1,170 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.vaadin.Application;
+import com.vaadin.data.Property;
+import com.vaadin.data.Property.ValueChangeEvent;
+import com.vaadin.data.util.BeanItemContainer;
+import com.vaadin.ui.Alignment;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Button.ClickEvent;
+import com.vaadin.ui.HorizontalLayout;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.Panel;
+import com.vaadin.ui.Table;
+import com.vaadin.ui.TextField;
+import com.vaadin.ui.VerticalLayout;
+import com.vaadin.ui.VerticalSplitPanel;
+import com.vaadin.ui.Window;
+import com.vaadin.ui.Window.Notification;
+
+/**
+ * Admin view of the {@link SlowQueryLog#getDefault() slow query log}, served
+ * under <code>/admin/*</code>. The table lists the captured statements, the
+ * latest first, with how their tables were accessed according to the plan.
+ * Selecting a statement shows its parameters, the filters and the sort order
+ * it was generated from and the whole plan. Plans are read in the background,
+ * so a statement captured just now may need a refresh to show its plan.
+ * <p>
+ * The view shows the parameters of the statements, which may hold personal
+ * data; web.xml therefore only serves it to users in the <code>admin</code>
+ * role, which the servlet container has to grant.
+ */
+@SuppressWarnings("serial")
+public class AdminApplication extends Application implements
+        Button.ClickListener, Property.ValueChangeListener {
+
+    private static final Object[] VISIBLE_COLS = { "time", "millis",
+            "source", "access", "sql" };
+    private static final String[] COL_HEADERS = { "Time", "ms", "Source",
+            "Access", "SQL" };
+
+    private final SlowQueryLog log = SlowQueryLog.getDefault();
+
+    private final BeanItemContainer<SlowQuery> container = new BeanItemContainer<SlowQuery>(
+            SlowQuery.class);
+    private final Table table = new Table() {
+        @Override
+        protected String formatPropertyValue(Object rowId, Object colId,
+                Property property) {
+            Object value = property.getValue();
+            if (value instanceof Date) {
+                return new SimpleDateFormat("HH:mm:ss.SSS").format(value);
+            } else if (value instanceof Double) {
+                return String.format("%.1f", value);
+            }
+            return super.formatPropertyValue(rowId, colId, property);
+        }
+    };
+    private final Label details = new Label("", Label.CONTENT_PREFORMATTED);
+    private final Label summary = new Label();
+    private final TextField threshold = new TextField("Threshold (ms)");
+    private final Button refresh = new Button("Refresh", this);
+    private final Button clear = new Button("Clear", this);
+
+    @Override
+    public void init() {
+        Window mainWindow = new Window("Slow queries");
+
+        threshold.setValue(String.valueOf(log.getThresholdMillis()));
+        threshold.setImmediate(true);
+        threshold.addListener(this);
+
+        HorizontalLayout toolbar = new HorizontalLayout();
+        toolbar.setSpacing(true);
+        toolbar.addComponent(threshold);
+        toolbar.addComponent(refresh);
+        toolbar.addComponent(clear);
+        toolbar.addComponent(summary);
+        toolbar.setComponentAlignment(refresh, Alignment.BOTTOM_LEFT);
+        toolbar.setComponentAlignment(clear, Alignment.BOTTOM_LEFT);
+        toolbar.setComponentAlignment(summary, Alignment.BOTTOM_LEFT);
+
+        table.setContainerDataSource(container);
+        table.setVisibleColumns(VISIBLE_COLS);
+        table.setColumnHeaders(COL_HEADERS);
+        table.setColumnExpandRatio("sql", 1);
+        table.setSelectable(true);
+        table.setImmediate(true);
+        table.setSizeFull();
+        table.addListener(this);
+
+        Panel detailsPanel = new Panel();
+        detailsPanel.setSizeFull();
+        detailsPanel.addComponent(details);
+
+        VerticalSplitPanel split = new VerticalSplitPanel();
+        split.setFirstComponent(table);
+        split.setSecondComponent(detailsPanel);
+        split.setSplitPosition(60);
+
+        VerticalLayout layout = new VerticalLayout();
+        layout.setMargin(true);
+        layout.setSpacing(true);
+        layout.setSizeFull();
+        layout.addComponent(toolbar);
+        layout.addComponent(split);
+        layout.setExpandRatio(split, 1);
+        mainWindow.setContent(layout);
+        setMainWindow(mainWindow);
+
+        refresh();
+    }
+
+    private void refresh() {
+        Object selected = table.getValue();
+        container.removeAllItems();
+        container.addAll(log.getEntries());
+        summary.setValue(container.size() + " of " + log.getCapturedCount()
+                + " captured statements, the last " + log.getCapacity()
+                + " are kept");
+        if (selected != null && container.containsId(selected)) {
+            table.select(selected);
+        }
+        showDetails((SlowQuery) table.getValue());
+    }
+
+    public void buttonClick(ClickEvent event) {
+        if (event.getButton() == clear) {
+            log.clear();
+        }
+        refresh();
+    }
+
+    public void valueChange(ValueChangeEvent event) {
+        if (event.getProperty() == threshold) {
+            try {
+                log.setThresholdMillis(Long.parseLong(String.valueOf(
+                        threshold.getValue()).trim()));
+            } catch (NumberFormatException e) {
+                getMainWindow().showNotification("Invalid threshold",
+                        Notification.TYPE_WARNING_MESSAGE);
+                threshold.setValue(String.valueOf(log.getThresholdMillis()));
+            }
+        } else {
+            showDetails((SlowQuery) table.getValue());
+        }
+    }
+
+    private void showDetails(SlowQuery query) {
+        if (query == null) {
+            details.setValue("");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.getSql()).append("\n\n");
+        sb.append("Parameters: ").append(query.getParameters()).append('\n');
+        if (query.getSource() != null) {
+            sb.append("Query: ").append(query.getSource()).append('\n');
+            sb.append("Generated from: ").append(query.getContext()).append(
+                    '\n');
+        }
+        sb.append("Thread: ").append(query.getThread()).append('\n');
+        sb.append(String.format("Time: %.1f ms", query.getMillis())).append(
+                "\n\n");
+        sb.append(query.getPlan() == null ? "No plan" : query.getPlan());
+        details.setValue(sb.toString());
+    }
+}
@@ -0,0 +1,279 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.vaadin.Application;
+import com.vaadin.terminal.PaintException;
+import com.vaadin.terminal.VariableOwner;
+import com.vaadin.terminal.gwt.server.ApplicationServlet;
+import com.vaadin.terminal.gwt.server.CommunicationManager;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Window;
+
+/**
+ * ApplicationServlet that records the time and the response size of every
+ * UIDL request in {@link RequestStatistics}, per interaction. The statistics
+ * are registered over JMX under the name of the servlet.
+ * <p>
+ * The communication manager of each application is replaced by one that
+ * times the variable changes and the painting of the response. The component
+ * of the last variable change of a request is taken as its trigger, as the
+ * client sends the pending changes of other components before the change of
+ * an immediate component. The database time is read from the
+ * {@link InstrumentedConnectionPool}s used while handling the request; the
+ * time of pools that are not instrumented counts as listener or paint time.
+ * <p>
+ * Only UIDL requests are recorded. Requests are timed from when the servlet
+ * receives them until the response has been written.
+ */
+@SuppressWarnings("serial")
+public class InstrumentedApplicationServlet extends ApplicationServlet {
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<RequestTiming>();
+
+    private final RequestStatistics statistics = new RequestStatistics();
+
+    @Override
+    public void init(ServletConfig servletConfig) throws ServletException {
+        super.init(servletConfig);
+        statistics.registerMBean(servletConfig.getServletName());
+    }
+
+    @Override
+    public void destroy() {
+        statistics.unregisterMBean();
+        super.destroy();
+    }
+
+    public RequestStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    protected void service(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        if (getRequestType(request) != RequestType.UIDL) {
+            super.service(request, response);
+            return;
+        }
+        RequestTiming timing = new RequestTiming(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        CURRENT.set(timing);
+        try {
+            super.service(request, countingResponse);
+        } finally {
+            CURRENT.remove();
+            timing.record(statistics, countingResponse.getCount());
+        }
+    }
+
+    /**
+     * Creates a communication manager that reports to the request being
+     * handled. Overrides the deprecated hook, as replacing the application
+     * context would also replace the session handling of the servlet.
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public CommunicationManager createCommunicationManager(
+            Application application) {
+        return new InstrumentedCommunicationManager(application);
+    }
+
+    /**
+     * Returns the name of an interaction: the class of the component, the
+     * caption of a button and the changed variables, e.g.
+     * <code>Button 'Save' state</code>. Anonymous classes are named by their
+     * superclass.
+     */
+    static String getTrigger(VariableOwner owner, Map<String, Object> variables) {
+        Class<?> type = owner.getClass();
+        while (type.isAnonymousClass()) {
+            type = type.getSuperclass();
+        }
+        StringBuilder sb = new StringBuilder(type.getSimpleName());
+        if (owner instanceof Button) {
+            String caption = ((Button) owner).getCaption();
+            if (caption != null) {
+                sb.append(" '").append(caption).append('\'');
+            }
+        }
+        List<String> names = new ArrayList<String>(variables.keySet());
+        Collections.sort(names);
+        for (int i = 0; i < names.size(); i++) {
+            sb.append(i > 0 ? ", " : " ").append(names.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Times of one UIDL request.
+     */
+    private static class RequestTiming {
+        private final long start = System.nanoTime();
+        private final long databaseStart = InstrumentedConnectionPool
+                .getThreadDatabaseNanos();
+        private String trigger;
+        private long listenerNanos;
+        private long paintNanos;
+
+        private RequestTiming(HttpServletRequest request) {
+            String query = request.getQueryString();
+            trigger = query != null && query.contains("repaintAll=1") ? "(repaint all)"
+                    : "(no variable changes)";
+        }
+
+        private void listened(String trigger, long nanos, long databaseNanos) {
+            this.trigger = trigger;
+            listenerNanos += nanos - databaseNanos;
+        }
+
+        private void painted(long nanos, long databaseNanos) {
+            paintNanos += nanos - databaseNanos;
+        }
+
+        private void record(RequestStatistics statistics, long bytes) {
+            statistics.record(trigger, System.nanoTime() - start,
+                    InstrumentedConnectionPool.getThreadDatabaseNanos()
+                            - databaseStart, listenerNanos, paintNanos, bytes);
+        }
+    }
+
+    /**
+     * Communication manager timing the variable changes and the painting.
+     * Keeps no reference to the servlet, so it can be serialized with the
+     * session.
+     */
+    private static class InstrumentedCommunicationManager extends
+            CommunicationManager {
+
+        private InstrumentedCommunicationManager(Application application) {
+            super(application);
+        }
+
+        @Override
+        protected void changeVariables(Object source, VariableOwner owner,
+                Map<String, Object> m) {
+            RequestTiming timing = CURRENT.get();
+            if (timing == null) {
+                super.changeVariables(source, owner, m);
+                return;
+            }
+            long start = System.nanoTime();
+            long databaseStart = InstrumentedConnectionPool
+                    .getThreadDatabaseNanos();
+            try {
+                super.changeVariables(source, owner, m);
+            } finally {
+                timing.listened(getTrigger(owner, m), System.nanoTime()
+                        - start, InstrumentedConnectionPool
+                        .getThreadDatabaseNanos()
+                        - databaseStart);
+            }
+        }
+
+        @Override
+        public void writeUidlResponce(Callback callback, boolean repaintAll,
+                PrintWriter outWriter, Window window, boolean analyzeLayouts)
+                throws PaintException {
+            RequestTiming timing = CURRENT.get();
+            if (timing == null) {
+                super.writeUidlResponce(callback, repaintAll, outWriter,
+                        window, analyzeLayouts);
+                return;
+            }
+            long start = System.nanoTime();
+            long databaseStart = InstrumentedConnectionPool
+                    .getThreadDatabaseNanos();
+            try {
+                super.writeUidlResponce(callback, repaintAll, outWriter,
+                        window, analyzeLayouts);
+            } finally {
+                timing.painted(System.nanoTime() - start,
+                        InstrumentedConnectionPool.getThreadDatabaseNanos()
+                                - databaseStart);
+            }
+        }
+    }
+
+    /**
+     * Response wrapper counting the bytes written to the response.
+     */
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream out;
+        private PrintWriter writer;
+        private long count;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                final ServletOutputStream wrapped = super.getOutputStream();
+                out = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        wrapped.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                            throws IOException {
+                        wrapped.write(b, off, len);
+                        count += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        wrapped.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        wrapped.close();
+                    }
+                };
+            }
+            return out;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(
+                        getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        private long getCount() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,717 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.demo.connection.DelegatingConnection;
+import com.vaadin.data.util.sqlcontainer.demo.connection.DelegatingPreparedStatement;
+import com.vaadin.data.util.sqlcontainer.demo.connection.DelegatingResultSet;
+import com.vaadin.data.util.sqlcontainer.demo.connection.DelegatingStatement;
+
+/**
+ * JDBCConnectionPool decorator that records the execution of every statement
+ * in {@link SqlStatistics}. As the query delegates of the containers run all
+ * their SQL on connections of their pool, wrapping the pool instruments them
+ * all, whichever delegate or generator built the SQL.
+ * <p>
+ * The connections handed out are wrapped so that the statements they create
+ * time their <code>execute</code> calls and count the rows read from their
+ * results and the rows updated. The wrappers are plain delegating classes
+ * that only intercept the calls they record, as they are on the path of every
+ * JDBC call of the application. The time spent reserving a connection from
+ * the wrapped pool is recorded as the connection wait, and is also added to
+ * the statement executed first on the connection.
+ * <p>
+ * If a {@link SlowQueryLog} is set, the statements exceeding its threshold
+ * are logged with their parameters and the {@link QueryContext} they were run
+ * in, and are explained on the wrapped pool.
+ * <p>
+ * The execution and connection wait times are also added up per thread, see
+ * {@link #getThreadDatabaseNanos()}, so that the database time of a request
+ * can be told apart from the rest of its handling.
+ */
+@SuppressWarnings("serial")
+public class InstrumentedConnectionPool implements JDBCConnectionPool {
+
+    /* Execution and connection wait time of every pool, per thread */
+    private static final ThreadLocal<long[]> THREAD_DATABASE_NANOS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final JDBCConnectionPool pool;
+
+    /* Not serialized, a deserialized pool does not record */
+    private final transient SqlStatistics statistics;
+    private transient volatile SlowQueryLog slowQueryLog;
+
+    /**
+     * Creates an instrumented pool.
+     *
+     * @param pool
+     *            the pool that provides the connections
+     * @param statistics
+     *            the statistics to record to
+     */
+    public InstrumentedConnectionPool(JDBCConnectionPool pool,
+            SqlStatistics statistics) {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool may not be null!");
+        }
+        if (statistics == null) {
+            throw new IllegalArgumentException(
+                    "The statistics may not be null!");
+        }
+        this.pool = pool;
+        this.statistics = statistics;
+    }
+
+    public Connection reserveConnection() throws SQLException {
+        if (statistics == null) {
+            return pool.reserveConnection();
+        }
+        long start = System.nanoTime();
+        Connection conn = pool.reserveConnection();
+        long wait = System.nanoTime() - start;
+        statistics.recordConnectionWait(wait);
+        THREAD_DATABASE_NANOS.get()[0] += wait;
+        return new InstrumentedConnection(conn, wait);
+    }
+
+    public void releaseConnection(Connection conn) {
+        pool.releaseConnection(unwrap(conn));
+    }
+
+    public void destroy() {
+        pool.destroy();
+    }
+
+    public SqlStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the log of the statements exceeding its threshold.
+     *
+     * @param slowQueryLog
+     *            the log, or null to not log slow statements
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Returns the time the current thread has spent executing statements and
+     * waiting for connections of instrumented pools. The time only grows, the
+     * time spent in a call is the difference of the values before and after
+     * it.
+     *
+     * @return the time in nanoseconds
+     */
+    public static long getThreadDatabaseNanos() {
+        return THREAD_DATABASE_NANOS.get()[0];
+    }
+
+    /**
+     * Returns the connection of the wrapped pool wrapped by the given
+     * connection.
+     *
+     * @param conn
+     *            a connection handed out by this pool
+     * @return the connection of the wrapped pool
+     */
+    public static Connection unwrap(Connection conn) {
+        if (conn instanceof InstrumentedConnection) {
+            return ((InstrumentedConnection) conn).getWrappedConnection();
+        }
+        return conn;
+    }
+
+    /**
+     * Connection wrapper for one reservation.
+     */
+    private class InstrumentedConnection extends DelegatingConnection {
+
+        /* The wait not yet added to a statement */
+        private long pendingWaitNanos;
+
+        private InstrumentedConnection(Connection connection, long waitNanos) {
+            super(connection);
+            pendingWaitNanos = waitNanos;
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return new InstrumentedStatement(this, connection
+                    .createStatement());
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType,
+                int resultSetConcurrency) throws SQLException {
+            return new InstrumentedStatement(this, connection.createStatement(
+                    resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType,
+                int resultSetConcurrency, int resultSetHoldability)
+                throws SQLException {
+            return new InstrumentedStatement(this, connection.createStatement(
+                    resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException {
+            return new InstrumentedPreparedStatement(this, connection
+                    .prepareStatement(sql), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+            return new InstrumentedPreparedStatement(this,
+                    connection.prepareStatement(sql, resultSetType,
+                            resultSetConcurrency), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            return new InstrumentedPreparedStatement(this,
+                    connection.prepareStatement(sql, resultSetType,
+                            resultSetConcurrency, resultSetHoldability), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int autoGeneratedKeys) throws SQLException {
+            return new InstrumentedPreparedStatement(this,
+                    connection.prepareStatement(sql, autoGeneratedKeys), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                int[] columnIndexes) throws SQLException {
+            return new InstrumentedPreparedStatement(this,
+                    connection.prepareStatement(sql, columnIndexes), sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql,
+                String[] columnNames) throws SQLException {
+            return new InstrumentedPreparedStatement(this,
+                    connection.prepareStatement(sql, columnNames), sql);
+        }
+
+        private Connection getWrappedConnection() {
+            return connection;
+        }
+
+        private synchronized long takeWait() {
+            long wait = pendingWaitNanos;
+            pendingWaitNanos = 0;
+            return wait;
+        }
+    }
+
+    /**
+     * Records the executions of a statement. A prepared statement has one
+     * shape, the shape of a plain statement is that of the SQL it executes.
+     * The parameters of a prepared statement are only kept while slow
+     * statements are logged.
+     * <p>
+     * An execution is recorded by calling {@link #begin(String)} before and
+     * {@link #end()} after it; a statement runs one execution at a time. The
+     * execution counts as failed unless its result is passed to one of the
+     * <code>updated</code>, <code>read</code> or <code>executed</code>
+     * methods.
+     */
+    private class ExecutionRecorder {
+        private final InstrumentedConnection owner;
+        private final String preparedSql;
+        private final StatementStatistics prepared;
+        private final Statement statement;
+        private Object[] parameters;
+        private int parameterCount;
+
+        /* The statement executed last, for getResultSet() */
+        private StatementStatistics executed;
+        private String batchSql;
+
+        /* The execution in progress */
+        private String sql;
+        private long start;
+        private boolean failed;
+
+        private ExecutionRecorder(InstrumentedConnection owner,
+                Statement statement, String preparedSql) {
+            this.owner = owner;
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            prepared = preparedSql == null ? null : statistics
+                    .getStatement(preparedSql);
+        }
+
+        /**
+         * Starts recording an execution.
+         *
+         * @param sql
+         *            the SQL passed to the execute call, or null if the
+         *            prepared statement or the batch is executed
+         */
+        private void begin(String sql) {
+            StatementStatistics stats;
+            if (sql != null) {
+                stats = statistics.getStatement(sql);
+            } else if (prepared != null) {
+                stats = prepared;
+            } else {
+                if (batchSql == null) {
+                    batchSql = "(batch)";
+                }
+                stats = statistics.getStatement(batchSql);
+            }
+            executed = stats;
+            this.sql = sql;
+            long wait = owner.takeWait();
+            if (wait > 0) {
+                stats.recordConnectionWait(wait);
+            }
+            failed = true;
+            start = System.nanoTime();
+        }
+
+        private void end() {
+            long nanos = System.nanoTime() - start;
+            executed.recordExecution(nanos, failed);
+            THREAD_DATABASE_NANOS.get()[0] += nanos;
+            SlowQueryLog log = slowQueryLog;
+            if (log != null && log.isSlow(nanos)) {
+                log.record(nanos, sql != null ? sql
+                        : prepared != null ? preparedSql : batchSql,
+                        sql != null || parameters == null ? null : Arrays
+                                .copyOf(parameters, parameterCount),
+                        QueryContext.current(), pool);
+            }
+            if (prepared == null && sql == null) {
+                batchSql = null;
+            }
+        }
+
+        private boolean executed(boolean hasResultSet) {
+            failed = false;
+            return hasResultSet;
+        }
+
+        private int updated(int rows) {
+            failed = false;
+            executed.recordRows(Math.max(0, rows));
+            return rows;
+        }
+
+        private long updated(long rows) {
+            failed = false;
+            executed.recordRows(Math.max(0, rows));
+            return rows;
+        }
+
+        private int[] updated(int[] rows) {
+            failed = false;
+            for (int count : rows) {
+                executed.recordRows(Math.max(0, count));
+            }
+            return rows;
+        }
+
+        private long[] updated(long[] rows) {
+            failed = false;
+            for (long count : rows) {
+                executed.recordRows(Math.max(0, count));
+            }
+            return rows;
+        }
+
+        /**
+         * Wraps a result set of the statement executed last so that the rows
+         * read from it are counted.
+         */
+        private ResultSet read(ResultSet rs) {
+            failed = false;
+            return rs == null || executed == null ? rs
+                    : new InstrumentedResultSet(rs, statement, executed);
+        }
+
+        private void setParameter(int index, Object value) {
+            if (parameters == null || parameters.length < index) {
+                Object[] grown = new Object[Math.max(index, 8)];
+                if (parameters != null) {
+                    System.arraycopy(parameters, 0, grown, 0,
+                            parameters.length);
+                }
+                parameters = grown;
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+    }
+
+    /**
+     * Statement wrapper timing the executions.
+     */
+    private class InstrumentedStatement extends
+            DelegatingStatement<Statement> {
+        private final InstrumentedConnection owner;
+        private final ExecutionRecorder recorder;
+
+        private InstrumentedStatement(InstrumentedConnection owner,
+                Statement statement) {
+            super(statement);
+            this.owner = owner;
+            recorder = new ExecutionRecorder(owner, this, null);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.read(statement.executeQuery(sql));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql) throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeUpdate(sql));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, int autoGeneratedKeys)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeUpdate(sql,
+                        autoGeneratedKeys));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, int[] columnIndexes)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeUpdate(sql,
+                        columnIndexes));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int executeUpdate(String sql, String[] columnNames)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeUpdate(sql,
+                        columnNames));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql) throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeLargeUpdate(sql));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int autoGeneratedKeys)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeLargeUpdate(sql,
+                        autoGeneratedKeys));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int[] columnIndexes)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeLargeUpdate(sql,
+                        columnIndexes));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, String[] columnNames)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.updated(statement.executeLargeUpdate(sql,
+                        columnNames));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public boolean execute(String sql) throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.executed(statement.execute(sql));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, int autoGeneratedKeys)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.executed(statement.execute(sql,
+                        autoGeneratedKeys));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, int[] columnIndexes)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.executed(statement.execute(sql,
+                        columnIndexes));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public boolean execute(String sql, String[] columnNames)
+                throws SQLException {
+            recorder.begin(sql);
+            try {
+                return recorder.executed(statement.execute(sql, columnNames));
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeBatch());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeLargeBatch());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public void addBatch(String sql) throws SQLException {
+            statement.addBatch(sql);
+            recorder.batchSql = sql;
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return recorder.read(statement.getResultSet());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return owner;
+        }
+    }
+
+    /**
+     * PreparedStatement wrapper timing the executions and, while slow
+     * statements are logged, keeping the parameters.
+     */
+    private class InstrumentedPreparedStatement extends
+            DelegatingPreparedStatement {
+        private final InstrumentedConnection owner;
+        private final ExecutionRecorder recorder;
+
+        private InstrumentedPreparedStatement(InstrumentedConnection owner,
+                PreparedStatement statement, String sql) {
+            super(statement);
+            this.owner = owner;
+            recorder = new ExecutionRecorder(owner, this, sql);
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.read(statement.executeQuery());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeUpdate());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeLargeUpdate());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.executed(statement.execute());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeBatch());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            recorder.begin(null);
+            try {
+                return recorder.updated(statement.executeLargeBatch());
+            } finally {
+                recorder.end();
+            }
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return recorder.read(statement.getResultSet());
+        }
+
+        @Override
+        public Connection getConnection() {
+            return owner;
+        }
+
+        @Override
+        public void clearParameters() throws SQLException {
+            statement.clearParameters();
+            recorder.parameterCount = 0;
+        }
+
+        @Override
+        protected void parameterSet(int parameterIndex, Object x) {
+            if (slowQueryLog != null) {
+                recorder.setParameter(parameterIndex, x);
+            }
+        }
+    }
+
+    /**
+     * Counts the rows read from a result set. The count is recorded when the
+     * last row has been read or the result set is closed.
+     */
+    private static class InstrumentedResultSet extends DelegatingResultSet {
+        private final Statement statement;
+        private final StatementStatistics stats;
+        private long rows;
+
+        private InstrumentedResultSet(ResultSet resultSet,
+                Statement statement, StatementStatistics stats) {
+            super(resultSet);
+            this.statement = statement;
+            this.stats = stats;
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            boolean hasNext = resultSet.next();
+            if (hasNext) {
+                rows++;
+            } else {
+                recordRows();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            recordRows();
+            resultSet.close();
+        }
+
+        @Override
+        public Statement getStatement() {
+            return statement;
+        }
+
+        private void recordRows() {
+            if (rows > 0) {
+                stats.recordRows(rows);
+                rows = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the UIDL requests triggered by one kind of interaction, i.e.
+ * by the same variables of the same component, as recorded by
+ * {@link RequestStatistics}. The getters are exported over JMX as the
+ * attributes of a composite value.
+ * <p>
+ * The time of a request is split into the time spent in the database, in the
+ * listeners of the variable changes and in painting the changed components.
+ * Database time is taken out of the listener and paint times, whichever of
+ * them ran the statements; container calls answered from a cache count as
+ * listener or paint time. The rest of the request, e.g. reading the request
+ * and writing the response, is only part of the total.
+ */
+public class InteractionStatistics {
+
+    private final String trigger;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong databaseNanos = new AtomicLong();
+    private final AtomicLong listenerNanos = new AtomicLong();
+    private final AtomicLong paintNanos = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong maxResponseBytes = new AtomicLong();
+
+    InteractionStatistics(String trigger) {
+        this.trigger = trigger;
+    }
+
+    void record(long nanos, long databaseNanos, long listenerNanos,
+            long paintNanos, long bytes) {
+        latency.record(nanos);
+        this.databaseNanos.addAndGet(databaseNanos);
+        this.listenerNanos.addAndGet(listenerNanos);
+        this.paintNanos.addAndGet(paintNanos);
+        responseBytes.addAndGet(bytes);
+        long max = maxResponseBytes.get();
+        while (bytes > max && !maxResponseBytes.compareAndSet(max, bytes)) {
+            max = maxResponseBytes.get();
+        }
+    }
+
+    void reset() {
+        latency.reset();
+        databaseNanos.set(0);
+        listenerNanos.set(0);
+        paintNanos.set(0);
+        responseBytes.set(0);
+        maxResponseBytes.set(0);
+    }
+
+    /**
+     * @return the component and the variables that triggered the requests,
+     *         e.g. <code>PersonList firstToBeRendered, lastToBeRendered</code>
+     */
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public long getRequests() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return the total time of the requests in milliseconds
+     */
+    public double getTotalMillis() {
+        return latency.getTotal() / 1e6;
+    }
+
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    public double getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+
+    /**
+     * Returns a percentile of the request time.
+     *
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the request time in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        return latency.getPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * @return the mean time in milliseconds spent executing statements and
+     *         waiting for connections
+     */
+    public double getMeanDatabaseMillis() {
+        return mean(databaseNanos) / 1e6;
+    }
+
+    /**
+     * @return the mean time in milliseconds spent in the listeners of the
+     *         variable changes, not including the database time
+     */
+    public double getMeanListenerMillis() {
+        return mean(listenerNanos) / 1e6;
+    }
+
+    /**
+     * @return the mean time in milliseconds spent painting the changes, not
+     *         including the database time
+     */
+    public double getMeanPaintMillis() {
+        return mean(paintNanos) / 1e6;
+    }
+
+    /**
+     * @return the share of the total time spent in the database, from 0 to 1
+     */
+    public double getDatabaseShare() {
+        long total = latency.getTotal();
+        return total == 0 ? 0 : (double) databaseNanos.get() / total;
+    }
+
+    /**
+     * @return the mean size of the UIDL responses in bytes
+     */
+    public double getMeanResponseBytes() {
+        return mean(responseBytes);
+    }
+
+    public long getMaxResponseBytes() {
+        return maxResponseBytes.get();
+    }
+
+    public long getTotalResponseBytes() {
+        return responseBytes.get();
+    }
+
+    private double mean(AtomicLong total) {
+        long count = latency.getCount();
+        return count == 0 ? 0 : (double) total.get() / count;
+    }
+}
@@ -0,0 +1,187 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.List;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.AbstractJunctionFilter;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Not;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import com.vaadin.data.util.sqlcontainer.demo.filter.IdSetFilter;
+import com.vaadin.data.util.sqlcontainer.demo.filter.InSubqueryFilter;
+import com.vaadin.data.util.sqlcontainer.query.OrderBy;
+
+/**
+ * The query delegate call running on the current thread, with the filters and
+ * the sort order it was generated from. Queries enter their context around
+ * the calls that run SQL, so that an {@link InstrumentedConnectionPool} can
+ * attach it to a slow statement. The context is only described when a
+ * statement is captured, entering it costs a thread local update.
+ */
+public class QueryContext {
+
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<QueryContext>();
+
+    private final String source;
+    private final List<Filter> filters;
+    private final List<OrderBy> orderBys;
+    private final QueryContext previous;
+
+    private QueryContext(String source, List<Filter> filters,
+            List<OrderBy> orderBys, QueryContext previous) {
+        this.source = source;
+        this.filters = filters;
+        this.orderBys = orderBys;
+        this.previous = previous;
+    }
+
+    /**
+     * Enters a context on the current thread. Must be followed by
+     * {@link #exit()} in a finally block.
+     *
+     * @param source
+     *            the query and the call, e.g. <code>PERSONADDRESS count</code>
+     * @param filters
+     *            the filters of the query, may be null
+     * @param orderBys
+     *            the sort order of the query, may be null
+     */
+    public static void enter(String source, List<Filter> filters,
+            List<OrderBy> orderBys) {
+        CURRENT.set(new QueryContext(source, filters, orderBys, CURRENT.get()));
+    }
+
+    /**
+     * Leaves the context entered last on the current thread.
+     */
+    public static void exit() {
+        QueryContext context = CURRENT.get();
+        if (context != null && context.previous != null) {
+            CURRENT.set(context.previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns the context of the current thread, or null if none.
+     */
+    public static QueryContext current() {
+        return CURRENT.get();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns a description of the filters and the sort order, e.g.
+     * <code>filters [LASTNAME like '%son%'] order by [ID asc]</code>.
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder("filters [");
+        if (filters != null) {
+            for (int i = 0; i < filters.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                describe(filters.get(i), sb);
+            }
+        }
+        sb.append("] order by [");
+        if (orderBys != null) {
+            for (int i = 0; i < orderBys.size(); i++) {
+                OrderBy orderBy = orderBys.get(i);
+                sb.append(i > 0 ? ", " : "").append(orderBy.getColumn())
+                        .append(orderBy.isAscending() ? " asc" : " desc");
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public String toString() {
+        return source + ": " + describe();
+    }
+
+    /**
+     * Appends a description of a filter. Filters without a description of
+     * their own are described by their class name.
+     */
+    private static void describe(Filter filter, StringBuilder sb) {
+        if (filter instanceof AbstractJunctionFilter) {
+            String operator = filter instanceof And ? " and " : " or ";
+            sb.append('(');
+            int i = 0;
+            for (Filter f : ((AbstractJunctionFilter) filter).getFilters()) {
+                sb.append(i++ > 0 ? operator : "");
+                describe(f, sb);
+            }
+            sb.append(')');
+        } else if (filter instanceof Not) {
+            sb.append("not ");
+            describe(((Not) filter).getFilter(), sb);
+        } else if (filter instanceof Compare) {
+            Compare compare = (Compare) filter;
+            sb.append(compare.getPropertyId()).append(' ')
+                    .append(getOperator(compare.getOperation())).append(' ')
+                    .append(quote(compare.getValue()));
+        } else if (filter instanceof Like) {
+            Like like = (Like) filter;
+            sb.append(like.getPropertyId()).append(
+                    like.isCaseSensitive() ? " like " : " ilike ").append(
+                    quote(like.getValue()));
+        } else if (filter instanceof SimpleStringFilter) {
+            SimpleStringFilter ssf = (SimpleStringFilter) filter;
+            sb.append(ssf.getPropertyId()).append(
+                    ssf.isOnlyMatchPrefix() ? " starts with " : " contains ")
+                    .append(quote(ssf.getFilterString())).append(
+                            ssf.isIgnoreCase() ? " ignoring case" : "");
+        } else if (filter instanceof Between) {
+            Between between = (Between) filter;
+            sb.append(between.getPropertyId()).append(" between ").append(
+                    quote(between.getStartValue())).append(" and ").append(
+                    quote(between.getEndValue()));
+        } else if (filter instanceof IsNull) {
+            sb.append(((IsNull) filter).getPropertyId()).append(" is null");
+        } else if (filter instanceof InSubqueryFilter) {
+            InSubqueryFilter subquery = (InSubqueryFilter) filter;
+            sb.append(subquery.getPropertyId()).append(" in ").append(
+                    subquery.getTable()).append('.').append(
+                    subquery.getKeyColumn()).append(" where ");
+            describe(subquery.getFilter(), sb);
+        } else if (filter instanceof IdSetFilter) {
+            IdSetFilter idSet = (IdSetFilter) filter;
+            sb.append(idSet.getPropertyId()).append(" in ").append(
+                    idSet.getIds().length).append(" ids");
+        } else if (filter != null) {
+            sb.append(filter.getClass().getSimpleName());
+        }
+    }
+
+    private static String getOperator(Compare.Operation operation) {
+        switch (operation) {
+        case EQUAL:
+            return "=";
+        case GREATER:
+            return ">";
+        case LESS:
+            return "<";
+        case GREATER_OR_EQUAL:
+            return ">=";
+        case LESS_OR_EQUAL:
+            return "<=";
+        default:
+            return operation.toString();
+        }
+    }
+
+    private static String quote(Object value) {
+        return value instanceof String ? "'" + value + "'" : String
+                .valueOf(value);
+    }
+}
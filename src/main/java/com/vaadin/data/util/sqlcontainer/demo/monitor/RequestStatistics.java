@@ -0,0 +1,176 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of the UIDL requests of an application, collected per
+ * interaction by an {@link InstrumentedApplicationServlet}. An interaction is
+ * named by the component whose variable change triggered the request and the
+ * changed variables, so that e.g. scrolling and selecting in the same table
+ * are counted apart.
+ * <p>
+ * The statistics can be exported over JMX with {@link #registerMBean(String)}.
+ */
+public class RequestStatistics implements RequestStatisticsMXBean {
+
+    /*
+     * Bounds the memory taken by interactions named by captions: interactions
+     * beyond this are counted together.
+     */
+    private static final int MAX_INTERACTIONS = 200;
+    private static final String OTHER_INTERACTION = "(other interactions)";
+
+    private final ConcurrentMap<String, InteractionStatistics> byTrigger = new ConcurrentHashMap<String, InteractionStatistics>();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong databaseNanos = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    private ObjectName mbeanName;
+
+    /**
+     * Records a request.
+     *
+     * @param trigger
+     *            the interaction that triggered the request
+     * @param nanos
+     *            the time of the request
+     * @param databaseNanos
+     *            the time spent in the database
+     * @param listenerNanos
+     *            the time spent in the listeners, not including the database
+     *            time
+     * @param paintNanos
+     *            the time spent painting, not including the database time
+     * @param bytes
+     *            the size of the response
+     */
+    public void record(String trigger, long nanos, long databaseNanos,
+            long listenerNanos, long paintNanos, long bytes) {
+        latency.record(nanos);
+        this.databaseNanos.addAndGet(databaseNanos);
+        responseBytes.addAndGet(bytes);
+        getInteraction(trigger).record(nanos, databaseNanos, listenerNanos,
+                paintNanos, bytes);
+    }
+
+    private InteractionStatistics getInteraction(String trigger) {
+        InteractionStatistics stats = byTrigger.get(trigger);
+        if (stats == null) {
+            if (byTrigger.size() >= MAX_INTERACTIONS) {
+                trigger = OTHER_INTERACTION;
+            }
+            InteractionStatistics created = new InteractionStatistics(trigger);
+            stats = byTrigger.putIfAbsent(trigger, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    public long getRequests() {
+        return latency.getCount();
+    }
+
+    public double getTotalMillis() {
+        return latency.getTotal() / 1e6;
+    }
+
+    public double getP99Millis() {
+        return latency.getPercentile(99) / 1e6;
+    }
+
+    public double getDatabaseMillis() {
+        return databaseNanos.get() / 1e6;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public int getInteractionCount() {
+        return byTrigger.size();
+    }
+
+    public List<InteractionStatistics> getInteractions() {
+        List<InteractionStatistics> interactions = new ArrayList<InteractionStatistics>(
+                byTrigger.values());
+        Collections.sort(interactions, new Comparator<InteractionStatistics>() {
+            public int compare(InteractionStatistics a, InteractionStatistics b) {
+                return Double.compare(b.getTotalMillis(), a.getTotalMillis());
+            }
+        });
+        return interactions;
+    }
+
+    public void reset() {
+        for (InteractionStatistics stats : byTrigger.values()) {
+            stats.reset();
+        }
+        latency.reset();
+        databaseNanos.set(0);
+        responseBytes.set(0);
+    }
+
+    /**
+     * Registers the statistics to the platform MBean server. Statistics
+     * previously registered with the same name are replaced.
+     *
+     * @param name
+     *            the name of the statistics in the MBean object name
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            unregisterMBean();
+            ObjectName objectName = new ObjectName(
+                    "com.vaadin.data.util.sqlcontainer.demo:type=RequestStatistics,name="
+                            + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not register the request statistics MBean", e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean, if registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName)) {
+                server.unregisterMBean(mbeanName);
+            }
+        } catch (JMException e) {
+            getLogger().log(Level.FINE,
+                    "Could not unregister the request statistics MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(RequestStatistics.class.getName());
+    }
+}
@@ -0,0 +1,49 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link RequestStatistics}, exported over JMX.
+ */
+public interface RequestStatisticsMXBean {
+
+    /**
+     * @return the number of UIDL requests handled
+     */
+    public long getRequests();
+
+    /**
+     * @return the total time of the requests in milliseconds
+     */
+    public double getTotalMillis();
+
+    /**
+     * @return the 99th percentile of the request time in milliseconds
+     */
+    public double getP99Millis();
+
+    /**
+     * @return the total time spent in the database in milliseconds
+     */
+    public double getDatabaseMillis();
+
+    /**
+     * @return the total size of the responses in bytes
+     */
+    public long getResponseBytes();
+
+    /**
+     * @return the number of distinct interactions seen
+     */
+    public int getInteractionCount();
+
+    /**
+     * @return the statistics of each interaction, the slowest in total first
+     */
+    public List<InteractionStatistics> getInteractions();
+
+    /**
+     * Clears the statistics.
+     */
+    public void reset();
+}
@@ -0,0 +1,104 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A statement captured by the {@link SlowQueryLog} for exceeding its
+ * threshold. The plan of the statement is filled in later by a background
+ * thread.
+ */
+public class SlowQuery {
+
+    private final long time;
+    private final long nanos;
+    private final String sql;
+    private final List<Object> parameters;
+    private final String source;
+    private final String context;
+    private final String thread;
+
+    private volatile String plan;
+    private volatile String access;
+
+    SlowQuery(long nanos, String sql, Object[] parameters,
+            QueryContext context) {
+        time = System.currentTimeMillis();
+        this.nanos = nanos;
+        this.sql = sql;
+        this.parameters = parameters == null ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.asList(parameters));
+        source = context == null ? null : context.getSource();
+        this.context = context == null ? null : context.describe();
+        thread = Thread.currentThread().getName();
+    }
+
+    void setPlan(String plan, String access) {
+        this.plan = plan;
+        this.access = access;
+    }
+
+    /**
+     * @return the time the statement completed
+     */
+    public Date getTime() {
+        return new Date(time);
+    }
+
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the values bound to the parameters of the statement, by
+     *         position starting from the first parameter
+     */
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return the query and the call that ran the statement, or null if it
+     *         was not run by a query delegate
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the filters and the sort order the statement was generated
+     *         from, or null if it was not run by a query delegate
+     */
+    public String getContext() {
+        return context;
+    }
+
+    /**
+     * @return the name of the thread that ran the statement
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return the EXPLAIN PLAN output, or null if it has not been read yet or
+     *         the statement cannot be explained
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return how each table is read according to the plan, e.g.
+     *         <code>PERSONADDRESS: FULL SCAN</code>, or null if not known
+     */
+    public String getAccess() {
+        return access;
+    }
+}
@@ -0,0 +1,253 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Bounded log of the statements that took longer than a threshold, filled by
+ * the {@link InstrumentedConnectionPool}s it is set to. When full, the oldest
+ * statement is dropped.
+ * <p>
+ * Each statement is kept with its bound parameters and the
+ * {@link QueryContext} it was run in. The plan of a SELECT statement is read
+ * with HSQLDB's <code>EXPLAIN PLAN FOR</code> on a background thread, so that
+ * the slow request is not delayed further. HSQLDB plans a prepared statement
+ * without its parameter values, so plans are cached by the SQL. If explaining
+ * falls behind, the statements that do not fit in the queue get no plan.
+ */
+public class SlowQueryLog {
+
+    /**
+     * System property giving the threshold of the default log in
+     * milliseconds, 100 by default.
+     */
+    public static final String THRESHOLD_PROPERTY = "sqlcontainer.slowQueryMillis";
+
+    private static final SlowQueryLog DEFAULT = new SlowQueryLog(200, Long
+            .getLong(THRESHOLD_PROPERTY, 100));
+
+    private static final int CACHED_PLANS = 64;
+
+    private final SlowQuery[] entries;
+    private int next = 0;
+    private long captured = 0;
+    private volatile long thresholdNanos;
+
+    private final ThreadPoolExecutor explainer;
+    private final Map<String, String[]> plans = new LinkedHashMap<String, String[]>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > CACHED_PLANS;
+        }
+    };
+
+    /**
+     * Returns the log shared by the demos.
+     */
+    public static SlowQueryLog getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a slow query log.
+     *
+     * @param capacity
+     *            the number of statements kept
+     * @param thresholdMillis
+     *            the execution time in milliseconds from which a statement is
+     *            logged
+     */
+    public SlowQueryLog(int capacity, long thresholdMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "The capacity must be at least one.");
+        }
+        entries = new SlowQuery[capacity];
+        setThresholdMillis(thresholdMillis);
+        explainer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(16), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "SlowQueryLog explainer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        explainer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the execution time from which statements are logged.
+     *
+     * @param thresholdMillis
+     *            the threshold in milliseconds
+     */
+    public void setThresholdMillis(long thresholdMillis) {
+        thresholdNanos = Math.max(0, thresholdMillis) * 1000000;
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos / 1000000;
+    }
+
+    boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    /**
+     * Logs a statement.
+     *
+     * @param nanos
+     *            the execution time
+     * @param sql
+     *            the SQL
+     * @param parameters
+     *            the bound parameters, or null
+     * @param context
+     *            the context the statement was run in, or null
+     * @param pool
+     *            the pool to explain the statement with, or null
+     */
+    void record(long nanos, String sql, Object[] parameters,
+            QueryContext context, JDBCConnectionPool pool) {
+        final SlowQuery entry = new SlowQuery(nanos, sql, parameters, context);
+        synchronized (this) {
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+            captured++;
+        }
+        if (pool != null && isExplainable(sql)) {
+            explain(entry, pool);
+        }
+    }
+
+    private void explain(final SlowQuery entry, final JDBCConnectionPool pool) {
+        String[] plan;
+        synchronized (plans) {
+            plan = plans.get(entry.getSql());
+        }
+        if (plan != null) {
+            entry.setPlan(plan[0], plan[1]);
+            return;
+        }
+        explainer.execute(new Runnable() {
+            public void run() {
+                String[] plan;
+                try {
+                    plan = readPlan(entry.getSql(), pool);
+                } catch (SQLException e) {
+                    getLogger().log(Level.FINE,
+                            "Could not explain " + entry.getSql(), e);
+                    plan = new String[] {
+                            "EXPLAIN PLAN failed: " + e.getMessage(), null };
+                }
+                synchronized (plans) {
+                    plans.put(entry.getSql(), plan);
+                }
+                entry.setPlan(plan[0], plan[1]);
+            }
+        });
+    }
+
+    /*
+     * Returns the plan and the access paths, collected from the table= and
+     * access= lines of the plan of each range variable.
+     */
+    private static String[] readPlan(String sql, JDBCConnectionPool pool)
+            throws SQLException {
+        Connection conn = pool.reserveConnection();
+        try {
+            PreparedStatement statement = conn
+                    .prepareStatement("EXPLAIN PLAN FOR " + sql);
+            StringBuilder plan = new StringBuilder();
+            StringBuilder access = new StringBuilder();
+            try {
+                ResultSet rs = statement.executeQuery();
+                String table = null;
+                while (rs.next()) {
+                    String line = rs.getString(1);
+                    plan.append(line).append('\n');
+                    String trimmed = line.trim();
+                    if (trimmed.startsWith("table=")) {
+                        table = trimmed.substring(6);
+                    } else if (trimmed.startsWith("access=") && table != null) {
+                        access.append(access.length() > 0 ? ", " : "")
+                                .append(table).append(": ").append(
+                                        trimmed.substring(7));
+                        table = null;
+                    }
+                }
+                rs.close();
+            } finally {
+                statement.close();
+            }
+            return new String[] { plan.toString(),
+                    access.length() > 0 ? access.toString() : null };
+        } finally {
+            pool.releaseConnection(conn);
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        String start = sql.trim();
+        start = start.substring(0, Math.min(6, start.length()));
+        return start.equalsIgnoreCase("SELECT")
+                || start.regionMatches(true, 0, "WITH", 0, 4);
+    }
+
+    /**
+     * Returns the logged statements, the latest first.
+     */
+    public synchronized List<SlowQuery> getEntries() {
+        List<SlowQuery> list = new ArrayList<SlowQuery>(entries.length);
+        for (int i = 1; i <= entries.length; i++) {
+            SlowQuery entry = entries[(next - i + entries.length)
+                    % entries.length];
+            if (entry == null) {
+                break;
+            }
+            list.add(entry);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of statements logged, including those already
+     * dropped.
+     */
+    public synchronized long getCapturedCount() {
+        return captured;
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * Drops the logged statements.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        next = 0;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SlowQueryLog.class.getName());
+    }
+}
@@ -0,0 +1,380 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Execution statistics of SQL statements, collected per statement shape by an
+ * {@link InstrumentedConnectionPool}. The shape of a statement is its SQL with
+ * the literals and parameters replaced by <code>?</code> and lists of them
+ * collapsed, so that e.g. every page of a table, or every IN list of ids,
+ * counts as the same statement.
+ * <p>
+ * The statistics can be exported over JMX with {@link #registerMBean(String)}
+ * and logged periodically with {@link #setLogInterval(long)}. The log line
+ * gives the executions and the time spent since the previous line and the
+ * statements that took most of it.
+ */
+public class SqlStatistics implements SqlStatisticsMXBean {
+
+    /*
+     * Bounds the memory taken by SQL built with literals: raw SQL beyond this
+     * is normalized on every execution, and shapes beyond this are counted
+     * together.
+     */
+    private static final int MAX_RAW_SQL = 2000;
+    private static final int MAX_SHAPES = 1000;
+    private static final int MAX_SHAPE_LENGTH = 1000;
+    private static final String OTHER_SHAPE = "(other statements)";
+
+    /* Statements named in the log line, and their length in it */
+    private static final int LOGGED_STATEMENTS = 3;
+    private static final int LOGGED_SQL_LENGTH = 120;
+
+    private static final Pattern LIST = Pattern.compile("\\?(?: ?, ?\\?)+");
+
+    private final ConcurrentMap<String, StatementStatistics> byShape = new ConcurrentHashMap<String, StatementStatistics>();
+    private final ConcurrentMap<String, StatementStatistics> byRawSql = new ConcurrentHashMap<String, StatementStatistics>();
+
+    private final LatencyHistogram connectionWait = new LatencyHistogram();
+    private final LatencyHistogram intervalConnectionWait = new LatencyHistogram();
+
+    private ScheduledExecutorService logExecutor;
+    private ScheduledFuture<?> logTask;
+    private long logInterval;
+    private long lastLogged = System.nanoTime();
+
+    private ObjectName mbeanName;
+
+    /**
+     * Returns the statistics of the shape of a statement, creating them if
+     * necessary.
+     *
+     * @param sql
+     *            the SQL of the statement
+     * @return the statistics
+     */
+    public StatementStatistics getStatement(String sql) {
+        StatementStatistics stats = byRawSql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        String shape = normalize(sql);
+        stats = byShape.get(shape);
+        if (stats == null) {
+            if (byShape.size() >= MAX_SHAPES) {
+                shape = OTHER_SHAPE;
+            }
+            StatementStatistics created = new StatementStatistics(shape);
+            stats = byShape.putIfAbsent(shape, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        if (byRawSql.size() < MAX_RAW_SQL) {
+            byRawSql.put(sql, stats);
+        }
+        return stats;
+    }
+
+    void recordConnectionWait(long nanos) {
+        connectionWait.record(nanos);
+        intervalConnectionWait.record(nanos);
+    }
+
+    /**
+     * Returns the shape of a statement: the SQL with string and numeric
+     * literals replaced by <code>?</code>, lists of <code>?</code> collapsed
+     * to <code>?, ...</code> and whitespace collapsed to single spaces.
+     * Quoted identifiers are kept as they are.
+     *
+     * @param sql
+     *            the SQL
+     * @return the shape
+     */
+    public static String normalize(String sql) {
+        int n = sql.length();
+        StringBuilder sb = new StringBuilder(Math.min(n, MAX_SHAPE_LENGTH));
+        boolean space = false;
+        int i = 0;
+        while (i < n && sb.length() < MAX_SHAPE_LENGTH) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                i++;
+                continue;
+            }
+            if (space && sb.length() > 0) {
+                sb.append(' ');
+            }
+            space = false;
+            if (c == '\'') {
+                /* String literal, '' is an escaped quote */
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i++) == '\'') {
+                        if (i < n && sql.charAt(i) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                sb.append('?');
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? n : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c)
+                    && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb
+                            .length() - 1)))) {
+                /* Numeric literal, not a digit of an identifier */
+                while (i < n
+                        && (Character.isLetterOrDigit(sql.charAt(i)) || sql
+                                .charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        if (i < n) {
+            sb.append("...");
+        }
+        return LIST.matcher(sb).replaceAll("?, ...");
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$'
+                || c == '"';
+    }
+
+    public long getExecutions() {
+        long executions = 0;
+        for (StatementStatistics stats : byShape.values()) {
+            executions += stats.getExecutions();
+        }
+        return executions;
+    }
+
+    public long getErrors() {
+        long errors = 0;
+        for (StatementStatistics stats : byShape.values()) {
+            errors += stats.getErrors();
+        }
+        return errors;
+    }
+
+    public double getTotalMillis() {
+        double total = 0;
+        for (StatementStatistics stats : byShape.values()) {
+            total += stats.getTotalMillis();
+        }
+        return total;
+    }
+
+    public int getStatementCount() {
+        return byShape.size();
+    }
+
+    public List<StatementStatistics> getStatements() {
+        List<StatementStatistics> statements = new ArrayList<StatementStatistics>(
+                byShape.values());
+        Collections.sort(statements, new Comparator<StatementStatistics>() {
+            public int compare(StatementStatistics a, StatementStatistics b) {
+                return Double.compare(b.getTotalMillis(), a.getTotalMillis());
+            }
+        });
+        return statements;
+    }
+
+    public long getConnectionReservations() {
+        return connectionWait.getCount();
+    }
+
+    public double getP99ConnectionWaitMillis() {
+        return connectionWait.getPercentile(99) / 1e6;
+    }
+
+    public double getMaxConnectionWaitMillis() {
+        return connectionWait.getMax() / 1e6;
+    }
+
+    public void reset() {
+        for (StatementStatistics stats : byShape.values()) {
+            stats.reset();
+        }
+        connectionWait.reset();
+        intervalConnectionWait.reset();
+    }
+
+    public synchronized long getLogInterval() {
+        return logInterval;
+    }
+
+    /**
+     * Sets how often the statistics are logged at the INFO level. Nothing is
+     * logged for an interval in which no statements were executed.
+     *
+     * @param seconds
+     *            the interval in seconds, 0 to stop logging
+     */
+    public synchronized void setLogInterval(long seconds) {
+        if (logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+        logInterval = Math.max(0, seconds);
+        if (logInterval == 0) {
+            return;
+        }
+        if (logExecutor == null) {
+            logExecutor = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SqlStatistics logger");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        lastLogged = System.nanoTime();
+        logTask = logExecutor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                logInterval();
+            }
+        }, logInterval, logInterval, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Logs the statistics of the interval and starts a new one. Executions
+     * recorded while the interval statistics are being reset may be lost.
+     */
+    private void logInterval() {
+        List<StatementStatistics> statements = new ArrayList<StatementStatistics>();
+        long executions = 0;
+        long nanos = 0;
+        for (StatementStatistics stats : byShape.values()) {
+            long count = stats.intervalLatency.getCount();
+            if (count > 0) {
+                statements.add(stats);
+                executions += count;
+                nanos += stats.intervalLatency.getTotal();
+            }
+        }
+        long now = System.nanoTime();
+        double seconds = (now - lastLogged) / 1e9;
+        lastLogged = now;
+        if (executions > 0) {
+            Collections.sort(statements, new Comparator<StatementStatistics>() {
+                public int compare(StatementStatistics a, StatementStatistics b) {
+                    long ta = a.intervalLatency.getTotal();
+                    long tb = b.intervalLatency.getTotal();
+                    return ta < tb ? 1 : ta > tb ? -1 : 0;
+                }
+            });
+            StringBuilder line = new StringBuilder(String.format(
+                    "SQL in the last %.0f s: %d executions, %.1f ms, "
+                            + "connection wait p99 %.2f ms; slowest:",
+                    seconds, executions, nanos / 1e6, intervalConnectionWait
+                            .getPercentile(99) / 1e6));
+            for (int i = 0; i < statements.size() && i < LOGGED_STATEMENTS; i++) {
+                StatementStatistics stats = statements.get(i);
+                String sql = stats.getSql();
+                if (sql.length() > LOGGED_SQL_LENGTH) {
+                    sql = sql.substring(0, LOGGED_SQL_LENGTH) + "...";
+                }
+                line.append(String.format(
+                        " [%.0f%% %dx p99 %.2f ms %d rows] %s", 100.0
+                                * stats.intervalLatency.getTotal() / nanos,
+                        stats.intervalLatency.getCount(),
+                        stats.intervalLatency.getPercentile(99) / 1e6,
+                        stats.intervalRows.get(), sql));
+            }
+            getLogger().info(line.toString());
+        }
+        for (StatementStatistics stats : statements) {
+            stats.intervalLatency.reset();
+            stats.intervalRows.set(0);
+        }
+        intervalConnectionWait.reset();
+    }
+
+    /**
+     * Registers the statistics to the platform MBean server. Statistics
+     * previously registered with the same name are replaced.
+     *
+     * @param name
+     *            the name of the statistics in the MBean object name
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            unregisterMBean();
+            ObjectName objectName = new ObjectName(
+                    "com.vaadin.data.util.sqlcontainer.demo:type=SqlStatistics,name="
+                            + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING,
+                    "Could not register the SQL statistics MBean", e);
+        }
+    }
+
+    private synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName)) {
+                server.unregisterMBean(mbeanName);
+            }
+        } catch (JMException e) {
+            getLogger().log(Level.FINE,
+                    "Could not unregister the SQL statistics MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    /**
+     * Stops the logging and unregisters the MBean.
+     */
+    public synchronized void shutdown() {
+        if (logExecutor != null) {
+            logExecutor.shutdownNow();
+            logExecutor = null;
+            logTask = null;
+        }
+        logInterval = 0;
+        unregisterMBean();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SqlStatistics.class.getName());
+    }
+}
@@ -0,0 +1,64 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link SqlStatistics}, exported over JMX.
+ */
+public interface SqlStatisticsMXBean {
+
+    /**
+     * @return the number of statements executed
+     */
+    public long getExecutions();
+
+    /**
+     * @return the number of executions that threw an exception
+     */
+    public long getErrors();
+
+    /**
+     * @return the total execution time of all statements in milliseconds
+     */
+    public double getTotalMillis();
+
+    /**
+     * @return the number of distinct statement shapes seen
+     */
+    public int getStatementCount();
+
+    /**
+     * @return the statistics of each statement shape, the slowest in total
+     *         first
+     */
+    public List<StatementStatistics> getStatements();
+
+    /**
+     * @return the number of connections reserved
+     */
+    public long getConnectionReservations();
+
+    /**
+     * @return the 99th percentile of the time spent waiting for a connection
+     *         in milliseconds
+     */
+    public double getP99ConnectionWaitMillis();
+
+    /**
+     * @return the longest time spent waiting for a connection in milliseconds
+     */
+    public double getMaxConnectionWaitMillis();
+
+    /**
+     * @return the interval of the statistics log line in seconds, 0 if it is
+     *         not logged
+     */
+    public long getLogInterval();
+
+    public void setLogInterval(long seconds);
+
+    /**
+     * Clears the statistics.
+     */
+    public void reset();
+}
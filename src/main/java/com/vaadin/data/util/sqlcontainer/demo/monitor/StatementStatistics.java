@@ -0,0 +1,126 @@
+package com.vaadin.data.util.sqlcontainer.demo.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the executions of one statement shape, i.e. of SQL that
+ * differs only by its parameters, as recorded by {@link SqlStatistics}. The
+ * getters are exported over JMX as the attributes of a composite value.
+ */
+public class StatementStatistics {
+
+    private final String sql;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong connectionWaitNanos = new AtomicLong();
+
+    /* Since the last log line, see SqlStatistics */
+    final LatencyHistogram intervalLatency = new LatencyHistogram();
+    final AtomicLong intervalRows = new AtomicLong();
+
+    StatementStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    void recordExecution(long nanos, boolean failed) {
+        latency.record(nanos);
+        intervalLatency.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    void recordRows(long count) {
+        rows.addAndGet(count);
+        intervalRows.addAndGet(count);
+    }
+
+    void recordConnectionWait(long nanos) {
+        connectionWaitNanos.addAndGet(nanos);
+    }
+
+    void reset() {
+        latency.reset();
+        intervalLatency.reset();
+        errors.set(0);
+        rows.set(0);
+        intervalRows.set(0);
+        connectionWaitNanos.set(0);
+    }
+
+    /**
+     * @return the statement with its literals and parameters replaced by
+     *         <code>?</code>
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public long getExecutions() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return the number of executions that threw an exception
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of rows read from the results, plus the update
+     *         counts of inserts, updates and deletes
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @return the total execution time in milliseconds, not including the
+     *         time spent reading the results
+     */
+    public double getTotalMillis() {
+        return latency.getTotal() / 1e6;
+    }
+
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    public double getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+
+    /**
+     * Returns a percentile of the execution time.
+     *
+     * @param percentile
+     *            the percentile, from 0 to 100
+     * @return the execution time in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        return latency.getPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * @return the time in milliseconds spent waiting for a connection before
+     *         running this statement as the first of a reservation
+     */
+    public double getConnectionWaitMillis() {
+        return connectionWaitNanos.get() / 1e6;
+    }
+}